@@ -15,18 +15,36 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.cargosfsr.inventario.services.DistritoDictionary;
+import com.cargosfsr.inventario.services.ImportBatchService;
+import com.cargosfsr.inventario.services.ImportPacer;
+import com.cargosfsr.inventario.services.StatusExternoReglas;
+
 @RestController
 @RequestMapping("/api/admin")
 public class AdminController {
 
     private final JdbcTemplate jdbc;
     private final BCryptPasswordEncoder bcrypt;
+    private final StatusExternoReglas statusReglas;
+    private final ImportBatchService importBatches;
+    private final CurrentUser currentUser;
+    private final DistritoDictionary distritos;
+    private final ImportPacer importPacer;
 
-    public AdminController(JdbcTemplate jdbc, BCryptPasswordEncoder bcrypt) {
+    public AdminController(JdbcTemplate jdbc, BCryptPasswordEncoder bcrypt, StatusExternoReglas statusReglas,
+                           ImportBatchService importBatches, CurrentUser currentUser, DistritoDictionary distritos,
+                           ImportPacer importPacer) {
         this.jdbc = jdbc;
         this.bcrypt = bcrypt;
+        this.statusReglas = statusReglas;
+        this.importBatches = importBatches;
+        this.currentUser = currentUser;
+        this.distritos = distritos;
+        this.importPacer = importPacer;
     }
 
     // ---------- Usuarios ----------
@@ -94,6 +112,7 @@ public class AdminController {
 
             Long id = toLong(existing.get("id"));
             int updated = jdbc.update("UPDATE distritos SET activo = 1 WHERE id = ?", id);
+            distritos.recargar();
             return Map.of(
                 "ok", updated > 0,
                 "reactivado", true,
@@ -104,6 +123,7 @@ public class AdminController {
         } catch (EmptyResultDataAccessException ex) {
             try {
                 jdbc.update("INSERT INTO distritos (nombre) VALUES (?)", nombre);
+                distritos.recargar();
                 Long id = jdbc.queryForObject(
                     "SELECT id FROM distritos WHERE nombre=? LIMIT 1",
                     Long.class,
@@ -149,6 +169,7 @@ public class AdminController {
 
         if (count > 0) {
             int upd = jdbc.update("UPDATE distritos SET activo=0 WHERE id=?", id);
+            distritos.recargar();
             return Map.of(
                 "ok", upd > 0,
                 "deleted", false,
@@ -161,6 +182,8 @@ public class AdminController {
         }
 
         int del = jdbc.update("DELETE FROM distritos WHERE id=?", id);
+        jdbc.update("DELETE FROM distrito_alias WHERE distrito_id=?", id);
+        distritos.recargar();
         return Map.of(
             "ok", del > 0,
             "deleted", true,
@@ -178,6 +201,79 @@ public class AdminController {
         );
     }
 
+    // ---------- Alias de distritos (imports) ----------
+    // Otros nombres con que llega un distrito en los archivos; el import los reconoce al instante.
+    @GetMapping("/distritos/alias")
+    public List<Map<String, Object>> listDistritoAlias() {
+        return jdbc.queryForList(
+            "SELECT a.alias, d.nombre AS distrito, d.activo, a.actualizado_en " +
+            "FROM distrito_alias a JOIN distritos d ON d.id = a.distrito_id ORDER BY d.nombre, a.alias"
+        );
+    }
+
+    // POST /api/admin/distritos/alias  { "alias": "Col.", "distrito": "La colonia" }
+    @PostMapping("/distritos/alias")
+    public Map<String, Object> addDistritoAlias(@RequestBody AddDistritoAliasReq req) {
+        String alias = normDistrito(req.alias);
+        String distrito = normDistrito(req.distrito);
+        if (!StringUtils.hasText(alias) || alias.length() > 100) {
+            throw new IllegalArgumentException("Alias inválido");
+        }
+        Long id;
+        try {
+            id = jdbc.queryForObject("SELECT id FROM distritos WHERE nombre=? LIMIT 1", Long.class, distrito);
+        } catch (EmptyResultDataAccessException ex) {
+            throw new IllegalArgumentException("Distrito no existe: " + distrito);
+        }
+        jdbc.update(
+            "INSERT INTO distrito_alias (alias, distrito_id) VALUES (?, ?) " +
+            "ON DUPLICATE KEY UPDATE distrito_id = VALUES(distrito_id)",
+            alias, id);
+        return Map.of("ok", true, "alias", alias, "distrito_id", id, "distritos", distritos.recargar());
+    }
+
+    // DELETE /api/admin/distritos/alias/{alias}
+    @DeleteMapping("/distritos/alias/{alias}")
+    public Map<String, Object> deleteDistritoAlias(@PathVariable String alias) {
+        int del = jdbc.update("DELETE FROM distrito_alias WHERE alias=?", normDistrito(alias));
+        if (del > 0) distritos.recargar();
+        return Map.of("ok", del > 0);
+    }
+
+    // ---------- Reglas de status externo ----------
+    // Se editan directo en la tabla; el import las toma solo (a lo sumo 30 s) o al recargar.
+    @GetMapping("/status-reglas")
+    public List<Map<String, Object>> listStatusReglas() {
+        return jdbc.queryForList(
+            "SELECT id, patron, modo, clase, estado, subtipo, prioridad, activo, actualizado_en " +
+            "FROM status_externo_reglas ORDER BY prioridad, id"
+        );
+    }
+
+    // POST /api/admin/status-reglas/recargar
+    @PostMapping("/status-reglas/recargar")
+    public Map<String, Object> recargarStatusReglas() {
+        return Map.of("ok", true, "reglas", statusReglas.recargar());
+    }
+
+    // ---------- Imports (linaje / revertir) ----------
+    @GetMapping("/import-batches")
+    public List<Map<String, Object>> listImportBatches(@RequestParam(name = "limit", defaultValue = "50") int limit) {
+        return importBatches.listar(limit);
+    }
+
+    // POST /api/admin/import-batches/{id}/revertir
+    @PostMapping("/import-batches/{id}/revertir")
+    public Map<String, Object> revertirImport(@PathVariable long id) {
+        return importBatches.revertir(id, currentUser.display());
+    }
+
+    // GET /api/admin/import-pacing: señales de carga y pausa actual entre tramos de los imports
+    @GetMapping("/import-pacing")
+    public Map<String, Object> importPacing() {
+        return importPacer.estado();
+    }
+
     // ---------- DTOs ----------
     public static class CreateUserReq {
         public String username;
@@ -190,6 +286,11 @@ public class AdminController {
         public String nombre;
     }
 
+    public static class AddDistritoAliasReq {
+        public String alias;
+        public String distrito;
+    }
+
     // ---------- Helpers ----------
     private String normUsername(String s) {
         return s == null ? null : s.trim().toLowerCase(Locale.ROOT);
@@ -0,0 +1,95 @@
+package com.cargosfsr.inventario.config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLStateSQLExceptionTranslator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sesión MySQL de cada conexión física del pool.
+ *
+ * La zona horaria se fija una sola vez, al abrir la conexión
+ * (spring.datasource.hikari.connection-init-sql). El usuario que leen triggers y SPs
+ * (@changed_by) se recuerda por conexión física y {@link #actor} solo manda el SET cuando cambia:
+ * una conexión que ya tiene al mismo usuario no necesita otro viaje.
+ *
+ * Las variables de sesión sobreviven a la devolución al pool, así que al terminar la transacción
+ * se vuelve a dejar @changed_by = NULL (solo si quedó con un usuario): quien escriba después sin
+ * llamar a actor no queda a nombre del anterior.
+ *
+ * Se aplica a la conexión de la transacción en curso (la misma que usan JPA y JdbcTemplate);
+ * llamarlo dentro del @Transactional, antes de escribir. Fuera de una transacción no hace nada:
+ * la conexión vuelve al pool enseguida y el SET no llegaría a la escritura.
+ */
+@Component
+public class DbSession {
+
+    private static final SQLExceptionTranslator TRADUCTOR = new SQLStateSQLExceptionTranslator();
+
+    private final DataSource dataSource;
+    // conexión física (no el proxy del pool, que cambia en cada préstamo) -> @changed_by puesto
+    private final Map<Connection, String> actores = Collections.synchronizedMap(new WeakHashMap<>());
+    // conexiones físicas que ya tienen registrado el reset para el final de su transacción
+    private final Set<Connection> pendientes = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    public DbSession(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /** Deja {@code @changed_by = who} en la conexión de la transacción (SET solo si cambió) */
+    public void actor(String who) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) return;
+        Connection con = DataSourceUtils.getConnection(dataSource);
+        try {
+            Connection fisica = con.unwrap(Connection.class);
+            if (who != null && pendientes.add(fisica)) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        limpiar(con, fisica);
+                    }
+                });
+            }
+            if (actores.containsKey(fisica) && Objects.equals(actores.get(fisica), who)) return;
+            set(con, who);
+            actores.put(fisica, who);
+        } catch (SQLException e) {
+            throw Objects.requireNonNull(TRADUCTOR.translate("SET @changed_by", null, e));
+        } finally {
+            DataSourceUtils.releaseConnection(con, dataSource);
+        }
+    }
+
+    /** Fin de la transacción: la conexión (todavía tomada) vuelve sin usuario */
+    private void limpiar(Connection con, Connection fisica) {
+        pendientes.remove(fisica);
+        if (actores.get(fisica) == null) return;
+        try {
+            set(con, null);
+            actores.put(fisica, null);
+        } catch (SQLException e) {
+            // no se sabe qué quedó: el próximo actor() manda el SET
+            actores.remove(fisica);
+        }
+    }
+
+    private static void set(Connection con, String who) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SET @changed_by = ?")) {
+            ps.setString(1, who);
+            ps.execute();
+        }
+    }
+}
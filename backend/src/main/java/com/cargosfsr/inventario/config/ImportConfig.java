@@ -0,0 +1,68 @@
+package com.cargosfsr.inventario.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ImportConfig {
+
+    /**
+     * Hilos que parsean archivos de importación mientras el hilo dueño de la
+     * transacción escribe en BD (ver ImportPipeline).
+     */
+    @Bean(name = "importParseExecutor")
+    public ThreadPoolTaskExecutor importParseExecutor() {
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(2);
+        ex.setMaxPoolSize(2);
+        ex.setQueueCapacity(32);
+        ex.setThreadNamePrefix("import-parse-");
+        ex.setWaitForTasksToCompleteOnShutdown(true);
+        ex.setAwaitTerminationSeconds(30);
+        return ex;
+    }
+
+    /**
+     * Jobs de importación en segundo plano (ImportJobService). Acotado: cada job usa una
+     * conexión del pool durante todo el import, y si la cola se llena el POST responde 429.
+     */
+    @Bean(name = "importJobExecutor")
+    public ThreadPoolTaskExecutor importJobExecutor() {
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(2);
+        ex.setMaxPoolSize(2);
+        ex.setQueueCapacity(10);
+        ex.setThreadNamePrefix("import-job-");
+        ex.setWaitForTasksToCompleteOnShutdown(true);
+        ex.setAwaitTerminationSeconds(60);
+        return ex;
+    }
+
+    /**
+     * Particiones del import de tracks en paralelo: a lo sumo un cuarto del pool de Hikari, para que
+     * el mostrador siga teniendo conexiones.
+     */
+    public static int particionesTracks(int configuradas, int pool) {
+        return Math.max(1, Math.min(configuradas, pool / 4));
+    }
+
+    /**
+     * Workers del import de tracks en paralelo (import.tracks.particiones > 1): uno por partición,
+     * cada uno con su conexión. Lo comparten todos los imports, así que entre todos no usan más de
+     * {@link #particionesTracks} conexiones; las particiones de un segundo import esperan en cola.
+     */
+    @Bean(name = "importApplyExecutor")
+    public ThreadPoolTaskExecutor importApplyExecutor(@Value("${import.tracks.particiones:1}") int particiones,
+                                                      @Value("${spring.datasource.hikari.maximum-pool-size:10}") int pool) {
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(particionesTracks(particiones, pool));
+        ex.setMaxPoolSize(particionesTracks(particiones, pool));
+        ex.setQueueCapacity(64);
+        ex.setThreadNamePrefix("import-apply-");
+        ex.setWaitForTasksToCompleteOnShutdown(true);
+        ex.setAwaitTerminationSeconds(60);
+        return ex;
+    }
+}
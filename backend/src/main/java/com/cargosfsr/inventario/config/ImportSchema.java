@@ -0,0 +1,127 @@
+package com.cargosfsr.inventario.config;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Tablas auxiliares de los imports. El esquema principal (tablas, SPs, triggers) se administra
+ * fuera de la app; estas son propias del importador y se aseguran al arrancar
+ * (CREATE TABLE IF NOT EXISTS, igual que los placeholders PENDIENTE).
+ */
+@Component
+public class ImportSchema {
+
+    private final JdbcTemplate jdbc;
+
+    public ImportSchema(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @PostConstruct
+    public void asegurarTablas() {
+        // Huella del último consolidado aplicado por tracking (import delta)
+        jdbc.execute(
+            "CREATE TABLE IF NOT EXISTS consolidado_huellas (" +
+            "  tracking_code VARCHAR(64) NOT NULL PRIMARY KEY," +
+            "  huella BIGINT NOT NULL," +
+            "  saco_id BIGINT NULL," +
+            "  distrito_id BIGINT NULL," +
+            "  actualizado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
+            ")");
+
+        // Linaje de imports del consolidado e imagen previa por paquete (ver ImportBatchService)
+        jdbc.execute(
+            "CREATE TABLE IF NOT EXISTS import_batches (" +
+            "  id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY," +
+            "  tipo VARCHAR(20) NOT NULL," +
+            "  actor VARCHAR(100) NULL," +
+            "  creado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+            "  paquetes INT NULL," +                    // null mientras el import no termina
+            "  revertido_en TIMESTAMP NULL," +
+            "  revertido_por VARCHAR(100) NULL," +
+            "  KEY ix_import_batches_creado (creado_en)" +
+            ")");
+        jdbc.execute(
+            "CREATE TABLE IF NOT EXISTS import_batch_antes (" +
+            "  batch_id BIGINT NOT NULL," +
+            "  paquete_id BIGINT NOT NULL," +
+            "  saco_id BIGINT NULL," +
+            "  distrito_id BIGINT NULL," +
+            "  received_at DATETIME NULL," +
+            "  observaciones VARCHAR(500) NULL," +
+            "  responsable_consolidado VARCHAR(100) NULL," +
+            "  saco_despues BIGINT NULL," +
+            "  distrito_despues BIGINT NULL," +
+            "  received_despues DATETIME NULL," +
+            "  PRIMARY KEY (batch_id, paquete_id)" +
+            ")");
+
+        // Avance confirmado de los imports por tramos, para reanudar tras un reinicio (ver ImportCheckpointService)
+        jdbc.execute(
+            "CREATE TABLE IF NOT EXISTS import_checkpoints (" +
+            "  id VARCHAR(36) NOT NULL PRIMARY KEY," +      // id del job
+            "  tipo VARCHAR(20) NOT NULL," +
+            "  archivo VARCHAR(255) NULL," +
+            "  ruta VARCHAR(1024) NOT NULL," +              // copia del archivo hasta terminar
+            "  actor VARCHAR(100) NULL," +
+            "  filas_aplicadas BIGINT NOT NULL DEFAULT 0," +
+            "  import_batch BIGINT NULL," +
+            "  estado VARCHAR(12) NOT NULL DEFAULT 'EN_CURSO'," +  // EN_CURSO | TERMINADO | FALLIDO
+            "  intentos INT NOT NULL DEFAULT 0," +          // reanudaciones
+            "  error VARCHAR(500) NULL," +
+            "  creado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+            "  actualizado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP," +
+            "  KEY ix_import_checkpoints_estado (estado)" +
+            ")");
+
+        // Otros nombres con que llegan los distritos en los archivos (ver DistritoDictionary)
+        jdbc.execute(
+            "CREATE TABLE IF NOT EXISTS distrito_alias (" +
+            "  alias VARCHAR(100) NOT NULL PRIMARY KEY," +
+            "  distrito_id BIGINT NOT NULL," +
+            "  actualizado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP," +
+            "  KEY ix_distrito_alias_distrito (distrito_id)" +
+            ")");
+
+        // Reglas de clasificación del status externo (ver StatusExternoReglas)
+        jdbc.execute(
+            "CREATE TABLE IF NOT EXISTS status_externo_reglas (" +
+            "  id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY," +
+            "  patron VARCHAR(100) NOT NULL," +
+            "  modo VARCHAR(10) NOT NULL," +            // CONTIENE | EMPIEZA
+            "  clase VARCHAR(20) NOT NULL," +           // ENTREGADO | DEVOLUCION
+            "  estado VARCHAR(60) NULL," +              // estado que queda en paquetes (null = el que deje el SP)
+            "  subtipo VARCHAR(30) NULL," +
+            "  prioridad INT NOT NULL DEFAULT 100," +   // menor gana
+            "  activo TINYINT(1) NOT NULL DEFAULT 1," +
+            "  actualizado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP," +
+            "  UNIQUE KEY uk_status_regla (patron, modo)" +
+            ")");
+        Integer reglas = jdbc.queryForObject("SELECT COUNT(*) FROM status_externo_reglas", Integer.class);
+        if (reglas != null && reglas == 0) {
+            // las que estaban fijas en el import de tracks; la devolución gana sobre la entrega.
+            // Sin estado: el estado lo sigue dejando el SP, hasta que un admin le ponga uno a la regla
+            String dev = "DEVOLUCION", ent = "ENTREGADO";
+            Object[][] base = {
+                { "transito a bodegas", "CONTIENE", dev, 10 },
+                { "devolucion", "EMPIEZA", dev, 10 },
+                { "devuelto", "EMPIEZA", dev, 10 },
+                { "almacenaje", "EMPIEZA", dev, 10 },
+                { "in transit to warehouse", "CONTIENE", dev, 10 },
+                { "return", "EMPIEZA", dev, 10 },
+                { "storage", "EMPIEZA", dev, 10 },
+                { "prueba de entrega", "CONTIENE", ent, 20 },
+                { "entregado", "EMPIEZA", ent, 20 },
+                { "en entrega", "EMPIEZA", ent, 20 },
+                { "delivered", "EMPIEZA", ent, 20 },
+                { "proof of delivery", "CONTIENE", ent, 20 },
+            };
+            for (Object[] r : base) {
+                jdbc.update("INSERT IGNORE INTO status_externo_reglas(patron, modo, clase, prioridad) VALUES (?,?,?,?)",
+                        r[0], r[1], r[2], r[3]);
+            }
+        }
+    }
+}
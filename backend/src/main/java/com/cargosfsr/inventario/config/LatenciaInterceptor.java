@@ -0,0 +1,33 @@
+package com.cargosfsr.inventario.config;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import com.cargosfsr.inventario.services.ImportPacer;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/** Mide los requests interactivos (no los de import) para el ritmo de los imports (ImportPacer) */
+public class LatenciaInterceptor implements HandlerInterceptor {
+
+    private static final String INICIO = LatenciaInterceptor.class.getName() + ".inicio";
+
+    private final ImportPacer pacer;
+
+    public LatenciaInterceptor(ImportPacer pacer) {
+        this.pacer = pacer;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest req, HttpServletResponse res, Object handler) {
+        if (!"OPTIONS".equalsIgnoreCase(req.getMethod())) req.setAttribute(INICIO, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest req, HttpServletResponse res, Object handler, Exception ex) {
+        if (req.getAttribute(INICIO) instanceof Long t0) {
+            pacer.registrar((System.nanoTime() - t0) / 1_000_000);
+        }
+    }
+}
@@ -15,6 +15,7 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import com.cargosfsr.inventario.auth.AdminInterceptor;
 import com.cargosfsr.inventario.auth.AuthInterceptor;
+import com.cargosfsr.inventario.services.ImportPacer;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
@@ -23,6 +24,12 @@ public class WebConfig implements WebMvcConfigurer {
     private static final String FRONT_GUAPILES = "https://costalovetransporte-production.up.railway.app";
     private static final String FRONT_DEV      = "http://localhost:5173";
 
+    private final ImportPacer importPacer;
+
+    public WebConfig(ImportPacer importPacer) {
+        this.importPacer = importPacer;
+    }
+
     @Bean
     public BCryptPasswordEncoder passwordEncoder() { return new BCryptPasswordEncoder(); }
 
@@ -34,7 +41,7 @@ public class WebConfig implements WebMvcConfigurer {
         registry.addMapping("/api/**")
                 .allowedOrigins(FRONT_SANPABLO, FRONT_GUAPILES, FRONT_DEV)
                 .allowedMethods("GET","POST","PUT","PATCH","DELETE","OPTIONS")
-                .allowedHeaders("Content-Type","Accept","X-Requested-With","Authorization","Origin","Cache-Control","Pragma")
+                .allowedHeaders("Content-Type","Accept","X-Requested-With","Authorization","Origin","Cache-Control","Pragma","X-Chunk-Sha256")
                 .exposedHeaders("Location")
                 .allowCredentials(true)
                 .maxAge(3600);
@@ -59,7 +66,7 @@ public class WebConfig implements WebMvcConfigurer {
 
         cfg.setAllowCredentials(true);
         cfg.setAllowedMethods(Arrays.asList("GET","POST","PUT","PATCH","DELETE","OPTIONS"));
-        cfg.setAllowedHeaders(Arrays.asList("Content-Type","Accept","X-Requested-With","Authorization","Origin","Cache-Control","Pragma"));
+        cfg.setAllowedHeaders(Arrays.asList("Content-Type","Accept","X-Requested-With","Authorization","Origin","Cache-Control","Pragma","X-Chunk-Sha256"));
         cfg.setExposedHeaders(Arrays.asList("Location"));
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -86,5 +93,10 @@ public class WebConfig implements WebMvcConfigurer {
 
         registry.addInterceptor(new AdminInterceptor())
                 .addPathPatterns("/api/admin/**");
+
+        // latencia de mostrador/entregas: los imports bajan el ritmo si sube (ver ImportPacer)
+        registry.addInterceptor(new LatenciaInterceptor(importPacer))
+                .addPathPatterns("/api/**")
+                .excludePathPatterns("/api/import/**", "/api/admin/**", "/api/diag/**");
     }
 }
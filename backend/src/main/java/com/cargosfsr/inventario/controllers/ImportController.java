@@ -1,38 +1,71 @@
 package com.cargosfsr.inventario.controllers;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.springframework.dao.DataAccessException;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.cargosfsr.inventario.importacion.ErrorReport;
+import com.cargosfsr.inventario.importacion.UploadSession;
+import com.cargosfsr.inventario.services.ChunkUploadService;
+import com.cargosfsr.inventario.services.ErrorReportService;
+import com.cargosfsr.inventario.services.ImportJobService;
 import com.cargosfsr.inventario.services.ImportService;
+import com.cargosfsr.inventario.services.MarchamoUpdateService;
+import com.cargosfsr.inventario.services.ZipImportService;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 @RestController
 @RequestMapping("/api/import")
 public class ImportController {
 
     private final ImportService importService;
+    private final ImportJobService jobs;
+    private final ChunkUploadService uploads;
+    private final ErrorReportService reportes;
+    private final MarchamoUpdateService marchamos;
+    private final ZipImportService zips;
 
-    public ImportController(ImportService importService) {
+    public ImportController(ImportService importService, ImportJobService jobs, ChunkUploadService uploads,
+                            ErrorReportService reportes, MarchamoUpdateService marchamos, ZipImportService zips) {
         this.importService = importService;
+        this.jobs = jobs;
+        this.uploads = uploads;
+        this.reportes = reportes;
+        this.marchamos = marchamos;
+        this.zips = zips;
     }
 
     @PostMapping(path = "/consolidado", consumes = {"multipart/form-data"})
-    public ResponseEntity<?> importarConsolidado(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> importarConsolidado(@RequestParam("file") MultipartFile file,
+                                                 @RequestParam(name = "delta", defaultValue = "false") boolean delta) {
         if (file == null || file.isEmpty()) {
             return ResponseEntity.badRequest().body(error("Archivo vacío", null));
         }
         try {
-            Map<String, Object> res = importService.importarConsolidadoXLSX(file);
+            Map<String, Object> res = importService.importarConsolidadoXLSX(file, delta);
             return ResponseEntity.ok(res);
         } catch (IllegalArgumentException ex) {
             return ResponseEntity.badRequest().body(error(ex.getMessage(), null));
@@ -60,8 +93,196 @@ public class ImportController {
         }
     }
 
+    /** Re-ensacado: archivo "por grupos" (marchamo / distrito seguidos de sus trackings) */
+    @PostMapping(path = "/marchamos", consumes = {"multipart/form-data"})
+    public ResponseEntity<?> importarMarchamos(@RequestParam("file") MultipartFile file,
+                                               @RequestParam(name = "crearSacos", defaultValue = "true") boolean crearSacos,
+                                               @RequestParam(name = "actualizarDistrito", defaultValue = "true") boolean actualizarDistrito) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest().body(error("Archivo vacío", null));
+        }
+        try {
+            Map<String, Object> res = marchamos.actualizarMarchamos(file, crearSacos, actualizarDistrito);
+            return ResponseEntity.ok(res);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(error(ex.getMessage(), null));
+        } catch (DataAccessException ex) {
+            return dbError(ex);
+        } catch (Exception ex) {
+            return serverError(ex);
+        }
+    }
+
+    /** Varios archivos en un ZIP: consolidados, re-ensacados y tracks, con un resumen por archivo */
+    @PostMapping(path = "/zip", consumes = {"multipart/form-data"})
+    public ResponseEntity<?> importarZip(@RequestParam("file") MultipartFile file,
+                                         @RequestParam(name = "delta", defaultValue = "false") boolean delta) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest().body(error("Archivo vacío", null));
+        }
+        try {
+            Map<String, Object> res = zips.importar(file, delta);
+            return ResponseEntity.ok(res);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(error(ex.getMessage(), null));
+        } catch (DataAccessException ex) {
+            return dbError(ex);
+        } catch (Exception ex) {
+            return serverError(ex);
+        }
+    }
+
+    // ---------------- jobs en segundo plano ----------------
+
+    @PostMapping(path = "/jobs/consolidado", consumes = {"multipart/form-data"})
+    public ResponseEntity<?> jobConsolidado(@RequestParam("file") MultipartFile file,
+                                            @RequestParam(name = "delta", defaultValue = "false") boolean delta) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest().body(error("Archivo vacío", null));
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(jobs.submitConsolidado(file, delta).snapshot());
+        } catch (ImportJobService.ColaLlenaException ex) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error(ex.getMessage(), null));
+        } catch (Exception ex) {
+            return serverError(ex);
+        }
+    }
+
+    @PostMapping(path = "/jobs/paquetes", consumes = {"multipart/form-data"})
+    public ResponseEntity<?> jobPaquetes(@RequestParam("file") MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest().body(error("Archivo vacío", null));
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(jobs.submitPaquetes(file).snapshot());
+        } catch (ImportJobService.ColaLlenaException ex) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error(ex.getMessage(), null));
+        } catch (Exception ex) {
+            return serverError(ex);
+        }
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<?> job(@PathVariable String id) {
+        return jobs.find(id)
+                .<ResponseEntity<?>>map(j -> ResponseEntity.ok(j.snapshot()))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("Job no existe o ya expiró", null)));
+    }
+
+    /** Reporte completo de errores de un import (formato = csv | ndjson), en streaming desde disco */
+    @GetMapping("/reportes/{id}")
+    public ResponseEntity<?> reporteErrores(@PathVariable String id,
+                                            @RequestParam(name = "formato", defaultValue = "csv") String formato) {
+        ErrorReport r = reportes.find(id).orElse(null);
+        if (r == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("El reporte no existe o ya expiró", null));
+        }
+        boolean csv = !"ndjson".equalsIgnoreCase(formato);
+        StreamingResponseBody body = os -> r.writeTo(os, csv);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename("errores-" + r.id() + (csv ? ".csv" : ".ndjson")).build().toString())
+                .contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8) : new MediaType("application", "x-ndjson"))
+                .body(body);
+    }
+
+    // ---------------- subidas por fragmentos (reanudables) ----------------
+
+    /** Body: { archivo, bytes, sha256? }. Responde el upload_id y el tamaño máximo de fragmento. */
+    @PostMapping("/uploads")
+    public ResponseEntity<?> crearUpload(@RequestBody Map<String, Object> body) {
+        Object bytes = body.get("bytes");
+        if (!(bytes instanceof Number)) {
+            return ResponseEntity.badRequest().body(error("Falta el tamaño del archivo (bytes)", null));
+        }
+        try {
+            UploadSession s = uploads.create(
+                    body.get("archivo") == null ? null : body.get("archivo").toString(),
+                    ((Number) bytes).longValue(),
+                    body.get("sha256") == null ? null : body.get("sha256").toString());
+            Map<String, Object> out = s.snapshot();
+            out.put("chunk_max", uploads.chunkMaxBytes());
+            return ResponseEntity.status(HttpStatus.CREATED).body(out);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(error(ex.getMessage(), null));
+        } catch (Exception ex) {
+            return serverError(ex);
+        }
+    }
+
+    @GetMapping("/uploads/{id}")
+    public ResponseEntity<?> upload(@PathVariable String id) {
+        return uploads.find(id)
+                .<ResponseEntity<?>>map(s -> ResponseEntity.ok(s.snapshot()))
+                .orElseGet(() -> uploadNoExiste());
+    }
+
+    /** Fragmento crudo (application/octet-stream) que empieza en el byte {@code offset} */
+    @PutMapping(path = "/uploads/{id}", consumes = "application/octet-stream")
+    public ResponseEntity<?> subirFragmento(@PathVariable String id,
+                                            @RequestParam("offset") long offset,
+                                            @RequestHeader(name = "X-Chunk-Sha256", required = false) String sha256,
+                                            HttpServletRequest request) {
+        UploadSession s = uploads.find(id).orElse(null);
+        if (s == null) return uploadNoExiste();
+        try {
+            return ResponseEntity.ok(uploads.append(s, offset, request.getInputStream(), sha256).snapshot());
+        } catch (ChunkUploadService.OffsetInvalidoException ex) {
+            // el cliente retoma desde "recibidos"
+            Map<String, Object> body = ex.upload().snapshot();
+            body.put("error", ex.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(error(ex.getMessage(), null));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error(ex.getMessage(), null));
+        } catch (IOException ex) {
+            // conexión cortada a mitad del fragmento: se descartó, se reenvía
+            return ResponseEntity.badRequest().body(error("Fragmento incompleto", rootMessage(ex)));
+        } catch (Exception ex) {
+            return serverError(ex);
+        }
+    }
+
+    /** Cierra la subida y lanza el import como job (tipo = consolidado | paquetes) */
+    @PostMapping("/uploads/{id}/complete")
+    public ResponseEntity<?> completarUpload(@PathVariable String id,
+                                             @RequestParam("tipo") String tipo,
+                                             @RequestParam(name = "delta", defaultValue = "false") boolean delta) {
+        UploadSession s = uploads.find(id).orElse(null);
+        if (s == null) return uploadNoExiste();
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(uploads.complete(s, tipo, delta).snapshot());
+        } catch (ImportJobService.ColaLlenaException ex) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error(ex.getMessage(), null));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(error(ex.getMessage(), null));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error(ex.getMessage(), null));
+        } catch (Exception ex) {
+            return serverError(ex);
+        }
+    }
+
+    @DeleteMapping("/uploads/{id}")
+    public ResponseEntity<?> cancelarUpload(@PathVariable String id) {
+        UploadSession s = uploads.find(id).orElse(null);
+        if (s == null) return uploadNoExiste();
+        try {
+            uploads.cancel(s);
+            return ResponseEntity.noContent().build();
+        } catch (Exception ex) {
+            return serverError(ex);
+        }
+    }
+
     // ---------------- helpers de respuesta ----------------
 
+    private static ResponseEntity<?> uploadNoExiste() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("La subida no existe o ya expiró", null));
+    }
+
     private static Map<String, Object> error(String msg, String detail) {
         Map<String, Object> m = new HashMap<>();
         m.put("error", msg);
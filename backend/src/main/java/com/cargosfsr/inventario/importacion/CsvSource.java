@@ -0,0 +1,166 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.poi.ss.usermodel.CellType;
+
+/**
+ * CSV como {@link TabularSource}: se decodifica y parsea en streaming desde disco
+ * (commons-csv sobre un Reader del FileChannel), sin cargar el archivo en memoria.
+ *
+ * Cada registro llega como una fila de celdas STRING; el número de fila es el índice del
+ * registro (0 = cabecera), así que {@code num() + 1} es el {@code getRecordNumber()} de commons-csv.
+ */
+public final class CsvSource implements TabularSource {
+
+    /** Bytes del inicio del archivo con los que se elige el charset */
+    static final int MUESTRA = 64 * 1024;
+
+    private static final Charset[] CANDIDATOS = {
+        StandardCharsets.UTF_8, Charset.forName("windows-1252"), StandardCharsets.ISO_8859_1
+    };
+
+    private final Path file;
+    private final Charset charset;
+    private final CSVFormat format;
+
+    private CsvSource(Path file, Charset charset, CSVFormat format) {
+        this.file = file;
+        this.charset = charset;
+        this.format = format;
+    }
+
+    /**
+     * @param delimiter separador; 0 = detectarlo de la primera línea
+     * @param trim      recortar espacios de cada valor
+     */
+    public static CsvSource open(Path file, Charset charset, char delimiter, boolean trim) throws IOException {
+        char d = (delimiter != 0) ? delimiter : detectDelimiter(file, charset);
+        CSVFormat fmt = CSVFormat.DEFAULT.builder()
+                .setDelimiter(d)
+                .setTrim(trim)
+                .build();
+        return new CsvSource(file, charset, fmt);
+    }
+
+    @Override
+    public String read(String preferredSheet, RowHandler handler) throws IOException {
+        String name = file.getFileName().toString();
+        handler.onSheet(name);
+        try (Reader in = reader(file, charset);
+             CSVParser parser = CSVParser.parse(in, format)) {
+            SheetRow row = new SheetRow(0);
+            int num = 0;
+            for (CSVRecord rec : parser) {
+                row.reset(num++);
+                for (int i = 0; i < rec.size(); i++) {
+                    row.add(row.next().set(i, CellType.STRING, null, rec.get(i), 0, false, false, false, null));
+                }
+                if (!handler.onRow(row)) break;
+            }
+        }
+        return name;
+    }
+
+    @Override
+    public void readAll(RowHandler handler) throws IOException {
+        read(null, handler);
+    }
+
+    @Override
+    public void close() {
+        // cada read abre y cierra su propio Reader
+    }
+
+    // ===================== Detección =====================
+
+    /**
+     * Charset "mejor esfuerzo" entre UTF-8, Windows-1252 e ISO-8859-1: el que deje menos
+     * caracteres de reemplazo (U+FFFD pesa 5) y menos "Ã"/"Â" de mojibake.
+     * Se decide con los primeros {@link #MUESTRA} bytes, leídos una sola vez; si el resto del
+     * archivo trae bytes que no son UTF-8, los resuelve el lector (ver {@link LenientUtf8Reader}).
+     */
+    public static Charset detectCharset(Path file) throws IOException {
+        ByteBuffer muestra = ByteBuffer.allocate(MUESTRA);
+        boolean completo;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (muestra.hasRemaining()) {
+                if (ch.read(muestra) < 0) break;
+            }
+            completo = ch.position() >= ch.size();
+        }
+        muestra.flip();
+
+        Charset best = null;
+        long bestScore = Long.MAX_VALUE;
+        char[] buf = new char[MUESTRA];
+        for (Charset cs : CANDIDATOS) {
+            long score = badCharScore(muestra.duplicate(), completo, cs, buf);
+            if (score < bestScore) {
+                best = cs;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /** Puntaje de la muestra; si el archivo sigue, una secuencia cortada al final no cuenta */
+    private static long badCharScore(ByteBuffer muestra, boolean completo, Charset cs, char[] buf) {
+        CharsetDecoder dec = cs.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer out = CharBuffer.wrap(buf);
+        dec.decode(muestra, out, completo);
+        if (completo) dec.flush(out);
+        long score = 0;
+        for (int i = 0; i < out.position(); i++) {
+            char c = buf[i];
+            if (c == '\uFFFD') score += 5;
+            else if (c == 'Ã' || c == 'Â') score++;
+        }
+        return score;
+    }
+
+    /** Separador más frecuente en la primera línea (';' gana empates, luego ',') */
+    static char detectDelimiter(Path file, Charset cs) throws IOException {
+        int commas = 0, semis = 0, tabs = 0;
+        try (Reader in = reader(file, cs)) {
+            int c;
+            while ((c = in.read()) != -1 && c != '\n') {
+                if (c == ',') commas++;
+                else if (c == ';') semis++;
+                else if (c == '\t') tabs++;
+            }
+        }
+        if (semis >= commas && semis >= tabs) return ';';
+        if (commas >= semis && commas >= tabs) return ',';
+        return '\t';
+    }
+
+    /**
+     * Reader sobre el canal del archivo. En UTF-8 los bytes inválidos se leen como Windows-1252;
+     * en los demás charsets lo inválido se reemplaza por U+FFFD (como new String).
+     */
+    private static Reader reader(Path file, Charset cs) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        if (StandardCharsets.UTF_8.equals(cs)) return new LenientUtf8Reader(ch, 64 * 1024);
+        return new BufferedReader(Channels.newReader(ch, cs.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), -1), 64 * 1024);
+    }
+}
@@ -0,0 +1,282 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * CSV recorrido a nivel de bytes, para el import de tracks: separa registros y campos sobre un
+ * buffer del archivo sin decodificar nada, y solo arma el String de los campos que se piden
+ * ({@link #get}). Las columnas que el import no usa nunca se convierten.
+ *
+ * Acepta lo mismo que {@link CsvSource} (commons-csv DEFAULT con trim): comillas dobles con ""
+ * escapado, saltos CR, LF o CRLF, líneas vacías ignoradas y valores recortados. Además salta el
+ * BOM de UTF-8. Los separadores, comillas y saltos son ASCII y los charsets posibles (UTF-8,
+ * Windows-1252, ISO-8859-1) no los usan dentro de otros caracteres, así que cortar por bytes es seguro.
+ *
+ * El archivo se lee por el canal a un buffer propio (no se mapea: el archivo temporal se borra
+ * al terminar y un mapeo no se puede liberar a mano). El registro actual queda en el buffer
+ * hasta el próximo {@link #next()}; un registro más grande que el buffer lo hace crecer.
+ */
+public final class CsvTokenizer implements Closeable {
+
+    static final int BUFFER = 1 << 20;
+
+    private final FileChannel ch;
+    private byte delim;
+    private final char[] tabla;            // byte -> char en charsets de un byte; null en UTF-8
+    private final CharsetDecoder utf8;
+
+    private byte[] buf;
+    private int lim;                       // bytes válidos en buf
+    private int pos;                       // inicio del próximo registro
+    private boolean eof;
+    private long num = -1;
+
+    // campos del registro actual: [desde, hasta) en buf, ya recortados; dobles = trae "" a desdoblar
+    private int n;
+    private int[] desde = new int[32];
+    private int[] hasta = new int[32];
+    private boolean[] dobles = new boolean[32];
+
+    private byte[] tmp = new byte[256];
+    private char[] chars = new char[256];
+
+    private CsvTokenizer(FileChannel ch, Charset cs, int buffer) {
+        this.ch = ch;
+        this.buf = new byte[buffer];
+        if (StandardCharsets.UTF_8.equals(cs)) {
+            this.tabla = null;
+            this.utf8 = LenientUtf8Reader.decoder();
+        } else {
+            this.tabla = tablaDeUnByte(cs);
+            this.utf8 = null;
+        }
+    }
+
+    /**
+     * @param charset   UTF-8 (bytes inválidos como Windows-1252, igual que CsvSource) o uno de un byte
+     * @param delimiter separador; 0 = detectarlo de la primera línea
+     */
+    public static CsvTokenizer open(Path file, Charset charset, char delimiter) throws IOException {
+        return open(file, charset, delimiter, BUFFER);
+    }
+
+    static CsvTokenizer open(Path file, Charset charset, char delimiter, int buffer) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            CsvTokenizer t = new CsvTokenizer(ch, charset, buffer);
+            while (!t.eof && !t.primeraLinea()) t.llenar();
+            if (t.lim >= 3 && t.buf[0] == (byte) 0xEF && t.buf[1] == (byte) 0xBB && t.buf[2] == (byte) 0xBF
+                    && t.tabla == null) {
+                t.pos = 3;
+            }
+            char d = (delimiter != 0) ? delimiter : t.detectDelimiter();
+            if (d > 0x7F) throw new IllegalArgumentException("Separador no ASCII: " + d);
+            t.delim = (byte) d;
+            return t;
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** Avanza al próximo registro; false al terminar el archivo */
+    public boolean next() throws IOException {
+        for (;;) {
+            while (pos < lim && (buf[pos] == '\n' || buf[pos] == '\r')) pos++;   // líneas vacías
+            if (pos == lim) {
+                if (eof) {
+                    n = 0;
+                    return false;
+                }
+                llenar();
+                continue;
+            }
+            int fin = leerRegistro(pos);
+            if (fin < 0) {
+                llenar();
+                continue;
+            }
+            pos = fin;
+            num++;
+            return true;
+        }
+    }
+
+    /** Índice del registro actual (0 = cabecera); {@code num() + 1} es el número de fila de commons-csv */
+    public long num() {
+        return num;
+    }
+
+    /** Separador en uso (el dado o el detectado en la primera línea) */
+    public char delimiter() {
+        return (char) delim;
+    }
+
+    /** Campos del registro actual */
+    public int size() {
+        return n;
+    }
+
+    /** Campo recortado, "" si está vacío, null si el registro no tiene esa columna */
+    public String get(int i) {
+        if (i < 0 || i >= n) return null;
+        int a = desde[i], z = hasta[i];
+        if (a == z) return "";
+        if (!dobles[i]) return decode(buf, a, z - a);
+        byte[] t = tmp(z - a);
+        int k = 0;
+        for (int p = a; p < z; p++) {
+            t[k++] = buf[p];
+            if (buf[p] == '"') p++;        // "" -> "
+        }
+        return decode(t, 0, k);
+    }
+
+    /** Sin valor (vacío o solo espacios), sin armar el String */
+    public boolean isBlank(int i) {
+        return i < 0 || i >= n || desde[i] == hasta[i];
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+
+    // ===================== Registros =====================
+
+    /**
+     * Separa el registro que empieza en {@code p}; devuelve dónde empieza el siguiente,
+     * o -1 si el registro sigue más allá de lo leído.
+     */
+    private int leerRegistro(int p) throws IOException {
+        final byte[] b = buf;
+        final int lim = this.lim;
+        final byte d = delim;
+        n = 0;
+        for (;;) {
+            if (p < lim && b[p] == '"') {
+                int ini = ++p;
+                boolean esc = false;
+                for (;;) {
+                    if (p >= lim) {
+                        if (eof) throw new IOException("(registro " + (num + 2) + ") el archivo termina dentro de un campo entre comillas");
+                        return -1;
+                    }
+                    if (b[p] == '"') {
+                        if (p + 1 >= lim && !eof) return -1;
+                        if (p + 1 < lim && b[p + 1] == '"') {
+                            esc = true;
+                            p += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    p++;
+                }
+                campo(ini, p++, esc);
+                while (p < lim && b[p] != d && b[p] != '\n' && b[p] != '\r') {
+                    if ((b[p] & 0xFF) > ' ') {
+                        throw new IOException("(registro " + (num + 2) + ") carácter inválido entre el campo entre comillas y el separador");
+                    }
+                    p++;
+                }
+            } else {
+                int ini = p;
+                while (p < lim && b[p] != d && b[p] != '\n' && b[p] != '\r') p++;
+                campo(ini, p, false);
+            }
+            if (p >= lim) return eof ? p : -1;
+            if (b[p] != d) return p + 1;       // \n o \r; el resto del salto se salta como línea vacía
+            p++;
+        }
+    }
+
+    private void campo(int a, int z, boolean esc) {
+        while (a < z && (buf[a] & 0xFF) <= ' ') a++;
+        while (z > a && (buf[z - 1] & 0xFF) <= ' ') z--;
+        if (n == desde.length) {
+            desde = Arrays.copyOf(desde, n * 2);
+            hasta = Arrays.copyOf(hasta, n * 2);
+            dobles = Arrays.copyOf(dobles, n * 2);
+        }
+        desde[n] = a;
+        hasta[n] = z;
+        dobles[n] = esc;
+        n++;
+    }
+
+    /** Descarta lo ya consumido y lee más; si el registro en curso llena el buffer, lo agranda */
+    private void llenar() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, lim - pos);
+            lim -= pos;
+            pos = 0;
+        }
+        if (lim == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+        int r = ch.read(ByteBuffer.wrap(buf, lim, buf.length - lim));
+        if (r < 0) eof = true;
+        else lim += r;
+    }
+
+    private boolean primeraLinea() {
+        for (int p = 0; p < lim; p++) {
+            if (buf[p] == '\n') return true;
+        }
+        return false;
+    }
+
+    /** Igual que CsvSource.detectDelimiter, contando bytes de la primera línea ya leída */
+    private char detectDelimiter() {
+        int commas = 0, semis = 0, tabs = 0;
+        for (int p = pos; p < lim && buf[p] != '\n'; p++) {
+            if (buf[p] == ',') commas++;
+            else if (buf[p] == ';') semis++;
+            else if (buf[p] == '\t') tabs++;
+        }
+        if (semis >= commas && semis >= tabs) return ';';
+        if (commas >= semis && commas >= tabs) return ',';
+        return '\t';
+    }
+
+    // ===================== Decodificación =====================
+
+    private String decode(byte[] b, int off, int len) {
+        int end = off + len;
+        int i = off;
+        while (i < end && b[i] >= 0) i++;
+        if (i == end) return new String(b, off, len, StandardCharsets.ISO_8859_1);   // ASCII
+        char[] c = chars(len);
+        if (tabla == null) return LenientUtf8Reader.decode(utf8, ByteBuffer.wrap(b, off, len), c);
+        for (int k = 0; k < len; k++) c[k] = tabla[b[off + k] & 0xFF];
+        return new String(c, 0, len);
+    }
+
+    private byte[] tmp(int len) {
+        if (tmp.length < len) tmp = new byte[Math.max(len, tmp.length * 2)];
+        return tmp;
+    }
+
+    private char[] chars(int len) {
+        if (chars.length < len) chars = new char[Math.max(len, chars.length * 2)];
+        return chars;
+    }
+
+    /** byte -> char de un charset de un byte; lo que no define queda U+FFFD (como new String) */
+    private static char[] tablaDeUnByte(Charset cs) {
+        if (cs.newEncoder().maxBytesPerChar() > 1) {
+            throw new IllegalArgumentException("Charset no soportado: " + cs);
+        }
+        byte[] all = new byte[256];
+        for (int i = 0; i < 256; i++) all[i] = (byte) i;
+        return new String(all, cs).toCharArray();
+    }
+}
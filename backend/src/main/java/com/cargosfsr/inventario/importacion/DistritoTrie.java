@@ -0,0 +1,205 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Nombres y alias de distritos compilados a un trie sobre el texto plegado (minúsculas, sin
+ * acentos, espacios colapsados), con enlaces de fallo (Aho-Corasick) para buscar "contiene".
+ * La celda se pliega con una tabla por char y se recorre una sola vez: sin regex, sin replaceAll
+ * y sin importar cuántos distritos haya.
+ *
+ * "Contiene" exige borde de palabra a los dos lados ("Distrito: Roxana" sí, "Roxanas" no); si
+ * aparecen varios gana el que empieza antes y, a igual inicio, el más largo.
+ * Es inmutable; para recargar se compila uno nuevo (ver DistritoDictionary).
+ */
+public final class DistritoTrie {
+
+    /** Distrito de la BD al que lleva un nombre o alias */
+    public record Canon(long id, String nombre) { }
+
+    public static final DistritoTrie VACIO = new DistritoTrie(List.of());
+
+    private static final char[] PLIEGUE = new char[0x250];
+
+    static {
+        for (char c = 0; c < PLIEGUE.length; c++) {
+            char l = Character.toLowerCase(c);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) l = ' ';
+            else if (l >= 0x80) l = Normalizer.normalize(String.valueOf(l), Normalizer.Form.NFD).charAt(0);
+            PLIEGUE[c] = l;
+        }
+    }
+
+    private final Canon[] valores;
+    private final int[] largo;          // largo de la clave que termina en el nodo
+    private final int[] valor;          // índice en valores, o -1
+    private final char[][] claves;      // hijos de cada nodo ordenados por char
+    private final int[][] hijos;
+    private final int[] fallo;
+    private final int[] sigSalida;      // nodo más cercano en la cadena de fallos con valor, o -1
+
+    /**
+     * @param entradas nombre o alias -> distrito; si dos claves se pliegan igual, queda la primera
+     */
+    public DistritoTrie(List<Map.Entry<String, Canon>> entradas) {
+        List<Canon> vs = new ArrayList<>();
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> fin = new ArrayList<>();
+        List<Integer> prof = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        fin.add(-1);
+        prof.add(0);
+        for (Map.Entry<String, Canon> e : entradas) {
+            String k = plegar(e.getKey());
+            if (k.isEmpty()) continue;
+            int n = 0;
+            for (int i = 0; i < k.length(); i++) {
+                Integer sig = trie.get(n).get(k.charAt(i));
+                if (sig == null) {
+                    sig = trie.size();
+                    trie.add(new TreeMap<>());
+                    fin.add(-1);
+                    prof.add(i + 1);
+                    trie.get(n).put(k.charAt(i), sig);
+                }
+                n = sig;
+            }
+            if (fin.get(n) < 0) {
+                fin.set(n, vs.size());
+                vs.add(e.getValue());
+            }
+        }
+        valores = vs.toArray(new Canon[0]);
+
+        int nodos = trie.size();
+        claves = new char[nodos][];
+        hijos = new int[nodos][];
+        valor = new int[nodos];
+        largo = new int[nodos];
+        for (int n = 0; n < nodos; n++) {
+            TreeMap<Character, Integer> m = trie.get(n);
+            claves[n] = new char[m.size()];
+            hijos[n] = new int[m.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> e : m.entrySet()) {
+                claves[n][k] = e.getKey();
+                hijos[n][k++] = e.getValue();
+            }
+            valor[n] = fin.get(n);
+            largo[n] = prof.get(n);
+        }
+
+        // enlaces de fallo por BFS
+        fallo = new int[nodos];
+        sigSalida = new int[nodos];
+        sigSalida[0] = -1;
+        ArrayDeque<Integer> cola = new ArrayDeque<>();
+        for (int h : hijos[0]) {
+            fallo[h] = 0;
+            sigSalida[h] = -1;
+            cola.add(h);
+        }
+        while (!cola.isEmpty()) {
+            int u = cola.poll();
+            for (int k = 0; k < claves[u].length; k++) {
+                char c = claves[u][k];
+                int v = hijos[u][k];
+                int f = fallo[u];
+                while (f != 0 && hijo(f, c) < 0) f = fallo[f];
+                int g = hijo(f, c);
+                fallo[v] = (g >= 0 && g != v) ? g : 0;
+                sigSalida[v] = valor[fallo[v]] >= 0 ? fallo[v] : sigSalida[fallo[v]];
+                cola.add(v);
+            }
+        }
+    }
+
+    /** Distritos distintos que se pueden reconocer */
+    public int distritos() {
+        return (int) Arrays.stream(valores).map(Canon::id).distinct().count();
+    }
+
+    /** La celda entera es un nombre o alias (con cualquier mayúscula, acento o espaciado) */
+    public Canon exacto(String texto) {
+        if (texto == null) return null;
+        char[] t = new char[texto.length()];
+        int len = plegar(texto, t);
+        int n = 0;
+        for (int i = 0; i < len && n >= 0; i++) n = hijo(n, t[i]);
+        return (n > 0 && valor[n] >= 0) ? valores[valor[n]] : null;
+    }
+
+    /** Primer nombre o alias que aparece en la celda como palabra(s) completa(s) */
+    public Canon buscar(String texto) {
+        if (texto == null) return null;
+        char[] t = new char[texto.length()];
+        int len = plegar(texto, t);
+        int mejor = -1, mejorIni = Integer.MAX_VALUE, mejorLargo = 0;
+        int n = 0;
+        for (int i = 0; i < len; i++) {
+            char c = t[i];
+            int g;
+            while ((g = hijo(n, c)) < 0 && n != 0) n = fallo[n];
+            n = Math.max(g, 0);
+            if (i + 1 < len && letraODigito(t[i + 1])) continue;       // no termina palabra
+            for (int o = valor[n] >= 0 ? n : sigSalida[n]; o >= 0; o = sigSalida[o]) {
+                int ini = i + 1 - largo[o];
+                if (ini > 0 && letraODigito(t[ini - 1])) continue;     // no empieza palabra
+                if (ini < mejorIni || (ini == mejorIni && largo[o] > mejorLargo)) {
+                    mejor = valor[o];
+                    mejorIni = ini;
+                    mejorLargo = largo[o];
+                }
+            }
+        }
+        return mejor < 0 ? null : valores[mejor];
+    }
+
+    private int hijo(int n, char c) {
+        char[] ks = claves[n];
+        int lo = 0, hi = ks.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ks[mid] < c) lo = mid + 1;
+            else if (ks[mid] > c) hi = mid - 1;
+            else return hijos[n][mid];
+        }
+        return -1;
+    }
+
+    private static boolean letraODigito(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+
+    /** Pliega s en out (mismo largo o menos); devuelve el largo */
+    private static int plegar(String s, char[] out) {
+        int len = 0;
+        boolean espacio = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            c = (c < PLIEGUE.length) ? PLIEGUE[c] : (Character.isWhitespace(c) ? ' ' : Character.toLowerCase(c));
+            if (c == ' ') {
+                espacio = len > 0;
+                continue;
+            }
+            if (espacio) {
+                out[len++] = ' ';
+                espacio = false;
+            }
+            out[len++] = c;
+        }
+        return len;
+    }
+
+    /** Minúsculas, sin acentos (ñ -> n), espacios colapsados y sin espacios en los extremos */
+    static String plegar(String s) {
+        char[] t = new char[s.length()];
+        return new String(t, 0, plegar(s, t));
+    }
+}
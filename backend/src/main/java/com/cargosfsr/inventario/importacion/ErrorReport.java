@@ -0,0 +1,159 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Errores por fila de un import, escritos a un archivo NDJSON a medida que aparecen
+ * ({"fila":N,"tracking":"...","motivo":"..."} por línea) en vez de juntarlos en memoria.
+ *
+ * La respuesta del import lleva solo el total y las primeras {@link #MUESTRAS} líneas con el
+ * texto de siempre ("Fila N (tracking): motivo"); el reporte completo se descarga aparte.
+ */
+public final class ErrorReport implements Closeable {
+
+    public static final int MUESTRAS = 50;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final String id;
+    private final Path file;
+    private final Instant createdAt = Instant.now();
+    private final List<String> muestras = new ArrayList<>();
+    private BufferedWriter out;
+    private long total;
+
+    private ErrorReport(String id, Path file) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    /** Reporte nuevo (vacío) en {@code dir} */
+    public static ErrorReport crear(Path dir) throws IOException {
+        String id = UUID.randomUUID().toString();
+        return new ErrorReport(id, dir.resolve(id + ".ndjson"));
+    }
+
+    public String id()          { return id; }
+    public Path file()          { return file; }
+    public Instant createdAt()  { return createdAt; }
+
+    public synchronized long total() {
+        return total;
+    }
+
+    public synchronized List<String> muestras() {
+        return new ArrayList<>(muestras);
+    }
+
+    /** @param tracking null si la fila no trae uno válido */
+    public synchronized void add(long fila, String tracking, String motivo) {
+        if (out == null) throw new IllegalStateException("Reporte de errores cerrado");
+        Map<String, Object> linea = new LinkedHashMap<>();
+        linea.put("fila", fila);
+        linea.put("tracking", tracking);
+        linea.put("motivo", motivo);
+        try {
+            out.write(JSON.writeValueAsString(linea));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        total++;
+        if (muestras.size() < MUESTRAS) muestras.add(texto(fila, tracking, motivo));
+    }
+
+    /**
+     * Agrega los errores de varios reportes (cada uno ya en orden de fila) mezclados en orden
+     * de fila, sin cargarlos en memoria. Los cierra pero no los borra.
+     */
+    public void addOrdenado(List<ErrorReport> partes) throws IOException {
+        record Cabeza(long fila, JsonNode nodo, int parte) { }
+        List<BufferedReader> readers = new ArrayList<>(partes.size());
+        try {
+            PriorityQueue<Cabeza> cola = new PriorityQueue<>((a, b) -> Long.compare(a.fila(), b.fila()));
+            for (ErrorReport p : partes) {
+                p.close();
+                readers.add(Files.newBufferedReader(p.file(), StandardCharsets.UTF_8));
+            }
+            for (int i = 0; i < readers.size(); i++) {
+                JsonNode n = siguiente(readers.get(i));
+                if (n != null) cola.add(new Cabeza(n.get("fila").asLong(), n, i));
+            }
+            while (!cola.isEmpty()) {
+                Cabeza c = cola.poll();
+                JsonNode t = c.nodo().get("tracking");
+                add(c.fila(), (t == null || t.isNull()) ? null : t.asText(), c.nodo().get("motivo").asText());
+                JsonNode n = siguiente(readers.get(c.parte()));
+                if (n != null) cola.add(new Cabeza(n.get("fila").asLong(), n, c.parte()));
+            }
+        } finally {
+            for (BufferedReader r : readers) r.close();
+        }
+    }
+
+    private static JsonNode siguiente(BufferedReader r) throws IOException {
+        String line;
+        while ((line = r.readLine()) != null) {
+            if (!line.isBlank()) return JSON.readTree(line);
+        }
+        return null;
+    }
+
+    /** Copia el reporte (ya cerrado) a {@code os}: NDJSON tal cual o CSV (fila,tracking,motivo) con BOM para Excel */
+    public void writeTo(OutputStream os, boolean csv) throws IOException {
+        if (!csv) {
+            Files.copy(file, os);
+            return;
+        }
+        Writer w = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+        w.write('\uFEFF');
+        CSVPrinter printer = new CSVPrinter(w, CSVFormat.DEFAULT.builder().setHeader("fila", "tracking", "motivo").build());
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JsonNode n;
+            while ((n = siguiente(r)) != null) {
+                JsonNode t = n.get("tracking");
+                printer.printRecord(n.get("fila").asLong(), (t == null || t.isNull()) ? "" : t.asText(), n.get("motivo").asText());
+            }
+        }
+        printer.flush();
+    }
+
+    /** Texto de siempre para la respuesta del import */
+    public static String texto(long fila, String tracking, String motivo) {
+        return (tracking == null)
+                ? "Fila " + fila + ": " + motivo
+                : "Fila " + fila + " (" + tracking + "): " + motivo;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+}
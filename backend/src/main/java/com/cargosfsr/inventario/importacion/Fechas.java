@@ -0,0 +1,115 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.sql.Timestamp;
+import java.text.ParsePosition;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+
+/**
+ * Fechas de texto de los imports con formateadores compartidos (thread-safe), en vez de
+ * un SimpleDateFormat nuevo por celda.
+ *
+ * Mismo criterio que los SimpleDateFormat no lenient que reemplaza: fecha válida estricta,
+ * se acepta texto sobrante al final y la hora local se interpreta en la zona por defecto.
+ */
+public final class Fechas {
+
+    public static final DateTimeFormatter DMY_HMS = estricto("d/M/u H:m:s");
+    public static final DateTimeFormatter DMY_HM  = estricto("d/M/u H:m");
+    public static final DateTimeFormatter DMY     = estricto("d/M/u");
+    public static final DateTimeFormatter YMD_HMS = estricto("u-M-d H:m:s");
+    public static final DateTimeFormatter YMD     = estricto("u-M-d");
+
+    private Fechas() {}
+
+    private static DateTimeFormatter estricto(String pattern) {
+        return DateTimeFormatter.ofPattern(pattern).withResolverStyle(ResolverStyle.STRICT);
+    }
+
+    /**
+     * Primer formato que reconozca el texto (los espacios iniciales se ignoran).
+     *
+     * @return la fecha/hora, o null si ninguno aplica
+     */
+    public static Timestamp parse(String s, DateTimeFormatter... formatos) {
+        if (s == null) return null;
+        int start = 0;
+        while (start < s.length() && Character.isWhitespace(s.charAt(start))) start++;
+        if (start == s.length()) return null;
+        for (DateTimeFormatter f : formatos) {
+            // parseUnresolved no lanza excepción: filtra barato los formatos que no aplican
+            if (f.parseUnresolved(s, new ParsePosition(start)) == null) continue;
+            Timestamp t = resolver(s, start, f);
+            if (t != null) return t;
+            // forma correcta pero fecha imposible (31/02...): probar el siguiente
+        }
+        return null;
+    }
+
+    /** Solo si f describe el texto entero (sin sobrante); null si no */
+    static Timestamp parseCompleto(String s, DateTimeFormatter f) {
+        int start = 0;
+        while (start < s.length() && Character.isWhitespace(s.charAt(start))) start++;
+        ParsePosition pp = new ParsePosition(start);
+        if (start == s.length() || f.parseUnresolved(s, pp) == null || pp.getIndex() != s.length()) return null;
+        return resolver(s, start, f);
+    }
+
+    private static Timestamp resolver(String s, int start, DateTimeFormatter f) {
+        try {
+            TemporalAccessor ta = f.parse(s, new ParsePosition(start));
+            LocalDateTime ldt = ta.isSupported(ChronoField.HOUR_OF_DAY)
+                    ? LocalDateTime.from(ta)
+                    : LocalDate.from(ta).atStartOfDay();
+            return Timestamp.valueOf(ldt);
+        } catch (RuntimeException invalida) {
+            return null;
+        }
+    }
+
+    /**
+     * Fechas de una columna con un formato "aprendido": el primero de la lista que describe un
+     * valor entero se prueba antes que la lista en los valores siguientes, y en un archivo parejo
+     * cada celda pasa por un solo formateador. Si no describe el valor completo se recorre la
+     * lista: el resultado es siempre el mismo que {@link Fechas#parse}.
+     *
+     * El formato puede venir de un import anterior (ver LayoutProfiles). No es thread-safe.
+     */
+    public static final class Columna {
+
+        private final DateTimeFormatter[] formatos;
+        private DateTimeFormatter exacto;
+
+        public Columna(DateTimeFormatter exacto, DateTimeFormatter... formatos) {
+            this.exacto = exacto;
+            this.formatos = formatos;
+        }
+
+        public Timestamp parse(String s) {
+            if (s == null) return null;
+            if (exacto != null) {
+                Timestamp t = parseCompleto(s, exacto);
+                if (t != null) return t;
+            }
+            Timestamp t = Fechas.parse(s, formatos);
+            if (t != null && exacto == null) {
+                for (DateTimeFormatter f : formatos) {
+                    if (parseCompleto(s, f) != null) {
+                        exacto = f;
+                        break;
+                    }
+                }
+            }
+            return t;
+        }
+
+        /** Formato aprendido, o null si todavía ninguno describió un valor entero */
+        public DateTimeFormatter formato() {
+            return exacto;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.sql.Timestamp;
+
+/**
+ * Huella compacta (FNV-1a de 64 bits) de los campos de una fila, para detectar si cambió
+ * desde el último import. Estado en un long: sin objetos por fila.
+ *
+ * <pre>
+ *   long h = Huella.INICIO;
+ *   h = Huella.mix(h, marchamo);
+ *   h = Huella.mix(h, distritoId);
+ * </pre>
+ */
+public final class Huella {
+
+    public static final long INICIO = 0xcbf29ce484222325L;
+    private static final long PRIMO = 0x100000001b3L;
+
+    // marcas de campo: null y "" (o 0) tienen que dar huellas distintas
+    private static final int NULO = 0x01;
+    private static final int VALOR = 0x02;
+    private static final int FIN = 0x00;
+
+    private Huella() {}
+
+    public static long mix(long h, String s) {
+        if (s == null) return fin(octeto(h, NULO));
+        h = octeto(h, VALOR);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            h = octeto(h, c & 0xff);
+            h = octeto(h, c >>> 8);
+        }
+        return fin(h);
+    }
+
+    public static long mix(long h, Long v) {
+        if (v == null) return fin(octeto(h, NULO));
+        return fin(largo(octeto(h, VALOR), v));
+    }
+
+    public static long mix(long h, Timestamp t) {
+        if (t == null) return fin(octeto(h, NULO));
+        return fin(largo(octeto(h, VALOR), t.getTime()));
+    }
+
+    private static long largo(long h, long v) {
+        for (int k = 0; k < 8; k++) {
+            h = octeto(h, (int) (v >>> (k * 8)) & 0xff);
+        }
+        return h;
+    }
+
+    private static long fin(long h) {
+        return octeto(h, FIN);
+    }
+
+    private static long octeto(long h, int b) {
+        return (h ^ b) * PRIMO;
+    }
+}
@@ -0,0 +1,96 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estado de un import en segundo plano (ver ImportJobService).
+ */
+public final class ImportJob implements ImportProgress {
+
+    private final String id;
+    private final String tipo;
+    private final String archivo;
+    private final String actor;
+    private final Instant createdAt = Instant.now();
+
+    private volatile Phase phase = Phase.EN_COLA;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Map<String, Object> resultado;
+    private volatile String error;
+
+    private final AtomicLong parsed = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public ImportJob(String id, String tipo, String archivo, String actor) {
+        this.id = id;
+        this.tipo = tipo;
+        this.archivo = archivo;
+        this.actor = actor;
+    }
+
+    public String id()          { return id; }
+    public String tipo()        { return tipo; }
+    public String archivo()     { return archivo; }
+    public String actor()       { return actor; }
+    public Phase currentPhase() { return phase; }
+    public Instant finishedAt() { return finishedAt; }
+
+    public boolean isFinished() {
+        return phase == Phase.TERMINADO || phase == Phase.FALLIDO;
+    }
+
+    @Override
+    public void phase(Phase p) {
+        if (startedAt == null && p != Phase.EN_COLA) startedAt = Instant.now();
+        this.phase = p;
+    }
+
+    @Override public void parsed(long rows)  { parsed.addAndGet(rows); }
+    @Override public void applied(long rows) { applied.addAndGet(rows); }
+    @Override public void errors(long rows)  { errors.addAndGet(rows); }
+
+    public void succeed(Map<String, Object> res) {
+        this.resultado = res;
+        this.finishedAt = Instant.now();
+        phase(Phase.TERMINADO);
+    }
+
+    public void fail(String message) {
+        this.error = message;
+        this.finishedAt = Instant.now();
+        phase(Phase.FALLIDO);
+    }
+
+    /** Foto del estado para la API */
+    public Map<String, Object> snapshot() {
+        Instant start = startedAt;
+        Instant end = (finishedAt != null) ? finishedAt : Instant.now();
+        long ms = (start == null) ? 0 : Math.max(0, end.toEpochMilli() - start.toEpochMilli());
+        long leidas = parsed.get();
+        long aplicadas = applied.get();
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("job_id", id);
+        out.put("tipo", tipo);
+        out.put("archivo", archivo);
+        out.put("actor", actor);
+        out.put("fase", phase.name());
+        out.put("filas_leidas", leidas);
+        out.put("filas_aplicadas", aplicadas);
+        out.put("errores", errors.get());
+        out.put("filas_por_seg", ms == 0 ? 0 : Math.round(aplicadas * 1000.0 / ms));
+        out.put("lectura_filas_por_seg", ms == 0 ? 0 : Math.round(leidas * 1000.0 / ms));
+        out.put("creado", createdAt);
+        out.put("inicio", start);
+        out.put("fin", finishedAt);
+        out.put("ms", ms);
+        if (error != null) out.put("error", error);
+        if (resultado != null) out.put("resultado", resultado);
+        return out;
+    }
+}
@@ -0,0 +1,119 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Pipeline productor/consumidor para imports.
+ *
+ * El productor (parser) corre en el executor y emite elementos que se agrupan en lotes;
+ * el escritor corre en el hilo que llama a {@link #run}, que es el que tiene la transacción
+ * y la conexión JDBC. La cola es acotada: si la BD va más lenta que el parser, el parser
+ * espera (back-pressure) y la memoria queda limitada a {@code maxBatches * batchSize}.
+ */
+public final class ImportPipeline {
+
+    /** Parser: recorre el archivo y llama a emit por cada elemento */
+    @FunctionalInterface
+    public interface Producer<T> {
+        void produce(Consumer<T> emit) throws Exception;
+    }
+
+    /** Escritor: aplica un lote en BD */
+    @FunctionalInterface
+    public interface BatchWriter<T> {
+        void write(List<T> batch) throws Exception;
+    }
+
+    private static final List<Object> END = new ArrayList<>(0);
+    private static final long OFFER_WAIT_MS = 200;
+
+    private ImportPipeline() {}
+
+    public static <T> void run(Executor executor, int batchSize, int maxBatches,
+                               Producer<T> producer, BatchWriter<T> writer) throws Exception {
+        BlockingQueue<List<?>> queue = new ArrayBlockingQueue<>(Math.max(1, maxBatches));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Flag cancelled = new Flag();
+
+        CompletableFuture<Void> parsing = CompletableFuture.runAsync(() -> {
+            List<T>[] buf = newBuffer(batchSize);
+            try {
+                producer.produce(item -> {
+                    buf[0].add(item);
+                    if (buf[0].size() >= batchSize) {
+                        put(queue, buf[0], cancelled);
+                        buf[0] = new ArrayList<>(batchSize);
+                    }
+                });
+                if (!buf[0].isEmpty()) put(queue, buf[0], cancelled);
+            } catch (CancellationException stop) {
+                return; // el escritor falló; nadie espera el END
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+            try {
+                put(queue, END, cancelled);
+            } catch (CancellationException ignore) {
+                // el escritor ya no consume
+            }
+        }, executor);
+
+        try {
+            while (true) {
+                List<?> batch = queue.poll(OFFER_WAIT_MS, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    if (parsing.isDone() && queue.isEmpty()) break; // defensivo: el parser murió sin END
+                    continue;
+                }
+                if (batch == END) break;
+                @SuppressWarnings("unchecked")
+                List<T> typed = (List<T>) batch;
+                writer.write(typed);
+            }
+        } catch (Exception | Error e) {
+            cancelled.set();
+            queue.clear();
+            try {
+                parsing.join();
+            } catch (Exception ignore) {
+                // ya estamos propagando el error del escritor
+            }
+            throw e;
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof Exception ex) throw ex;
+        if (t instanceof Error err) throw err;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T>[] newBuffer(int batchSize) {
+        return new List[] { new ArrayList<T>(batchSize) };
+    }
+
+    private static void put(BlockingQueue<List<?>> queue, List<?> batch, Flag cancelled) {
+        try {
+            while (!queue.offer(batch, OFFER_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                if (cancelled.isSet()) throw new CancellationException();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
+    private static final class Flag {
+        private volatile boolean set;
+        void set() { set = true; }
+        boolean isSet() { return set; }
+    }
+}
@@ -0,0 +1,26 @@
+package com.cargosfsr.inventario.importacion;
+
+/**
+ * Avance de un import. Los contadores son incrementos y pueden llegar
+ * desde el hilo del parser y desde el hilo escritor a la vez.
+ */
+public interface ImportProgress {
+
+    enum Phase { EN_COLA, LEYENDO, APLICANDO, TERMINADO, FALLIDO }
+
+    void phase(Phase phase);
+
+    void parsed(long rows);
+
+    void applied(long rows);
+
+    void errors(long rows);
+
+    /** Para imports síncronos: no reporta nada */
+    ImportProgress NONE = new ImportProgress() {
+        @Override public void phase(Phase phase) {}
+        @Override public void parsed(long rows) {}
+        @Override public void applied(long rows) {}
+        @Override public void errors(long rows) {}
+    };
+}
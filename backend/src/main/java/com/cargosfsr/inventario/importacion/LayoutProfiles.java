@@ -0,0 +1,72 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lo que un import detectó de un archivo (charset, separador, columna de tracking, formato de
+ * fecha), guardado por firma de cabecera: el próximo archivo con la misma cabecera lo reusa y se
+ * salta la detección. Los archivos de cada origen llegan siempre con el mismo formato.
+ *
+ * En memoria, LRU de {@code max} perfiles; thread-safe. Un perfil es una pista: el que lo usa
+ * tiene que tolerar que este archivo no lo cumpla (ver Fechas.Columna, ConsolidadoParser).
+ */
+public final class LayoutProfiles {
+
+    /** Campos null / 0 = no detectado para ese tipo de archivo */
+    public record Perfil(Charset charset, char delimitador, Integer colTracking, DateTimeFormatter fecha) { }
+
+    private static final int CABECERA_MAX = 64 * 1024;
+
+    private final Map<Long, Perfil> perfiles;
+
+    public LayoutProfiles(int max) {
+        this.perfiles = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Perfil> eldest) {
+                return size() > max;
+            }
+        };
+    }
+
+    public synchronized Perfil get(long firma) {
+        return perfiles.get(firma);
+    }
+
+    public synchronized void put(long firma, Perfil perfil) {
+        perfiles.put(firma, perfil);
+    }
+
+    /** Firma de un CSV: los bytes de la primera línea (hasta 64 KB), sin decodificar */
+    public static long firmaCsv(Path file) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(CABECERA_MAX);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (b.hasRemaining()) {
+                if (ch.read(b) < 0) break;
+            }
+        }
+        long h = 0xcbf29ce484222325L ^ 'C';
+        for (int i = 0; i < b.position(); i++) {
+            byte x = b.get(i);
+            if (x == '\n') break;
+            h = (h ^ (x & 0xFF)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Firma de una cabecera ya leída (p. ej. "col=texto" de cada celda de la primera fila) */
+    public static long firma(CharSequence cabecera) {
+        long h = 0xcbf29ce484222325L ^ 'X';
+        for (int i = 0; i < cabecera.length(); i++) {
+            h = (h ^ cabecera.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,103 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodifica UTF-8 en streaming; cada secuencia inválida se lee byte a byte como Windows-1252
+ * (los 5 bytes que 1252 no define, como ISO-8859-1) en vez de U+FFFD.
+ *
+ * Es el caso de los CSV que se eligieron UTF-8 por la muestra del inicio pero traen más abajo
+ * filas pegadas desde Excel en Latin-1: el texto UTF-8 sigue bien y la "é" suelta no se pierde.
+ */
+final class LenientUtf8Reader extends Reader {
+
+    private static final char[] CP1252 = new char[256];
+    static {
+        byte[] all = new byte[256];
+        for (int i = 0; i < 256; i++) all[i] = (byte) i;
+        String s = new String(all, Charset.forName("windows-1252"));
+        for (int i = 0; i < 256; i++) {
+            char c = s.charAt(i);
+            CP1252[i] = (c == '\uFFFD') ? (char) i : c;
+        }
+    }
+
+    private final ReadableByteChannel ch;
+    private final CharsetDecoder dec = decoder();
+    private final ByteBuffer in;
+    private final CharBuffer out;
+    private boolean eof, terminado;
+
+    LenientUtf8Reader(ReadableByteChannel ch, int bufSize) {
+        this.ch = ch;
+        this.in = ByteBuffer.allocate(bufSize).flip();
+        this.out = CharBuffer.allocate(bufSize).flip();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!out.hasRemaining()) fill();
+        if (!out.hasRemaining()) return -1;
+        int n = Math.min(len, out.remaining());
+        out.get(cbuf, off, n);
+        return n;
+    }
+
+    private void fill() throws IOException {
+        out.clear();
+        while (!terminado && out.position() == 0) {
+            CoderResult cr = dec.decode(in, out, eof);
+            if (cr.isError()) {
+                if (out.remaining() < cr.length()) break; // no cabe: se resuelve en el próximo fill
+                for (int i = 0; i < cr.length(); i++) out.put(CP1252[in.get() & 0xff]);
+            } else if (cr.isOverflow()) {
+                break;
+            } else if (eof) {
+                dec.flush(out);
+                terminado = true;
+            } else {
+                in.compact();
+                if (ch.read(in) < 0) eof = true;
+                in.flip();
+            }
+        }
+        out.flip();
+    }
+
+    static CharsetDecoder decoder() {
+        return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    /**
+     * Decodifica un tramo completo con la misma regla (CsvTokenizer). En UTF-8 y en el
+     * reemplazo por bytes salen a lo sumo tantos chars como bytes: {@code out} alcanza con ese largo.
+     */
+    static String decode(CharsetDecoder dec, ByteBuffer in, char[] out) {
+        dec.reset();
+        CharBuffer cb = CharBuffer.wrap(out);
+        for (;;) {
+            CoderResult cr = dec.decode(in, cb, true);
+            if (!cr.isError()) break;
+            for (int i = 0; i < cr.length(); i++) cb.put(CP1252[in.get() & 0xff]);
+        }
+        dec.flush(cb);
+        return new String(out, 0, cb.position());
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+}
@@ -0,0 +1,146 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Locale;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Celda de una hoja, independiente de si viene del lector streaming (SAX), del modelo
+ * completo de POI (.xls) o de un CSV (siempre STRING).
+ *
+ * Conserva lo mínimo para reproducir el comportamiento de POI usermodel:
+ * tipo, tipo cacheado de fórmulas, texto, número y si el estilo es de fecha.
+ *
+ * Los lectores reutilizan las celdas de fila en fila (ver {@link SheetRow}); los accesores
+ * tipados ({@link #longValue()}, {@link #integerText()}, {@link #isoDate()}...) no crean
+ * formateadores por celda.
+ */
+public final class SheetCell {
+
+    // Formatos equivalentes a los que se usaban por celda (SimpleDateFormat / Date.toString)
+    private static final DateTimeFormatter ISO_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd", Locale.ROOT);
+    private static final DateTimeFormatter DATE_TOSTRING = DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US);
+
+    private int col;
+    private CellType type;
+    private CellType cachedType;  // solo para FORMULA
+    private String text;          // STRING, o resultado texto de FORMULA
+    private double number;        // NUMERIC, o resultado numérico de FORMULA
+    private boolean bool;
+    private boolean dateFormatted;
+    private boolean date1904;
+    private String formula;
+
+    SheetCell() {
+    }
+
+    SheetCell set(int col, CellType type, CellType cachedType, String text, double number,
+                  boolean bool, boolean dateFormatted, boolean date1904, String formula) {
+        this.col = col;
+        this.type = type;
+        this.cachedType = cachedType;
+        this.text = text;
+        this.number = number;
+        this.bool = bool;
+        this.dateFormatted = dateFormatted;
+        this.date1904 = date1904;
+        this.formula = formula;
+        return this;
+    }
+
+    SheetCell copyFrom(SheetCell o) {
+        return set(o.col, o.type, o.cachedType, o.text, o.number, o.bool, o.dateFormatted, o.date1904, o.formula);
+    }
+
+    /** Carga una celda del modelo completo de POI (ruta .xls). */
+    SheetCell setFrom(Cell c) {
+        CellType t = c.getCellType();
+        switch (t) {
+            case STRING:
+                return set(c.getColumnIndex(), t, null, c.getStringCellValue(), 0, false, false, false, null);
+            case NUMERIC:
+                return set(c.getColumnIndex(), t, null, null, c.getNumericCellValue(), false,
+                        DateUtil.isCellDateFormatted(c), false, null);
+            case BOOLEAN:
+                return set(c.getColumnIndex(), t, null, null, 0, c.getBooleanCellValue(), false, false, null);
+            case FORMULA: {
+                CellType ct = c.getCachedFormulaResultType();
+                String s = null;
+                double n = 0;
+                if (ct == CellType.STRING && c.getRichStringCellValue() != null) s = c.getRichStringCellValue().getString();
+                if (ct == CellType.NUMERIC) n = c.getNumericCellValue();
+                return set(c.getColumnIndex(), t, ct, s, n, false, false, false, c.getCellFormula());
+            }
+            default:
+                return set(c.getColumnIndex(), t, null, null, 0, false, false, false, null);
+        }
+    }
+
+    public int col()                { return col; }
+    public CellType type()          { return type; }
+    public CellType cachedType()    { return cachedType; }
+    public String text()            { return text; }
+    public double number()          { return number; }
+    public boolean bool()           { return bool; }
+    public String formula()         { return formula; }
+
+    /** Celda de texto (STRING) */
+    public boolean isText() {
+        return type == CellType.STRING;
+    }
+
+    /** Equivalente a {@code DateUtil.isCellDateFormatted(cell)} (solo celdas NUMERIC). */
+    public boolean isDateFormatted() {
+        return type == CellType.NUMERIC && dateFormatted && DateUtil.isValidExcelDate(number);
+    }
+
+    /** Equivalente a {@code cell.getDateCellValue()} */
+    public Date dateValue() {
+        return DateUtil.getJavaDate(number, date1904);
+    }
+
+    /**
+     * Fecha/hora local de una celda numérica con formato de fecha. Se arma desde los mismos
+     * milisegundos que {@link #dateValue()} (DateUtil.getLocalDateTime redondea distinto).
+     */
+    public LocalDateTime localDateTime() {
+        return LocalDateTime.ofInstant(dateValue().toInstant(), ZoneId.systemDefault());
+    }
+
+    /** Número truncado a long, igual que {@code (long) cell.getNumericCellValue()} */
+    public long longValue() {
+        return (long) number;
+    }
+
+    /** Número como entero, igual que {@code new DecimalFormat("#").format(n)} (redondeo HALF_EVEN) */
+    public String integerText() {
+        double n = number;
+        if (Double.isNaN(n) || Double.isInfinite(n)) return new DecimalFormat("#").format(n);
+        if (Math.abs(n) < 1e15) {
+            long l = (long) Math.rint(n);
+            if (l == 0 && Double.doubleToRawLongBits(n) < 0) return "-0"; // DecimalFormat conserva el signo
+            return Long.toString(l);
+        }
+        // enteros grandes: DecimalFormat trabaja con los dígitos de Double.toString
+        return new BigDecimal(Double.toString(n)).setScale(0, RoundingMode.HALF_EVEN).toPlainString();
+    }
+
+    /** Fecha como "yyyy-MM-dd" */
+    public String isoDate() {
+        return ISO_DATE.format(localDateTime());
+    }
+
+    /** Fecha como {@code Date.toString()} ("EEE MMM dd HH:mm:ss zzz yyyy", zona por defecto) */
+    public String dateString() {
+        return DATE_TOSTRING.format(localDateTime().atZone(ZoneId.systemDefault()));
+    }
+}
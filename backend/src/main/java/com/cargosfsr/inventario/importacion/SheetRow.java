@@ -0,0 +1,91 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * Fila de una hoja con sus celdas físicas (las que existen en el archivo),
+ * indexadas por columna (0-based).
+ *
+ * Los lectores ({@link TabularSource}) reutilizan la misma instancia y sus celdas para todas
+ * las filas: quien necesite conservar una fila después de {@code onRow} debe copiarla
+ * ({@link #copy()} / {@link #copyFrom(SheetRow)}).
+ */
+public final class SheetRow {
+
+    private int num;
+    private final List<SheetCell> cells = new ArrayList<>(16);
+    private SheetCell[] byCol = new SheetCell[16];
+    // celdas ya creadas, se reutilizan entre filas
+    private final List<SheetCell> pool = new ArrayList<>(16);
+
+    public SheetRow(int num) {
+        this.num = num;
+    }
+
+    /** Adapta una fila del modelo completo de POI (ruta .xls). */
+    public static SheetRow of(Row row) {
+        return new SheetRow(row.getRowNum()).fill(row);
+    }
+
+    /** Vacía la fila para reutilizarla con otro número */
+    SheetRow reset(int num) {
+        for (SheetCell c : cells) {
+            int col = c.col();
+            if (col >= 0 && col < byCol.length) byCol[col] = null;
+        }
+        cells.clear();
+        this.num = num;
+        return this;
+    }
+
+    /** Reutiliza la fila con las celdas de una fila de POI */
+    SheetRow fill(Row row) {
+        reset(row.getRowNum());
+        for (Cell c : row) add(next().setFrom(c));
+        return this;
+    }
+
+    /** Próxima celda libre (del pool); hay que cargarla con set y luego pasarla a {@link #add} */
+    SheetCell next() {
+        int i = cells.size();
+        if (i == pool.size()) pool.add(new SheetCell());
+        return pool.get(i);
+    }
+
+    void add(SheetCell c) {
+        int col = c.col();
+        if (col < 0) return;
+        if (col >= byCol.length) byCol = Arrays.copyOf(byCol, Math.max(col + 1, byCol.length * 2));
+        byCol[col] = c;
+        cells.add(c);
+    }
+
+    /** Copia independiente de la fila (para retenerla más allá de {@code onRow}) */
+    public SheetRow copy() {
+        return new SheetRow(num).copyFrom(this);
+    }
+
+    /** Pisa esta fila con el contenido de otra (reutiliza las celdas propias) */
+    public SheetRow copyFrom(SheetRow o) {
+        reset(o.num);
+        for (SheetCell c : o.cells) add(next().copyFrom(c));
+        return this;
+    }
+
+    /** Número de fila (0-based, igual que {@code Row.getRowNum()}) */
+    public int num() { return num; }
+
+    /** Celda en la columna dada o null si no existe */
+    public SheetCell cell(Integer col) {
+        if (col == null || col < 0 || col >= byCol.length) return null;
+        return byCol[col];
+    }
+
+    /** Celdas físicas en orden de aparición (como {@code for (Cell c : row)}) */
+    public List<SheetCell> cells() { return cells; }
+}
@@ -0,0 +1,151 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.poi.util.XMLHelper;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Tabla de "shared strings" del XLSX respaldada en disco.
+ *
+ * Se recorre sharedStrings.xml una sola vez (SAX) y cada texto se vuelca en UTF-8
+ * a un archivo temporal; en memoria solo queda el arreglo de offsets (8 bytes por texto).
+ * Los Strings se materializan bajo demanda, cuando una celda los pide; una caché chica
+ * de acceso directo evita decodificar una y otra vez los textos repetidos (distritos, responsables).
+ */
+final class SpooledSharedStrings implements Closeable {
+
+    private final Path file;
+    private long[] offsets = new long[1024];
+    private int count;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private byte[] scratch = new byte[256];
+
+    // caché directa: slot = índice % CACHE
+    private static final int CACHE = 1024;
+    private final int[] cacheIdx = new int[CACHE];
+    private final String[] cacheVal = new String[CACHE];
+
+    private SpooledSharedStrings(Path file) {
+        this.file = file;
+        Arrays.fill(cacheIdx, -1);
+    }
+
+    static SpooledSharedStrings empty() {
+        return new SpooledSharedStrings(null);
+    }
+
+    static SpooledSharedStrings load(InputStream sstXml) throws IOException {
+        Path tmp = Files.createTempFile("sst-", ".bin");
+        SpooledSharedStrings s = new SpooledSharedStrings(tmp);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024)) {
+            XMLReader xr = XMLHelper.newXMLReader();
+            xr.setContentHandler(s.new SstHandler(out));
+            xr.parse(new InputSource(sstXml));
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        } catch (Exception e) {
+            s.close();
+            throw new IOException("sharedStrings.xml inválido: " + e.getMessage(), e);
+        }
+        s.channel = FileChannel.open(tmp, StandardOpenOption.READ);
+        long size = s.channel.size();
+        if (size > Integer.MAX_VALUE) {
+            s.close();
+            throw new IOException("sharedStrings demasiado grande");
+        }
+        if (size > 0) s.map = s.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        return s;
+    }
+
+    int size() { return count; }
+
+    /** Texto del índice dado, o null si el índice no existe */
+    String get(int idx) {
+        if (idx < 0 || idx >= count) return null;
+        int slot = idx & (CACHE - 1);
+        if (cacheIdx[slot] == idx) return cacheVal[slot];
+        String s = decode(idx);
+        cacheIdx[slot] = idx;
+        cacheVal[slot] = s;
+        return s;
+    }
+
+    private String decode(int idx) {
+        int start = (int) offsets[idx];
+        int len = (int) (offsets[idx + 1] - offsets[idx]);
+        if (len == 0) return "";
+        if (len > scratch.length) scratch = new byte[Math.max(len, scratch.length * 2)];
+        map.get(start, scratch, 0, len);
+        return new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        map = null;
+        try {
+            if (channel != null) channel.close();
+        } finally {
+            if (file != null) Files.deleteIfExists(file);
+        }
+    }
+
+    /** Handler SAX: concatena los <t> de cada <si> (ignorando <rPh> fonéticos) */
+    private final class SstHandler extends DefaultHandler {
+        private final OutputStream out;
+        private final StringBuilder sb = new StringBuilder(64);
+        private boolean inT, inPhonetic;
+        private long pos;
+
+        SstHandler(OutputStream out) { this.out = out; }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            String n = localName.isEmpty() ? qName : localName;
+            if ("si".equals(n)) sb.setLength(0);
+            else if ("rPh".equals(n)) inPhonetic = true;
+            else if ("t".equals(n) && !inPhonetic) inT = true;
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws org.xml.sax.SAXException {
+            String n = localName.isEmpty() ? qName : localName;
+            if ("t".equals(n)) inT = false;
+            else if ("rPh".equals(n)) inPhonetic = false;
+            else if ("si".equals(n)) {
+                byte[] b = sb.toString().getBytes(StandardCharsets.UTF_8);
+                try {
+                    out.write(b);
+                } catch (IOException e) {
+                    throw new org.xml.sax.SAXException(e);
+                }
+                if (count + 2 > offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                offsets[count] = pos;
+                pos += b.length;
+                count++;
+                offsets[count] = pos;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inT) sb.append(ch, start, length);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cargosfsr.inventario.model.enums.DevolucionSubtipo;
+import com.cargosfsr.inventario.model.enums.PaqueteEstado;
+
+/**
+ * Clasifica el status externo (tracks CSV, /api/estado/status-externo) con las reglas de
+ * status_externo_reglas compiladas a un autómata Aho-Corasick: el texto se recorre una sola vez
+ * (sin acentos y en minúsculas) sin importar cuántas reglas haya.
+ *
+ * Una regla es "contiene" o "empieza con"; si aplican varias gana la de menor prioridad (y a
+ * igual prioridad, la primera). El resultado se memoiza por texto crudo: en un archivo los
+ * status distintos son pocos. Es inmutable; para recargar reglas se compila uno nuevo.
+ */
+public final class StatusExternoMatcher {
+
+    public enum Clase { ENTREGADO, DEVOLUCION, OTRO }
+
+    /** patron se pliega al compilar (acentos, mayúsculas, espacios de los extremos) */
+    public record Regla(String patron, boolean prefijo, Clase clase,
+                        PaqueteEstado estado, DevolucionSubtipo subtipo, int prioridad) { }
+
+    /** estado/subtipo que se dejan en paquetes (pueden venir null: decide el SP) */
+    public record Clasificacion(Clase clase, PaqueteEstado estado, DevolucionSubtipo subtipo) {
+        public static final Clasificacion OTRO = new Clasificacion(Clase.OTRO, null, null);
+    }
+
+    private static final int MEMO_MAX = 10_000;
+
+    private final Regla[] reglas;
+    private final int[] largo;          // largo del patrón plegado, por regla
+    // trie compilado: hijos de cada nodo ordenados por char
+    private final char[][] claves;
+    private final int[][] hijos;
+    private final int[] fallo;
+    private final int[][] salidas;      // reglas que terminan en el nodo
+    private final int[] sigSalida;      // nodo más cercano en la cadena de fallos con salidas, o -1
+    private final Map<String, Clasificacion> memo = new ConcurrentHashMap<>();
+
+    public StatusExternoMatcher(List<Regla> in) {
+        List<Regla> rs = new ArrayList<>(in.size());
+        for (Regla r : in) {
+            String p = plegar(r.patron());
+            if (p.isEmpty()) continue;
+            rs.add(new Regla(p, r.prefijo(), r.clase(), r.estado(), r.subtipo(), r.prioridad()));
+        }
+        reglas = rs.toArray(new Regla[0]);
+        largo = new int[reglas.length];
+
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> fin = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        fin.add(new ArrayList<>());
+        for (int i = 0; i < reglas.length; i++) {
+            String p = reglas[i].patron();
+            largo[i] = p.length();
+            int n = 0;
+            for (int k = 0; k < p.length(); k++) {
+                Integer sig = trie.get(n).get(p.charAt(k));
+                if (sig == null) {
+                    sig = trie.size();
+                    trie.add(new TreeMap<>());
+                    fin.add(new ArrayList<>());
+                    trie.get(n).put(p.charAt(k), sig);
+                }
+                n = sig;
+            }
+            fin.get(n).add(i);
+        }
+
+        int nodos = trie.size();
+        claves = new char[nodos][];
+        hijos = new int[nodos][];
+        salidas = new int[nodos][];
+        for (int n = 0; n < nodos; n++) {
+            TreeMap<Character, Integer> m = trie.get(n);
+            claves[n] = new char[m.size()];
+            hijos[n] = new int[m.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> e : m.entrySet()) {
+                claves[n][k] = e.getKey();
+                hijos[n][k++] = e.getValue();
+            }
+            salidas[n] = fin.get(n).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // enlaces de fallo por BFS
+        fallo = new int[nodos];
+        sigSalida = new int[nodos];
+        sigSalida[0] = -1;
+        ArrayDeque<Integer> cola = new ArrayDeque<>();
+        for (int h : hijos[0]) {
+            fallo[h] = 0;
+            sigSalida[h] = -1;
+            cola.add(h);
+        }
+        while (!cola.isEmpty()) {
+            int u = cola.poll();
+            for (int k = 0; k < claves[u].length; k++) {
+                char c = claves[u][k];
+                int v = hijos[u][k];
+                int f = fallo[u];
+                while (f != 0 && hijo(f, c) < 0) f = fallo[f];
+                int g = hijo(f, c);
+                fallo[v] = (g >= 0 && g != v) ? g : 0;
+                sigSalida[v] = salidas[fallo[v]].length > 0 ? fallo[v] : sigSalida[fallo[v]];
+                cola.add(v);
+            }
+        }
+    }
+
+    public int reglas() {
+        return reglas.length;
+    }
+
+    public Clasificacion clasificar(String status) {
+        if (status == null) return Clasificacion.OTRO;
+        Clasificacion c = memo.get(status);
+        if (c == null) {
+            c = buscar(plegar(status));
+            if (memo.size() >= MEMO_MAX) memo.clear();
+            memo.put(status, c);
+        }
+        return c;
+    }
+
+    private Clasificacion buscar(String t) {
+        int mejor = -1;
+        int n = 0;
+        for (int i = 0; i < t.length(); i++) {
+            char c = t.charAt(i);
+            int g;
+            while ((g = hijo(n, c)) < 0 && n != 0) n = fallo[n];
+            n = Math.max(g, 0);
+            for (int o = salidas[n].length > 0 ? n : sigSalida[n]; o >= 0; o = sigSalida[o]) {
+                for (int r : salidas[o]) {
+                    if (reglas[r].prefijo() && i + 1 != largo[r]) continue;
+                    if (mejor < 0 || reglas[r].prioridad() < reglas[mejor].prioridad()
+                            || (reglas[r].prioridad() == reglas[mejor].prioridad() && r < mejor)) {
+                        mejor = r;
+                    }
+                }
+            }
+        }
+        if (mejor < 0) return Clasificacion.OTRO;
+        Regla r = reglas[mejor];
+        return new Clasificacion(r.clase(), r.estado(), r.subtipo());
+    }
+
+    private int hijo(int n, char c) {
+        char[] ks = claves[n];
+        int lo = 0, hi = ks.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ks[mid] < c) lo = mid + 1;
+            else if (ks[mid] > c) hi = mid - 1;
+            else return hijos[n][mid];
+        }
+        return -1;
+    }
+
+    /** Minúsculas, sin acentos (ñ -> n) y sin espacios en los extremos */
+    static String plegar(String s) {
+        String t = s.trim().toLowerCase(Locale.ROOT);
+        for (int i = 0; i < t.length(); i++) {
+            if (t.charAt(i) >= 0x80) {
+                return Normalizer.normalize(t, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+            }
+        }
+        return t;
+    }
+}
@@ -0,0 +1,85 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.util.Arrays;
+
+/**
+ * Strings distintos numerados 0, 1, 2... en orden de llegada, con búsqueda por direccionamiento
+ * abierto (sondeo lineal sobre un int[]): sin un objeto Entry ni un Integer por clave.
+ *
+ * Sirve de diccionario para columnas con muchos valores repetidos (se guarda el id en un int[]
+ * y cada texto una sola vez) y de índice tracking -> id para deduplicar filas de un import.
+ * No es thread-safe para escribir; ya cargado, se puede leer desde varios hilos.
+ */
+public final class StringIndex {
+
+    private static final int VACIO = -1;
+
+    private String[] claves;    // id -> clave
+    private int[] tabla;        // posición -> id, VACIO si libre
+    private int size;
+
+    public StringIndex() {
+        this(16);
+    }
+
+    public StringIndex(int esperado) {
+        int cap = Integer.highestOneBit(Math.max(16, esperado * 2 - 1)) << 1;
+        claves = new String[Math.max(16, esperado)];
+        tabla = new int[cap];
+        Arrays.fill(tabla, VACIO);
+    }
+
+    /** Id de la clave, agregándola si no estaba */
+    public int add(String clave) {
+        int mask = tabla.length - 1;
+        for (int p = mezclar(clave.hashCode()) & mask; ; p = (p + 1) & mask) {
+            int id = tabla[p];
+            if (id == VACIO) {
+                id = size++;
+                if (id == claves.length) claves = Arrays.copyOf(claves, id * 2);
+                claves[id] = clave;
+                tabla[p] = id;
+                if (size * 2 > tabla.length) crecer();
+                return id;
+            }
+            if (claves[id].equals(clave)) return id;
+        }
+    }
+
+    /** Id de la clave, o -1 si no está */
+    public int find(String clave) {
+        if (clave == null) return -1;
+        int mask = tabla.length - 1;
+        for (int p = mezclar(clave.hashCode()) & mask; ; p = (p + 1) & mask) {
+            int id = tabla[p];
+            if (id == VACIO) return -1;
+            if (claves[id].equals(clave)) return id;
+        }
+    }
+
+    public String get(int id) {
+        return claves[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void crecer() {
+        int[] nueva = new int[tabla.length * 2];
+        Arrays.fill(nueva, VACIO);
+        int mask = nueva.length - 1;
+        for (int id = 0; id < size; id++) {
+            int p = mezclar(claves[id].hashCode()) & mask;
+            while (nueva[p] != VACIO) p = (p + 1) & mask;
+            nueva[p] = id;
+        }
+        tabla = nueva;
+    }
+
+    /** Los hash de trackings parecidos difieren en los bits bajos de a poco: se mezclan antes de enmascarar */
+    private static int mezclar(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
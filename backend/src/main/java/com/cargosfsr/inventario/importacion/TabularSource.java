@@ -0,0 +1,59 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.poi.poifs.filesystem.FileMagic;
+
+/**
+ * Origen tabular en streaming: hojas XLSX (SAX), .xls (POI) o CSV, todos entregados
+ * como {@link SheetRow} fila por fila. Los imports no necesitan saber de qué formato viene
+ * el archivo ni cargarlo completo en memoria.
+ */
+public interface TabularSource extends Closeable {
+
+    /**
+     * Recibe cada fila; devolver false corta la lectura.
+     * La fila (y sus celdas) se reutiliza para la siguiente: copiarla si hay que retenerla.
+     */
+    @FunctionalInterface
+    interface RowHandler {
+        boolean onRow(SheetRow row);
+
+        /** Empieza una hoja (un CSV es una sola hoja) */
+        default void onSheet(String name) { }
+    }
+
+    /**
+     * Recorre la hoja con el nombre dado (o la primera si no existe). En CSV, el archivo.
+     *
+     * @return nombre de la hoja leída, o null si no hay hojas
+     */
+    String read(String preferredSheet, RowHandler handler) throws IOException;
+
+    /**
+     * Recorre todas las hojas en orden, avisando {@link RowHandler#onSheet} al empezar cada una.
+     * Si el handler devuelve false se corta todo el recorrido.
+     */
+    void readAll(RowHandler handler) throws IOException;
+
+    /**
+     * Abre el archivo según su contenido (no su extensión): OOXML → XLSX streaming,
+     * OLE2 → .xls, cualquier otra cosa → CSV (charset detectado).
+     *
+     * @param csvDelimiter separador para CSV; 0 = detectarlo de la primera línea
+     * @param csvTrim      recortar espacios de cada valor CSV
+     */
+    static TabularSource open(Path file, char csvDelimiter, boolean csvTrim) throws IOException {
+        FileMagic magic;
+        try (InputStream is = FileMagic.prepareToCheckMagic(Files.newInputStream(file))) {
+            magic = FileMagic.valueOf(is);
+        }
+        if (magic == FileMagic.OOXML) return XlsxStreamReader.open(file);
+        if (magic == FileMagic.OLE2) return XlsSource.open(file);
+        return CsvSource.open(file, CsvSource.detectCharset(file), csvDelimiter, csvTrim);
+    }
+}
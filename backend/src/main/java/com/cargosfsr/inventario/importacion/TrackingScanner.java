@@ -0,0 +1,260 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Escáner de trackings escrito a mano (reemplaza las regex de los imports).
+ *
+ * Trabaja directo sobre los chars del {@link CharSequence}: no crea Matcher, substrings
+ * ni StringBuilder; solo se aloca el String de cada tracking que se devuelve.
+ *
+ * Dos familias de tokens:
+ * <ul>
+ *   <li><b>Import</b>: equivalente a {@code (?i)\b(?!MUEBLE)(?!CAJA)(?!DISTRITO)[A-Z]{2,4}[A-Z0-9]{6,18}\b}.
+ *       Como el token empieza y termina en límite de palabra, siempre es una corrida A-Z/0-9 completa
+ *       con un no-"carácter de palabra" a cada lado (mismo criterio que {@code \b} en Java 17:
+ *       letra/dígito Unicode, '_' y marcas no espaciadas sobre una base): basta validar cada corrida.</li>
+ *   <li><b>HZCR/CR</b>: equivalente a {@code (?i)(HZCR|CR)\d+}, sin límites de palabra.</li>
+ * </ul>
+ */
+public final class TrackingScanner {
+
+    private static final long NONE = -1L;
+
+    private TrackingScanner() {}
+
+    // =====================================================================
+    // Trackings de import (consolidado / CSV)
+    // =====================================================================
+
+    /**
+     * Próximo tracking en [from, end) como {@code (inicio << 32) | fin}, o -1 si no hay.
+     */
+    public static long nextTracking(CharSequence s, int from, int end) {
+        int i = from;
+        while (i < end) {
+            if (!isAsciiLetter(s.charAt(i)) || wordBefore(s, i)) {
+                i++;
+                continue;
+            }
+            // el token es la corrida ASCII alfanumérica completa (si no, no cierra en \b)
+            int j = i + 1;
+            while (j < end && isAsciiAlnum(s.charAt(j))) j++;
+            if (!wordAt(s, j, end) && isTrackingRun(s, i, j)) return ((long) i << 32) | j;
+            i = j;
+        }
+        return NONE;
+    }
+
+    /** Hay al menos un tracking en el texto (sin alocar nada) */
+    public static boolean containsTracking(CharSequence s) {
+        return s != null && nextTracking(s, 0, s.length()) != NONE;
+    }
+
+    /** Todos los trackings del texto, en mayúsculas */
+    public static List<String> findAllTrackings(CharSequence s) {
+        List<String> out = new ArrayList<>();
+        addAllTrackings(s, out);
+        return out;
+    }
+
+    /** Agrega los trackings del texto a out (en mayúsculas) */
+    public static void addAllTrackings(CharSequence s, List<String> out) {
+        if (s == null) return;
+        int end = s.length();
+        long m;
+        int from = 0;
+        while ((m = nextTracking(s, from, end)) != NONE) {
+            int a = (int) (m >>> 32), b = (int) m;
+            out.add(upperAscii(s, a, b));
+            from = b;
+        }
+    }
+
+    /** Primer tracking del texto (en mayúsculas) o null */
+    public static String findFirstTracking(CharSequence s) {
+        if (s == null) return null;
+        long m = nextTracking(s, 0, s.length());
+        return m == NONE ? null : upperAscii(s, (int) (m >>> 32), (int) m);
+    }
+
+    /**
+     * Heurística para "la celda ES un tracking": 8..24 chars sin espacios de borde,
+     * no solo dígitos, no empieza con MUEBLE/CAJA/DISTRITO y contiene un tracking.
+     */
+    public static boolean looksLikeTracking(CharSequence s) {
+        if (s == null) return false;
+        int a = 0, b = s.length();
+        while (a < b && s.charAt(a) <= ' ') a++;
+        while (b > a && s.charAt(b - 1) <= ' ') b--;
+        int len = b - a;
+        if (len < 8 || len > 24) return false;
+        if (allDigits(s, a, b)) return false;
+        if (startsWithIgnoreCase(s, a, b, "MUEBLE") || startsWithIgnoreCase(s, a, b, "CAJA")
+                || startsWithIgnoreCase(s, a, b, "DISTRITO")) return false;
+        return nextTracking(s, a, b) != NONE;
+    }
+
+    /** Corrida [a, b) de A-Z/0-9 (empieza con letra): ¿cumple el patrón de tracking? */
+    private static boolean isTrackingRun(CharSequence s, int a, int b) {
+        int len = b - a;
+        if (len < 8 || len > 22) return false;
+        int letters = 0;
+        while (letters < 4 && isAsciiLetter(s.charAt(a + letters))) letters++;
+        // prefijo de letras k en [2,4] y resto (len-k) en [6,18]
+        int kMin = Math.max(2, len - 18);
+        int kMax = Math.min(4, letters);
+        if (kMin > kMax) return false;
+        return !startsWithIgnoreCase(s, a, b, "MUEBLE")
+            && !startsWithIgnoreCase(s, a, b, "CAJA")
+            && !startsWithIgnoreCase(s, a, b, "DISTRITO");
+    }
+
+    // =====================================================================
+    // Trackings HZCR/CR (estados, recepción)
+    // =====================================================================
+
+    /** Próximo {@code (HZCR|CR)\d+} en [from, end) como {@code (inicio << 32) | fin}, o -1 */
+    public static long nextHzcr(CharSequence s, int from, int end) {
+        for (int i = from; i + 2 < end; i++) {
+            int p = prefixHzcr(s, i, end);
+            if (p == 0) continue;
+            int j = i + p;
+            if (j >= end || !isDigit(s.charAt(j))) continue;
+            while (j < end && isDigit(s.charAt(j))) j++;
+            return ((long) i << 32) | j;
+        }
+        return NONE;
+    }
+
+    /** Trackings HZCR/CR del texto, únicos, en orden de aparición y en mayúsculas */
+    public static Set<String> findAllHzcr(CharSequence s) {
+        Set<String> out = new LinkedHashSet<>();
+        if (s == null) return out;
+        int end = s.length();
+        int from = 0;
+        long m;
+        while ((m = nextHzcr(s, from, end)) != NONE) {
+            int a = (int) (m >>> 32), b = (int) m;
+            out.add(upperAscii(s, a, b));
+            from = b;
+        }
+        return out;
+    }
+
+    /** El texto completo es {@code (HZCR|CR)\d+} (sin importar mayúsculas) */
+    public static boolean isHzcr(CharSequence s) {
+        if (s == null) return false;
+        int end = s.length();
+        int p = prefixHzcr(s, 0, end);
+        if (p == 0 || p == end) return false;
+        for (int i = p; i < end; i++) {
+            if (!isDigit(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /** Largo del prefijo HZCR (4) o CR (2) en i, 0 si no hay; HZCR tiene prioridad como en la alternancia */
+    private static int prefixHzcr(CharSequence s, int i, int end) {
+        if (i + 4 < end && startsWithIgnoreCase(s, i, end, "HZCR") && isDigit(s.charAt(i + 4))) return 4;
+        if (startsWithIgnoreCase(s, i, end, "CR")) return 2;
+        return 0;
+    }
+
+    // =====================================================================
+    // Otros tokens simples
+    // =====================================================================
+
+    /** Solo dígitos ASCII y al menos minLen (equivale a {@code \d{minLen,}}) */
+    public static boolean isDigits(CharSequence s, int minLen) {
+        if (s == null || s.length() < minLen || s.length() == 0) return false;
+        return allDigits(s, 0, s.length());
+    }
+
+    /** Solo A-Z/0-9 y al menos minLen (equivale a {@code [A-Z0-9]{minLen,}}) */
+    public static boolean isUpperAlnum(CharSequence s, int minLen) {
+        if (s == null || s.length() < minLen || s.length() == 0) return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!((c >= 'A' && c <= 'Z') || isDigit(c))) return false;
+        }
+        return true;
+    }
+
+    // =====================================================================
+    // helpers
+    // =====================================================================
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static boolean allDigits(CharSequence s, int a, int b) {
+        for (int i = a; i < b; i++) {
+            if (!isDigit(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static boolean startsWithIgnoreCase(CharSequence s, int a, int b, String prefix) {
+        int n = prefix.length();
+        if (b - a < n) return false;
+        for (int k = 0; k < n; k++) {
+            char c = s.charAt(a + k);
+            if (c >= 'a' && c <= 'z') c -= 32;
+            if (c != prefix.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isAsciiAlnum(char c) {
+        return isAsciiLetter(c) || isDigit(c);
+    }
+
+    // ---- límite de palabra: mismo criterio que Pattern.Bound en Java 17 ----
+
+    private static boolean isWord(int cp) {
+        return cp == '_' || Character.isLetterOrDigit(cp);
+    }
+
+    /** ¿El carácter antes de i cuenta como "de palabra"? */
+    private static boolean wordBefore(CharSequence s, int i) {
+        if (i <= 0) return false;
+        int cp = Character.codePointBefore(s, i);
+        return isWord(cp) || (Character.getType(cp) == Character.NON_SPACING_MARK && hasBase(s, i - 1));
+    }
+
+    /** ¿El carácter en i cuenta como "de palabra"? */
+    private static boolean wordAt(CharSequence s, int i, int end) {
+        if (i >= end) return false;
+        int cp = Character.codePointAt(s, i);
+        return isWord(cp) || (Character.getType(cp) == Character.NON_SPACING_MARK && hasBase(s, i));
+    }
+
+    /** Una marca no espaciada es "de palabra" si tiene una letra/dígito base antes (char a char, como el JDK) */
+    private static boolean hasBase(CharSequence s, int i) {
+        for (int x = i; x >= 0; x--) {
+            int cp = Character.codePointAt(s, x);
+            if (Character.isLetterOrDigit(cp)) return true;
+            if (Character.getType(cp) != Character.NON_SPACING_MARK) return false;
+        }
+        return false;
+    }
+
+    /** Copia [a, b) en mayúsculas ASCII (los tokens son siempre ASCII) */
+    private static String upperAscii(CharSequence s, int a, int b) {
+        char[] out = new char[b - a];
+        for (int i = a; i < b; i++) {
+            char c = s.charAt(i);
+            out[i - a] = (c >= 'a' && c <= 'z') ? (char) (c - 32) : c;
+        }
+        return new String(out);
+    }
+}
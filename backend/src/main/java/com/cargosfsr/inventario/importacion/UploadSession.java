@@ -0,0 +1,88 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Subida por fragmentos en curso (ver ChunkUploadService).
+ *
+ * Los fragmentos se escriben en orden al archivo de spool; {@code recibidos} es el offset
+ * desde donde el cliente tiene que seguir. El SHA-256 del archivo se va acumulando con cada
+ * fragmento aceptado, así que al completar no hay que releerlo.
+ */
+public final class UploadSession {
+
+    private final String id;
+    private final String archivo;
+    private final String owner;
+    private final long bytes;
+    private final String sha256;      // esperado (opcional, hex)
+    private final Path spool;
+    private final Instant createdAt = Instant.now();
+
+    private volatile long recibidos;
+    private volatile Instant touchedAt = createdAt;
+    private MessageDigest digest;     // estado del SHA-256 hasta recibidos
+
+    public UploadSession(String id, String archivo, String owner, long bytes, String sha256, Path spool, MessageDigest digest) {
+        this.id = id;
+        this.archivo = archivo;
+        this.owner = owner;
+        this.bytes = bytes;
+        this.sha256 = sha256;
+        this.spool = spool;
+        this.digest = digest;
+    }
+
+    public String id()          { return id; }
+    public String archivo()     { return archivo; }
+    public String owner()       { return owner; }
+    public long bytes()         { return bytes; }
+    public String sha256()      { return sha256; }
+    public Path spool()         { return spool; }
+    public long recibidos()     { return recibidos; }
+    public Instant touchedAt()  { return touchedAt; }
+
+    public boolean isCompleta() {
+        return recibidos == bytes;
+    }
+
+    /** Copia del digest acumulado, para seguirlo con un fragmento que todavía puede rechazarse */
+    public MessageDigest digestCopy() {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Fragmento aceptado: avanza el offset y adopta el digest que lo incluye */
+    public void advance(long n, MessageDigest withChunk) {
+        this.digest = withChunk;
+        this.recibidos += n;
+        this.touchedAt = Instant.now();
+    }
+
+    /** SHA-256 (hex) de lo recibido hasta ahora */
+    public String sha256Recibido() {
+        return HexFormat.of().formatHex(digestCopy().digest());
+    }
+
+    /** Foto del estado para la API */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("upload_id", id);
+        out.put("archivo", archivo);
+        out.put("bytes", bytes);
+        out.put("recibidos", recibidos);
+        out.put("completa", isCompleta());
+        if (sha256 != null) out.put("sha256", sha256);
+        out.put("creado", createdAt);
+        out.put("actualizado", touchedAt);
+        return out;
+    }
+}
@@ -0,0 +1,59 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+
+/**
+ * Libros .xls (OLE2) vía el modelo completo de POI: el formato binario no tiene lector
+ * por eventos práctico, pero los .xls ya están acotados a 65536 filas.
+ */
+final class XlsSource implements TabularSource {
+
+    private final Workbook wb;
+
+    private XlsSource(Workbook wb) {
+        this.wb = wb;
+    }
+
+    static XlsSource open(Path file) throws IOException {
+        return new XlsSource(WorkbookFactory.create(file.toFile(), null, true));
+    }
+
+    @Override
+    public String read(String preferredSheet, RowHandler handler) {
+        if (wb.getNumberOfSheets() == 0) return null;
+        Sheet sh = (preferredSheet != null) ? wb.getSheet(preferredSheet) : null;
+        if (sh == null) sh = wb.getSheetAt(0);
+        handler.onSheet(sh.getSheetName());
+        readSheet(sh, handler);
+        return sh.getSheetName();
+    }
+
+    @Override
+    public void readAll(RowHandler handler) {
+        for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+            Sheet sh = wb.getSheetAt(i);
+            handler.onSheet(sh.getSheetName());
+            if (!readSheet(sh, handler)) return;
+        }
+    }
+
+    /** @return false si el handler cortó la lectura */
+    private static boolean readSheet(Sheet sh, RowHandler handler) {
+        SheetRow row = new SheetRow(0);
+        for (Row r : sh) {
+            if (!handler.onRow(row.fill(r))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        wb.close();
+    }
+}
@@ -0,0 +1,356 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Lector streaming (SAX) de hojas XLSX.
+ *
+ * No construye el DOM de POI: la hoja se recorre fila por fila y cada fila se entrega
+ * al {@link RowHandler}; los shared strings quedan en disco ({@link SpooledSharedStrings}).
+ * La memoria usada no depende del tamaño del archivo.
+ *
+ * Se reutiliza una sola {@link SheetRow} (y sus celdas) para toda la hoja; los números
+ * enteros y los índices de shared strings se leen sin pasar por String.
+ */
+public final class XlsxStreamReader implements TabularSource {
+
+    private final OPCPackage pkg;
+    private final XSSFReader reader;
+    private final StylesTable styles;
+    private final SpooledSharedStrings sst;
+    private final boolean date1904;
+    private final Map<Integer, Boolean> dateStyles = new HashMap<>();
+
+    private XlsxStreamReader(OPCPackage pkg) throws Exception {
+        this.pkg = pkg;
+        this.reader = new XSSFReader(pkg);
+        this.styles = reader.getStylesTable();
+        this.date1904 = readDate1904(reader);
+        InputStream sstData = null;
+        try {
+            sstData = reader.getSharedStringsData();
+        } catch (Exception ignore) {
+            // libro sin sharedStrings.xml
+        }
+        if (sstData == null) {
+            this.sst = SpooledSharedStrings.empty();
+        } else {
+            try (InputStream in = sstData) {
+                this.sst = SpooledSharedStrings.load(in);
+            }
+        }
+    }
+
+    /** Abre un .xlsx desde disco (acceso aleatorio al zip, sin cargarlo al heap) */
+    public static XlsxStreamReader open(Path file) throws IOException {
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(file.toFile(), PackageAccess.READ);
+            return new XlsxStreamReader(pkg);
+        } catch (IOException e) {
+            if (pkg != null) pkg.revert();
+            throw e;
+        } catch (Exception e) {
+            if (pkg != null) pkg.revert();
+            throw new IOException("XLSX inválido: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recorre la hoja con el nombre dado (o la primera si no existe).
+     *
+     * @return nombre de la hoja leída, o null si el libro no tiene hojas
+     */
+    @Override
+    public String read(String preferredSheet, RowHandler handler) throws IOException {
+        InputStream chosen = null;
+        String chosenName = null;
+        try {
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (it.hasNext()) {
+                InputStream is = it.next();
+                String name = it.getSheetName();
+                if (chosen == null) {
+                    chosen = is;
+                    chosenName = name;
+                } else if (preferredSheet != null && preferredSheet.equals(name)) {
+                    chosen.close();
+                    chosen = is;
+                    chosenName = name;
+                } else {
+                    is.close();
+                }
+                if (preferredSheet != null && preferredSheet.equals(chosenName)) break;
+            }
+            if (chosen == null) return null;
+
+            handler.onSheet(chosenName);
+            parseSheet(chosen, handler);
+            return chosenName;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("No se pudo leer la hoja: " + e.getMessage(), e);
+        } finally {
+            if (chosen != null) chosen.close();
+        }
+    }
+
+    @Override
+    public void readAll(RowHandler handler) throws IOException {
+        try {
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (it.hasNext()) {
+                try (InputStream is = it.next()) {
+                    handler.onSheet(it.getSheetName());
+                    if (!parseSheet(is, handler)) return;
+                }
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("No se pudo leer el libro: " + e.getMessage(), e);
+        }
+    }
+
+    /** @return false si el handler cortó la lectura */
+    private boolean parseSheet(InputStream sheetXml, RowHandler handler) throws Exception {
+        XMLReader xr = XMLHelper.newXMLReader();
+        xr.setContentHandler(new SheetHandler(handler));
+        try {
+            xr.parse(new InputSource(sheetXml));
+            return true;
+        } catch (StopReading stop) {
+            return false; // el handler pidió cortar
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sst.close();
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    private boolean isDateStyle(int styleIdx) {
+        Boolean cached = dateStyles.get(styleIdx);
+        if (cached != null) return cached;
+        boolean date = false;
+        if (styles != null && styleIdx < styles.getNumCellStyles()) {
+            XSSFCellStyle st = styles.getStyleAt(styleIdx);
+            if (st != null) date = DateUtil.isADateFormat(st.getDataFormat(), st.getDataFormatString());
+        }
+        dateStyles.put(styleIdx, date);
+        return date;
+    }
+
+    private static boolean readDate1904(XSSFReader reader) {
+        try (InputStream in = reader.getWorkbookData()) {
+            boolean[] out = new boolean[1];
+            XMLReader xr = XMLHelper.newXMLReader();
+            xr.setContentHandler(new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+                    String n = localName.isEmpty() ? qName : localName;
+                    if ("workbookPr".equals(n)) {
+                        String v = atts.getValue("date1904");
+                        out[0] = "1".equals(v) || "true".equalsIgnoreCase(v);
+                        throw new StopReading();
+                    }
+                    if ("sheets".equals(n)) throw new StopReading();
+                }
+            });
+            try {
+                xr.parse(new InputSource(in));
+            } catch (StopReading stop) {
+                // encontrado
+            }
+            return out[0];
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /** Columna 0-based desde una referencia tipo "AB12" */
+    private static int colFromRef(String ref) {
+        int col = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char ch = ref.charAt(i);
+            if (ch >= 'A' && ch <= 'Z') col = col * 26 + (ch - 'A' + 1);
+            else if (ch >= 'a' && ch <= 'z') col = col * 26 + (ch - 'a' + 1);
+            else break;
+        }
+        return col - 1;
+    }
+
+    private static final class StopReading extends SAXException {
+        private static final long serialVersionUID = 1L;
+        StopReading() { super("stop"); }
+    }
+
+    /** Handler SAX de sheetN.xml: carga la SheetRow reutilizada en cada elemento <row> */
+    private final class SheetHandler extends DefaultHandler {
+        private final RowHandler handler;
+        private final SheetRow reused = new SheetRow(0);
+
+        private SheetRow row;
+        private int lastRowNum = -1;
+        private int nextCol;
+
+        private int col;
+        private String t;
+        private int style;
+        private boolean hasF, inV, inF, inInline, inT, inPhonetic;
+        private final StringBuilder v = new StringBuilder(32);
+        private final StringBuilder f = new StringBuilder(32);
+
+        SheetHandler(RowHandler handler) { this.handler = handler; }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            String n = localName.isEmpty() ? qName : localName;
+            switch (n) {
+                case "row" -> {
+                    String r = atts.getValue("r");
+                    int num = (r != null) ? Integer.parseInt(r) - 1 : lastRowNum + 1;
+                    row = reused.reset(num);
+                    lastRowNum = num;
+                    nextCol = 0;
+                }
+                case "c" -> {
+                    String ref = atts.getValue("r");
+                    col = (ref != null) ? colFromRef(ref) : nextCol;
+                    nextCol = col + 1;
+                    t = atts.getValue("t");
+                    String s = atts.getValue("s");
+                    style = (s != null) ? Integer.parseInt(s) : 0;
+                    hasF = false;
+                    v.setLength(0);
+                    f.setLength(0);
+                }
+                case "v" -> inV = true;
+                case "f" -> { inF = true; hasF = true; }
+                case "is" -> inInline = true;
+                case "rPh" -> inPhonetic = true;
+                case "t" -> { if (inInline && !inPhonetic) inT = true; }
+                default -> { }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            String n = localName.isEmpty() ? qName : localName;
+            switch (n) {
+                case "v" -> inV = false;
+                case "f" -> inF = false;
+                case "is" -> inInline = false;
+                case "rPh" -> inPhonetic = false;
+                case "t" -> inT = false;
+                case "c" -> { if (row != null) row.add(buildCell(row.next())); }
+                case "row" -> {
+                    if (row != null && !handler.onRow(row)) throw new StopReading();
+                    row = null;
+                }
+                default -> { }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inV || inT) v.append(ch, start, length);
+            else if (inF) f.append(ch, start, length);
+        }
+
+        private SheetCell buildCell(SheetCell c) {
+            if (hasF) {
+                String formula = f.toString();
+                if ("str".equals(t)) return c.set(col, CellType.FORMULA, CellType.STRING, v.toString(), 0, false, false, date1904, formula);
+                if ("b".equals(t))   return c.set(col, CellType.FORMULA, CellType.BOOLEAN, null, 0, isOne(v), false, date1904, formula);
+                if ("e".equals(t))   return c.set(col, CellType.FORMULA, CellType.ERROR, null, 0, false, false, date1904, formula);
+                return c.set(col, CellType.FORMULA, CellType.NUMERIC, null, parseNum(v), false, isDateStyle(style), date1904, formula);
+            }
+            if (t == null || "n".equals(t)) {
+                if (v.length() == 0) return c.set(col, CellType.BLANK, null, null, 0, false, false, date1904, null);
+                return c.set(col, CellType.NUMERIC, null, null, parseNum(v), false, isDateStyle(style), date1904, null);
+            }
+            switch (t) {
+                case "s": {
+                    if (v.length() == 0) return c.set(col, CellType.BLANK, null, null, 0, false, false, date1904, null);
+                    return c.set(col, CellType.STRING, null, sharedString(v), 0, false, false, date1904, null);
+                }
+                case "inlineStr":
+                case "str":
+                case "d":
+                    return c.set(col, CellType.STRING, null, v.toString(), 0, false, false, date1904, null);
+                case "b":
+                    return c.set(col, CellType.BOOLEAN, null, null, 0, isOne(v), false, date1904, null);
+                case "e":
+                    return c.set(col, CellType.ERROR, null, null, 0, false, false, date1904, null);
+                default:
+                    return c.set(col, CellType.BLANK, null, null, 0, false, false, date1904, null);
+            }
+        }
+
+        private boolean isOne(CharSequence s) {
+            return s.length() == 1 && s.charAt(0) == '1';
+        }
+
+        /** Texto del shared string cuyo índice viene en s (con espacios opcionales) */
+        private String sharedString(CharSequence s) {
+            int a = 0, b = s.length();
+            while (a < b && s.charAt(a) <= ' ') a++;
+            while (b > a && s.charAt(b - 1) <= ' ') b--;
+            if (a == b || b - a > 9) return sst.get(Integer.parseInt(s.toString().trim()));
+            int idx = 0;
+            for (int i = a; i < b; i++) {
+                char ch = s.charAt(i);
+                if (ch < '0' || ch > '9') return sst.get(Integer.parseInt(s.toString().trim()));
+                idx = idx * 10 + (ch - '0');
+            }
+            return sst.get(idx);
+        }
+
+        /** Enteros cortos (lo más común: trackings, marchamos, seriales de fecha) sin pasar por String */
+        private double parseNum(CharSequence s) {
+            int n = s.length();
+            if (n == 0) return 0;
+            if (n <= 15) {
+                int i = (s.charAt(0) == '-') ? 1 : 0;
+                if (i < n) {
+                    long acc = 0;
+                    for (; i < n; i++) {
+                        char ch = s.charAt(i);
+                        if (ch < '0' || ch > '9') break;
+                        acc = acc * 10 + (ch - '0');
+                    }
+                    if (i == n) return (s.charAt(0) == '-') ? -(double) acc : (double) acc;
+                }
+            }
+            try {
+                return Double.parseDouble(s.toString());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+}
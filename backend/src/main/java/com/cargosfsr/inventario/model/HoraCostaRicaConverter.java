@@ -0,0 +1,34 @@
+package com.cargosfsr.inventario.model;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Fechas de paquetes e historial: en BD van como hora local de Costa Rica (así las leen los
+ * reportes, los SPs y los imports). Antes se guardaban en UTC por JPA y se corregían con un
+ * UPDATE ... DATE_SUB(..., INTERVAL 6 HOUR); con este converter el INSERT/UPDATE ya escribe
+ * el valor final.
+ *
+ * Los campos van además con {@code @JdbcTypeCode(SqlTypes.LOCAL_DATE_TIME)}: así el LocalDateTime
+ * viaja tal cual (setObject/getObject) y no depende de hibernate.jdbc.time_zone ni de la zona de
+ * la JVM, que con el Timestamp por defecto lo volverían a desplazar.
+ */
+@Converter
+public class HoraCostaRicaConverter implements AttributeConverter<Instant, LocalDateTime> {
+
+    public static final ZoneId ZONA = ZoneId.of("America/Costa_Rica");
+
+    @Override
+    public LocalDateTime convertToDatabaseColumn(Instant instant) {
+        return instant == null ? null : LocalDateTime.ofInstant(instant, ZONA);
+    }
+
+    @Override
+    public Instant convertToEntityAttribute(LocalDateTime local) {
+        return local == null ? null : local.atZone(ZONA).toInstant();
+    }
+}
@@ -6,7 +6,11 @@ import java.time.Instant;
 import com.cargosfsr.inventario.model.enums.DevolucionSubtipo;
 import com.cargosfsr.inventario.model.enums.PaqueteEstado;
 
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
@@ -65,15 +69,23 @@ public class Paquete {
     @Column(name = "devolucion_subtipo", nullable = false)
     private DevolucionSubtipo devolucionSubtipo = DevolucionSubtipo.FUERA_DE_RUTA;
 
+    @Convert(converter = HoraCostaRicaConverter.class)
+    @JdbcTypeCode(SqlTypes.LOCAL_DATE_TIME)
     @Column(name = "received_at", nullable = false)
     private Instant receivedAt = Instant.now();
 
+    @Convert(converter = HoraCostaRicaConverter.class)
+    @JdbcTypeCode(SqlTypes.LOCAL_DATE_TIME)
     @Column(name = "delivered_at")
     private Instant deliveredAt;
 
+    @Convert(converter = HoraCostaRicaConverter.class)
+    @JdbcTypeCode(SqlTypes.LOCAL_DATE_TIME)
     @Column(name = "returned_at")
     private Instant returnedAt;
 
+    @Convert(converter = HoraCostaRicaConverter.class)
+    @JdbcTypeCode(SqlTypes.LOCAL_DATE_TIME)
     @Column(name = "last_state_change_at", nullable = false)
     private Instant lastStateChangeAt = Instant.now();
 
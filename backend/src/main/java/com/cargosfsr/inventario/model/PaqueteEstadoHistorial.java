@@ -4,7 +4,11 @@ import java.time.Instant;
 
 import com.cargosfsr.inventario.model.enums.PaqueteEstado;
 
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
@@ -38,6 +42,8 @@ public class PaqueteEstadoHistorial {
     @Column(name = "estado_to", nullable = false)
     private PaqueteEstado estadoTo;
 
+    @Convert(converter = HoraCostaRicaConverter.class)
+    @JdbcTypeCode(SqlTypes.LOCAL_DATE_TIME)
     @Column(name = "changed_at", nullable = false)
     private Instant changedAt = Instant.now();
 
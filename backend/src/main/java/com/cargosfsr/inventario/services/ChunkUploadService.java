@@ -0,0 +1,213 @@
+package com.cargosfsr.inventario.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import com.cargosfsr.inventario.auth.CurrentUser;
+import com.cargosfsr.inventario.importacion.ImportJob;
+import com.cargosfsr.inventario.importacion.UploadSession;
+
+/**
+ * Subidas reanudables por fragmentos para los imports grandes.
+ *
+ * El cliente abre una subida con el tamaño total, manda los fragmentos en orden indicando el
+ * offset y, si se corta la conexión, consulta {@code recibidos} y sigue desde ahí. Cada fragmento
+ * se agrega al archivo de spool por FileChannel (nunca pasa entero por el heap) y puede traer su
+ * SHA-256; al completar, el spool se entrega tal cual a un job de import.
+ *
+ * Las subidas viven en memoria (igual que los jobs) y se descartan si pasan {@link #INACTIVIDAD}
+ * sin recibir fragmentos.
+ */
+@Service
+public class ChunkUploadService {
+
+    private static final Duration INACTIVIDAD = Duration.ofHours(24);
+
+    /** El offset del fragmento no es donde va la subida */
+    public static class OffsetInvalidoException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final transient UploadSession upload;
+        public OffsetInvalidoException(UploadSession upload) {
+            super("El fragmento no empieza en el byte esperado (" + upload.recibidos() + ")");
+            this.upload = upload;
+        }
+        public UploadSession upload() { return upload; }
+    }
+
+    private final ImportJobService jobs;
+    private final CurrentUser currentUser;
+    private final Path dir;
+    private final long maxBytes;
+    private final long chunkMaxBytes;
+    private final Map<String, UploadSession> uploads = new ConcurrentHashMap<>();
+
+    public ChunkUploadService(ImportJobService jobs,
+                              CurrentUser currentUser,
+                              @Value("${import.uploads.dir:}") String dir,
+                              @Value("${import.uploads.max-bytes:2147483648}") long maxBytes,
+                              @Value("${import.uploads.chunk-max-bytes:16777216}") long chunkMaxBytes) throws IOException {
+        this.jobs = jobs;
+        this.currentUser = currentUser;
+        this.dir = StringUtils.hasText(dir)
+                ? Paths.get(dir)
+                : Paths.get(System.getProperty("java.io.tmpdir"), "inventario-uploads");
+        this.maxBytes = maxBytes;
+        this.chunkMaxBytes = chunkMaxBytes;
+        Files.createDirectories(this.dir);
+        // las subidas no sobreviven un reinicio: los spools que hayan quedado son basura
+        try (Stream<Path> viejos = Files.list(this.dir)) {
+            viejos.filter(p -> p.getFileName().toString().endsWith(".part")).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    public long chunkMaxBytes() {
+        return chunkMaxBytes;
+    }
+
+    /** Abre una subida de {@code bytes} bytes; sha256 (hex) es opcional y se verifica al completar */
+    public UploadSession create(String archivo, long bytes, String sha256) throws IOException {
+        purgeIdle();
+        if (bytes <= 0) throw new IllegalArgumentException("Tamaño de archivo inválido");
+        if (bytes > maxBytes) throw new IllegalArgumentException("El archivo supera el máximo de " + maxBytes + " bytes");
+        if (sha256 != null && !sha256.isBlank() && !sha256.trim().matches("(?i)[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("sha256 inválido");
+        }
+        String id = UUID.randomUUID().toString();
+        Path spool = dir.resolve(id + ".part");
+        Files.createFile(spool);
+        UploadSession s = new UploadSession(id, StringUtils.hasText(archivo) ? archivo.trim() : id,
+                currentUser.username(), bytes, StringUtils.hasText(sha256) ? sha256.trim().toLowerCase(Locale.ROOT) : null,
+                spool, sha256Digest());
+        uploads.put(id, s);
+        return s;
+    }
+
+    /** La subida, solo si es del usuario actual */
+    public Optional<UploadSession> find(String id) {
+        if (!StringUtils.hasText(id)) return Optional.empty();
+        UploadSession s = uploads.get(id);
+        if (s == null || !Objects.equals(s.owner(), currentUser.username())) return Optional.empty();
+        return Optional.of(s);
+    }
+
+    /**
+     * Agrega un fragmento que empieza en {@code offset}. Si el cuerpo se corta a la mitad o el
+     * checksum no coincide, el spool vuelve al offset y la subida queda como estaba.
+     *
+     * @param chunkSha256 SHA-256 (hex) del fragmento, opcional
+     */
+    public UploadSession append(UploadSession s, long offset, InputStream body, String chunkSha256) throws IOException {
+        synchronized (s) {
+            if (!uploads.containsKey(s.id())) throw new IllegalStateException("La subida ya fue completada o cancelada");
+            if (offset != s.recibidos()) throw new OffsetInvalidoException(s);
+
+            MessageDigest chunkMd = sha256Digest();
+            MessageDigest fileMd = s.digestCopy();
+            long limite = Math.min(chunkMaxBytes, s.bytes() - offset);
+            long n = 0;
+            try (FileChannel ch = FileChannel.open(s.spool(), StandardOpenOption.WRITE)) {
+                ch.position(offset);
+                byte[] buf = new byte[64 * 1024];
+                ByteBuffer bb = ByteBuffer.wrap(buf);
+                int r;
+                try {
+                    while ((r = body.read(buf)) != -1) {
+                        n += r;
+                        if (n > limite) {
+                            throw new IllegalArgumentException(n > chunkMaxBytes
+                                    ? "El fragmento supera el máximo de " + chunkMaxBytes + " bytes"
+                                    : "El fragmento pasa del tamaño declarado del archivo");
+                        }
+                        chunkMd.update(buf, 0, r);
+                        fileMd.update(buf, 0, r);
+                        bb.clear().limit(r);
+                        while (bb.hasRemaining()) ch.write(bb);
+                    }
+                    if (StringUtils.hasText(chunkSha256)
+                            && !HexFormat.of().formatHex(chunkMd.digest()).equalsIgnoreCase(chunkSha256.trim())) {
+                        throw new IllegalArgumentException("El checksum del fragmento no coincide");
+                    }
+                } catch (IOException | RuntimeException e) {
+                    ch.truncate(offset); // se descarta el fragmento parcial: el cliente lo reenvía
+                    throw e;
+                }
+            }
+            s.advance(n, fileMd);
+            return s;
+        }
+    }
+
+    /**
+     * Cierra la subida y encola el import sobre el spool (el job lo borra al terminar).
+     * Si la cola de jobs está llena, la subida sigue abierta para reintentar.
+     */
+    public ImportJob complete(UploadSession s, String tipo, boolean delta) throws IOException {
+        synchronized (s) {
+            if (!uploads.containsKey(s.id())) throw new IllegalStateException("La subida ya fue completada o cancelada");
+            if (!s.isCompleta()) {
+                throw new IllegalStateException("Faltan " + (s.bytes() - s.recibidos()) + " bytes por subir");
+            }
+            if (s.sha256() != null && !s.sha256().equals(s.sha256Recibido())) {
+                discard(s);
+                throw new IllegalArgumentException("El checksum del archivo no coincide; vuelva a subirlo");
+            }
+            ImportJob job = jobs.submitArchivo(tipo, s.spool(), s.archivo(), delta);
+            uploads.remove(s.id());
+            return job;
+        }
+    }
+
+    public void cancel(UploadSession s) throws IOException {
+        synchronized (s) {
+            discard(s);
+        }
+    }
+
+    private void discard(UploadSession s) throws IOException {
+        uploads.remove(s.id());
+        Files.deleteIfExists(s.spool());
+    }
+
+    private void purgeIdle() {
+        Instant limite = Instant.now().minus(INACTIVIDAD);
+        for (UploadSession s : uploads.values()) {
+            if (s.touchedAt().isBefore(limite)) {
+                try {
+                    cancel(s);
+                } catch (IOException ignore) {
+                    // queda en la carpeta temporal
+                }
+            }
+        }
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
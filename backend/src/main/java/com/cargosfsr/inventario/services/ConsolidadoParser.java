@@ -0,0 +1,357 @@
+package com.cargosfsr.inventario.services;
+
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.poi.ss.usermodel.CellType;
+
+import com.cargosfsr.inventario.importacion.DistritoTrie;
+import com.cargosfsr.inventario.importacion.Fechas;
+import com.cargosfsr.inventario.importacion.LayoutProfiles;
+import com.cargosfsr.inventario.importacion.SheetCell;
+import com.cargosfsr.inventario.importacion.SheetRow;
+import com.cargosfsr.inventario.importacion.TabularSource;
+import com.cargosfsr.inventario.importacion.TrackingScanner;
+
+/**
+ * Interpreta las filas del consolidado a medida que llegan (streaming).
+ *
+ * Mantiene el comportamiento del import original:
+ * - cabecera = primera fila; columnas por nombre ({@link #headerIndex}).
+ * - si no hay cabecera TRACKING, se detecta con las primeras ~200 filas ({@link #detectTrackingColumn}),
+ *   salvo que un import anterior con la misma cabecera ya la haya detectado (LayoutProfiles).
+ * - marchamo/distrito faltantes se buscan en la fila ({@link #scanRowForMarker}).
+ * - corta cuando una fila sin tracking tampoco tiene tracking en las 2 siguientes.
+ *
+ * Solo retiene en memoria la muestra de detección y una ventana de 3 filas; como el lector
+ * reutiliza la fila, se guardan copias (las de la ventana se reciclan).
+ */
+final class ConsolidadoParser implements TabularSource.RowHandler {
+
+    private static final int DETECT_ROWS = 200;
+    private static final int LOOKAHEAD = 2;
+
+    private final DistritoTrie distritos;
+    private final LayoutProfiles perfiles;
+    private final Consumer<ImportService.ConsoRow> sink;
+
+    private boolean headerSeen;
+    private long firma;                           // de la cabecera (ver LayoutProfiles)
+    private int firstRowNum;
+    private Integer colFecha, colTracking, colMarchamo, colDistrito, colResponsable, colObservaciones;
+
+    private List<SheetRow> detectBuffer;          // != null mientras se junta la muestra
+    private final ArrayDeque<SheetRow> window = new ArrayDeque<>();
+    private final ArrayDeque<SheetRow> libres = new ArrayDeque<>(); // copias ya procesadas, para reutilizar
+    private boolean done;
+
+    ConsolidadoParser(DistritoTrie distritos, LayoutProfiles perfiles, Consumer<ImportService.ConsoRow> sink) {
+        this.distritos = distritos;
+        this.perfiles = perfiles;
+        this.sink = sink;
+    }
+
+    @Override
+    public boolean onRow(SheetRow row) {
+        if (done) return false;
+        if (!headerSeen) {
+            readHeader(row);
+            return true;
+        }
+        if (detectBuffer != null) {
+            int limit = Math.max(firstRowNum, 0) + DETECT_ROWS;
+            if (row.num() <= limit) {
+                detectBuffer.add(row.copy());
+                if (row.num() < limit) return true;
+                finishDetection();
+                return !done;
+            }
+            finishDetection();
+            if (done) return false;
+        }
+        push(libres.isEmpty() ? row.copy() : libres.pollFirst().copyFrom(row));
+        return !done;
+    }
+
+    /** Procesa lo que quede en la ventana al terminar la hoja */
+    void finish() {
+        if (!headerSeen) return;
+        if (detectBuffer != null) finishDetection();
+        while (!done && !window.isEmpty()) {
+            process(window.pollFirst());
+        }
+        window.clear();
+        libres.clear();
+    }
+
+    private void readHeader(SheetRow header) {
+        headerSeen = true;
+        firstRowNum = header.num();
+
+        Map<String, Integer> hIndex = new HashMap<>();
+        StringBuilder firmaTxt = new StringBuilder();
+        for (SheetCell c : header.cells()) {
+            String name = getString(c);
+            if (name != null) {
+                hIndex.put(name.trim().toUpperCase(Locale.ROOT), c.col());
+                firmaTxt.append(c.col()).append('=').append(name).append('\u0000');
+            }
+        }
+        firma = LayoutProfiles.firma(firmaTxt);
+
+        colFecha         = headerIndex(hIndex, "FECHA");
+        colTracking      = headerIndex(hIndex, "TRACKING");
+        colMarchamo      = headerIndex(hIndex, "MARCHAMO");
+        colDistrito      = headerIndex(hIndex, "DISTRITO", "DISTRICT", "ZONA", "UBICACION", "UBICACIÓN", "MUEBLE"); // soporta viejas cabeceras
+        colResponsable   = headerIndex(hIndex, "RESPONSABLE", "RESP"); // opcional
+        colObservaciones = headerIndex(hIndex, "OBSERVACIONES", "OBSERVACION", "OBS", "NOTAS", "NOTA");
+
+        if (colFecha == null) colFecha = 0;
+        if (colTracking == null) {
+            // misma cabecera que un import anterior: su columna detectada (si no trae trackings,
+            // process() igual recorre la fila entera)
+            LayoutProfiles.Perfil p = perfiles.get(firma);
+            if (p != null && p.colTracking() != null) colTracking = p.colTracking();
+            else detectBuffer = new ArrayList<>(DETECT_ROWS);
+        }
+    }
+
+    private void finishDetection() {
+        List<SheetRow> sample = detectBuffer;
+        detectBuffer = null;
+        colTracking = detectTrackingColumn(sample);
+        if (colTracking != null) perfiles.put(firma, new LayoutProfiles.Perfil(null, (char) 0, colTracking, null));
+        for (SheetRow r : sample) {
+            if (done) break;
+            push(r);
+        }
+    }
+
+    /** Agrega a la ventana una fila propia (copia) */
+    private void push(SheetRow row) {
+        window.addLast(row);
+        while (!done && !window.isEmpty() && window.peekFirst().num() + LOOKAHEAD <= row.num()) {
+            SheetRow r = window.pollFirst();
+            process(r);
+            libres.addLast(r);
+        }
+    }
+
+    /** Fila siguiente (por número) si ya está en la ventana; null si no existe */
+    private SheetRow ahead(int num) {
+        for (SheetRow r : window) {
+            if (r.num() == num) return r;
+            if (r.num() > num) break;
+        }
+        return null;
+    }
+
+    private void process(SheetRow row) {
+        String marchamoActual = null;
+        String distritoActual = null;
+
+        if (colMarchamo != null) {
+            String raw = getCellStr(row.cell(colMarchamo));
+            if (raw != null && !raw.isBlank()) {
+                marchamoActual = raw.trim();
+            }
+        }
+        if (colDistrito != null) {
+            String raw = getString(row.cell(colDistrito));
+            if (raw != null && !raw.isBlank()) {
+                DistritoTrie.Canon d = distritos.buscar(raw);
+                if (d != null) distritoActual = d.nombre();
+            }
+        }
+
+        if (marchamoActual == null || distritoActual == null) {
+            Marker mk = scanRowForMarker(row);
+            if (distritoActual == null && mk.distrito != null) distritoActual = mk.distrito;
+            if (marchamoActual  == null && mk.marchamo  != null) marchamoActual  = mk.marchamo;
+        }
+
+        // Responsable por fila (si existe y viene valor)
+        String responsableFila = null;
+        if (colResponsable != null) {
+            String resp = getString(row.cell(colResponsable));
+            if (ImportService.notBlank(resp)) responsableFila = resp.trim();
+        }
+
+        // OBSERVACIONES: SOLO si la celda es texto; si no, se deja vacío.
+        String observacionesFila = null;
+        if (colObservaciones != null) {
+            String obs = getObservacionStrict(row.cell(colObservaciones));
+            if (obs != null) observacionesFila = obs;
+        }
+
+        Timestamp llegada = null;
+        try {
+            llegada = parseFecha(row.cell(colFecha));
+        } catch (Exception ignore) {}
+
+        List<String> trackings = new ArrayList<>();
+        if (colTracking != null) {
+            TrackingScanner.addAllTrackings(textOf(row.cell(colTracking)), trackings);
+        }
+        if (trackings.isEmpty()) {
+            // celda por celda: equivale a escanear la fila concatenada con espacios
+            for (SheetCell c : row.cells()) {
+                TrackingScanner.addAllTrackings(textOf(c), trackings);
+            }
+        }
+
+        // ===== EARLY EXIT: si esta fila NO tiene tracking y las 2 próximas tampoco, cortar =====
+        if (trackings.isEmpty()) {
+            boolean next1Has = rowHasTracking(ahead(row.num() + 1), colTracking);
+            boolean next2Has = rowHasTracking(ahead(row.num() + 2), colTracking);
+            if (!next1Has && !next2Has) done = true;
+            return;
+        }
+        // ======================================================================================
+
+        for (String tracking : trackings) {
+            if (tracking == null || tracking.isBlank()) continue;
+            sink.accept(new ImportService.ConsoRow(
+                tracking.trim(),
+                marchamoActual,
+                distritoActual,
+                llegada,
+                responsableFila,
+                observacionesFila
+            ));
+        }
+    }
+
+    /** Marcador parcial en una fila */
+    private static class Marker {
+        String marchamo;
+        String distrito;
+    }
+
+    /** Devuelve el índice de la primera cabecera que coincida con alguno de los nombres dados */
+    private static Integer headerIndex(Map<String,Integer> hIndex, String... names) {
+        if (hIndex == null || hIndex.isEmpty() || names == null) return null;
+        for (String n : names) {
+            if (n == null) continue;
+            Integer idx = hIndex.get(n.toUpperCase(Locale.ROOT));
+            if (idx != null) return idx;
+        }
+        return null;
+    }
+
+    /** Encuentra la columna probable de tracking por heurística (primeras ~200 filas) */
+    private static Integer detectTrackingColumn(List<SheetRow> sample) {
+        Integer guess = null;
+        int bestScore = -1;
+
+        for (int c = 0; c < 30; c++) {
+            int score = 0;
+            for (SheetRow row : sample) {
+                if (TrackingScanner.looksLikeTracking(textOf(row.cell(c)))) score++;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                guess = (score == 0 ? null : c);
+            }
+        }
+        return guess;
+    }
+
+    /** Escanea una fila para ver si contiene marchamo y/o distrito */
+    private Marker scanRowForMarker(SheetRow row) {
+        Marker mk = new Marker();
+        for (SheetCell c : row.cells()) {
+            String s = getString(c);
+            if (s == null) continue;
+            String raw = s.trim();
+            if (raw.isEmpty()) continue;
+
+            // marchamo: números (mínimo 4)
+            if (mk.marchamo == null && TrackingScanner.isDigits(raw, 4)) {
+                mk.marchamo = raw;
+                continue;
+            }
+
+            // distrito: buscar en cualquier texto de celda
+            if (mk.distrito == null) {
+                DistritoTrie.Canon d = distritos.buscar(raw);
+                if (d != null) mk.distrito = d.nombre();
+            }
+        }
+        return mk;
+    }
+
+    private static boolean rowHasTracking(SheetRow row, Integer colTracking) {
+        if (row == null) return false;
+        if (colTracking != null) {
+            if (TrackingScanner.containsTracking(textOf(row.cell(colTracking)))) return true;
+        }
+        for (SheetCell c : row.cells()) {
+            if (TrackingScanner.containsTracking(textOf(c))) return true;
+        }
+        return false;
+    }
+
+    // ===================== Lectura de celdas =====================
+
+    // Leer observaciones SOLO si la celda es texto (o fórmula que produce texto).
+    private static String getObservacionStrict(SheetCell c) {
+        if (c == null) return null;
+        CellType t = c.type();
+        if (t == CellType.STRING) {
+            String s = c.text();
+            return (s == null || s.isEmpty()) ? null : s;
+        }
+        if (t == CellType.FORMULA) {
+            if (c.cachedType() == CellType.STRING) {
+                String s = c.text();
+                return (s == null || s.isEmpty()) ? null : s;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Texto de una celda STRING, o null. Para buscar trackings alcanza: un número o una fecha
+     * formateados (solo dígitos y '-') nunca contienen uno.
+     */
+    private static String textOf(SheetCell c) {
+        return (c != null && c.isText()) ? c.text() : null;
+    }
+
+    private static String getCellStr(SheetCell c) {
+        if (c == null) return null;
+        switch (c.type()) {
+            case STRING:  return c.text();
+            case NUMERIC: return c.isDateFormatted() ? c.isoDate() : c.integerText();
+            default:      return null;
+        }
+    }
+
+    private static String getString(SheetCell c) {
+        if (c == null) return null;
+        switch (c.type()) {
+            case STRING:  return c.text();
+            case NUMERIC: return c.isDateFormatted() ? c.dateString() : c.integerText();
+            case FORMULA: return c.formula();
+            case BOOLEAN: return Boolean.toString(c.bool());
+            default:      return null;
+        }
+    }
+
+    private static Timestamp parseFecha(SheetCell c) {
+        if (c == null) return null;
+        if (c.type() == CellType.NUMERIC && c.isDateFormatted()) {
+            return Timestamp.valueOf(c.localDateTime());
+        }
+        String s = getString(c);
+        if (s == null) return null;
+        return s.contains("/") ? Fechas.parse(s, Fechas.DMY) : Fechas.parse(s, Fechas.YMD);
+    }
+}
@@ -0,0 +1,184 @@
+package com.cargosfsr.inventario.services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.cargosfsr.inventario.config.DbSession;
+
+import com.cargosfsr.inventario.importacion.Huella;
+
+/**
+ * Aplica el consolidado "por conjuntos": las filas se cargan a una tabla temporal de la sesión
+ * con INSERT multi-fila y luego sacos/paquetes se resuelven con unos pocos INSERT ... SELECT y
+ * UPDATE ... JOIN, en vez de un UPDATE por paquete.
+ *
+ * Cada fila lleva una huella de lo que escribe (ver {@link Huella}); al aplicar se guarda en
+ * consolidado_huellas. En modo delta se descartan antes las filas cuya huella no cambió y cuyo
+ * paquete sigue con el saco/distrito de ese import: un re-upload del mismo consolidado
+ * acumulado solo toca las filas que de verdad cambiaron.
+ *
+ * La tabla temporal vive en la conexión de la transacción: crear, cargar, aplicar y soltar
+ * tienen que ocurrir en el mismo hilo y dentro del mismo @Transactional.
+ */
+class ConsolidadoStaging {
+
+    static final String TABLA = "tmp_import_consolidado";
+
+    /** total = trackings del archivo; aplicados = los que se escribieron (todos salvo en delta) */
+    record Resultado(int total, int conMarcadores, int sinCambios) {
+        int aplicados() { return total - sinCambios; }
+    }
+
+    // filas por INSERT multi-fila (7 parámetros por fila)
+    private static final int FILAS_POR_INSERT = 500;
+
+    private final JdbcTemplate jdbc;
+    private final DbSession dbSession;
+
+    ConsolidadoStaging(JdbcTemplate jdbc, DbSession dbSession) {
+        this.jdbc = jdbc;
+        this.dbSession = dbSession;
+    }
+
+    /** Crea (o recrea) la tabla temporal vacía */
+    void create() {
+        drop(); // por si la conexión del pool la trae de un import anterior
+        jdbc.execute(
+            "CREATE TEMPORARY TABLE " + TABLA + " (" +
+            "  tracking_code VARCHAR(64) NOT NULL PRIMARY KEY," +
+            "  marchamo VARCHAR(64) NULL," +
+            "  distrito_id BIGINT NULL," +
+            "  received_at DATETIME NULL," +
+            "  responsable VARCHAR(100) NULL," +
+            "  observaciones VARCHAR(500) NULL," +
+            "  huella BIGINT NOT NULL," +
+            "  KEY ix_marchamo (marchamo)" +
+            ")");
+    }
+
+    void drop() {
+        jdbc.execute("DROP TEMPORARY TABLE IF EXISTS " + TABLA);
+    }
+
+    /**
+     * Carga un lote en la tabla temporal. Un tracking repetido pisa la fila anterior
+     * (los lotes llegan en orden de archivo: la última fila gana, igual que en el modo por lotes).
+     *
+     * @param distMap distrito canónico -> id (la canonización es de Java, se resuelve aquí)
+     */
+    void load(List<ImportService.ConsoRow> batch, Map<String, Long> distMap) {
+        // uniq dentro del lote (última fila gana)
+        Map<String, ImportService.ConsoRow> byTracking = new LinkedHashMap<>();
+        for (ImportService.ConsoRow r : batch) {
+            if (r.tracking == null) continue;
+            byTracking.put(r.tracking, r);
+        }
+        List<ImportService.ConsoRow> rows = new ArrayList<>(byTracking.values());
+
+        for (int from = 0; from < rows.size(); from += FILAS_POR_INSERT) {
+            List<ImportService.ConsoRow> slice = rows.subList(from, Math.min(from + FILAS_POR_INSERT, rows.size()));
+
+            StringBuilder sql = new StringBuilder(64 + slice.size() * 16)
+                .append("INSERT INTO ").append(TABLA)
+                .append(" (tracking_code, marchamo, distrito_id, received_at, responsable, observaciones, huella) VALUES ");
+            List<Object> args = new ArrayList<>(slice.size() * 7);
+            for (int i = 0; i < slice.size(); i++) {
+                ImportService.ConsoRow r = slice.get(i);
+                String marchamo = ImportService.notBlank(r.marchamo) ? r.marchamo : null;
+                Long distritoId = (r.distrito == null) ? null : distMap.get(r.distrito);
+                String responsable = (r.responsable == null || r.responsable.isBlank()) ? null : clip(r.responsable, 100);
+                String observaciones = (r.observaciones == null || r.observaciones.isEmpty()) ? null : clip(r.observaciones, 500);
+
+                long h = Huella.INICIO;
+                h = Huella.mix(h, marchamo);
+                h = Huella.mix(h, distritoId);
+                h = Huella.mix(h, r.receivedAt);
+                h = Huella.mix(h, responsable);
+                h = Huella.mix(h, observaciones);
+
+                if (i > 0) sql.append(',');
+                sql.append("(?,?,?,?,?,?,?)");
+                args.add(r.tracking);
+                args.add(marchamo);
+                args.add(distritoId);
+                args.add(r.receivedAt);
+                args.add(responsable);
+                args.add(observaciones);
+                args.add(h);
+            }
+            sql.append(" ON DUPLICATE KEY UPDATE marchamo=VALUES(marchamo), distrito_id=VALUES(distrito_id),")
+               .append(" received_at=VALUES(received_at), responsable=VALUES(responsable),")
+               .append(" observaciones=VALUES(observaciones), huella=VALUES(huella)");
+
+            jdbc.update(sql.toString(), args.toArray());
+        }
+    }
+
+    /**
+     * Aplica lo cargado: sacos faltantes, paquetes faltantes (saco/distrito PENDIENTE, estado base)
+     * y la actualización de saco, distrito, received_at, responsable y observaciones.
+     *
+     * @param delta si true, no toca los trackings sin cambios desde el último import
+     * @param lote  import en curso: guarda la imagen previa de los paquetes que se van a pisar
+     */
+    Resultado apply(long sacoPend, long distPend, String actor, boolean delta, ImportBatchService.Lote lote) {
+        jdbc.update(
+            "INSERT IGNORE INTO sacos(marchamo) " +
+            "SELECT DISTINCT marchamo FROM " + TABLA + " WHERE marchamo IS NOT NULL");
+
+        // contadores sobre el archivo completo (antes de descartar lo que no cambió)
+        int[] conteo = jdbc.queryForObject(
+            "SELECT COUNT(*), " +
+            "       COALESCE(SUM(s.id IS NOT NULL AND t.distrito_id IS NOT NULL AND s.id <> ? AND t.distrito_id <> ?), 0) " +
+            "  FROM " + TABLA + " t LEFT JOIN sacos s ON s.marchamo = t.marchamo",
+            (rs, n) -> new int[] { rs.getInt(1), rs.getInt(2) },
+            sacoPend, distPend);
+
+        int sinCambios = 0;
+        if (delta) {
+            // misma huella y el paquete sigue como lo dejó ese import (nadie lo re-ensacó a mano)
+            sinCambios = jdbc.update(
+                "DELETE t FROM " + TABLA + " t " +
+                "  JOIN consolidado_huellas h ON h.tracking_code = t.tracking_code AND h.huella = t.huella " +
+                "  JOIN paquetes p ON p.tracking_code = t.tracking_code " +
+                "                 AND p.saco_id <=> h.saco_id AND p.distrito_id <=> h.distrito_id");
+        }
+
+        lote.guardarAntes(TABLA);
+
+        dbSession.actor(actor);
+        jdbc.update(
+            "INSERT IGNORE INTO paquetes(tracking_code, saco_id, distrito_id, estado) " +
+            "SELECT tracking_code, ?, ?, 'NO_ENTREGADO_CONSIGNATARIO_DISPONIBLE' FROM " + TABLA,
+            sacoPend, distPend);
+
+        jdbc.update(
+            "UPDATE paquetes p " +
+            "  JOIN " + TABLA + " t ON t.tracking_code = p.tracking_code " +
+            "  LEFT JOIN sacos s ON s.marchamo = t.marchamo " +
+            "   SET p.saco_id = COALESCE(s.id, ?), " +
+            "       p.distrito_id = COALESCE(t.distrito_id, ?), " +
+            "       p.received_at = t.received_at, " +
+            "       p.cambio_en_sistema_por = ?, " +
+            "       p.observaciones = COALESCE(t.observaciones, p.observaciones), " +
+            "       p.responsable_consolidado = COALESCE(t.responsable, p.responsable_consolidado)",
+            sacoPend, distPend, actor);
+
+        // huellas de lo aplicado, con el saco/distrito que quedó
+        jdbc.update(
+            "INSERT INTO consolidado_huellas(tracking_code, huella, saco_id, distrito_id) " +
+            "SELECT t.tracking_code, t.huella, p.saco_id, p.distrito_id " +
+            "  FROM " + TABLA + " t JOIN paquetes p ON p.tracking_code = t.tracking_code " +
+            "ON DUPLICATE KEY UPDATE huella = VALUES(huella), saco_id = VALUES(saco_id), distrito_id = VALUES(distrito_id)");
+
+        return new Resultado(conteo[0], conteo[1], sinCambios);
+    }
+
+    private static String clip(String s, int max) {
+        return (s.length() > max) ? s.substring(0, max) : s;
+    }
+}
@@ -0,0 +1,84 @@
+package com.cargosfsr.inventario.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.cargosfsr.inventario.importacion.DistritoTrie;
+
+/**
+ * Diccionario de distritos de los imports: los distritos activos (tabla distritos) y sus alias
+ * (tabla distrito_alias, ver ImportSchema) compilados en un {@link DistritoTrie}.
+ *
+ * Mismo esquema de recarga que StatusExternoReglas: se compila en el primer uso y cada
+ * {@link #RECHEQUEO_NS} se compara una firma barata de las dos tablas; si cambió, se recompila.
+ * Los cambios hechos desde /api/admin/distritos llaman a {@link #recargar()} y se ven al instante.
+ * Cada import toma un {@link #trie()} al empezar y lo usa hasta terminar.
+ */
+@Service
+public class DistritoDictionary {
+
+    private static final long RECHEQUEO_NS = 30_000_000_000L;
+
+    private final JdbcTemplate jdbc;
+
+    private volatile DistritoTrie trie;
+    private volatile String firma;
+    private volatile long revisadoEn;
+
+    public DistritoDictionary(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Trie vigente (recompilado si las tablas cambiaron desde la última revisión) */
+    public DistritoTrie trie() {
+        DistritoTrie t = trie;
+        if (t != null && System.nanoTime() - revisadoEn < RECHEQUEO_NS) return t;
+        synchronized (this) {
+            if (trie == null || System.nanoTime() - revisadoEn >= RECHEQUEO_NS) {
+                String f = leerFirma();
+                if (trie == null || !Objects.equals(f, firma)) compilar(f);
+                revisadoEn = System.nanoTime();
+            }
+            return trie;
+        }
+    }
+
+    /** Recompila ya; devuelve cuántos distritos activos quedaron */
+    public synchronized int recargar() {
+        compilar(leerFirma());
+        revisadoEn = System.nanoTime();
+        return trie.distritos();
+    }
+
+    private void compilar(String f) {
+        // primero los nombres: un alias igual a otro distrito no le gana
+        List<Map.Entry<String, DistritoTrie.Canon>> claves = new ArrayList<>();
+        jdbc.query("SELECT id, nombre FROM distritos WHERE activo = 1 ORDER BY id", rs -> {
+            String nombre = rs.getString("nombre");
+            claves.add(Map.entry(nombre, new DistritoTrie.Canon(rs.getLong("id"), nombre)));
+        });
+        jdbc.query(
+            "SELECT a.alias, d.id, d.nombre FROM distrito_alias a JOIN distritos d ON d.id = a.distrito_id " +
+            " WHERE d.activo = 1 ORDER BY a.alias",
+            rs -> {
+                claves.add(Map.entry(rs.getString("alias"), new DistritoTrie.Canon(rs.getLong("id"), rs.getString("nombre"))));
+            });
+        trie = new DistritoTrie(claves);
+        firma = f;
+    }
+
+    private String leerFirma() {
+        return jdbc.queryForObject(
+            "SELECT CONCAT(" +
+            "  (SELECT CONCAT(COUNT(*), '/', COALESCE(SUM(id * activo), 0), '/', COALESCE(BIT_XOR(CRC32(nombre)), 0)) FROM distritos)," +
+            "  '|'," +
+            "  (SELECT CONCAT(COUNT(*), '/', COALESCE(MAX(actualizado_en), ''), '/', " +
+            "                 COALESCE(BIT_XOR(CRC32(CONCAT(alias, '>', distrito_id))), 0)) FROM distrito_alias))",
+            String.class);
+    }
+}
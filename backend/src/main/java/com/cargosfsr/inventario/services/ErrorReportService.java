@@ -0,0 +1,87 @@
+package com.cargosfsr.inventario.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import com.cargosfsr.inventario.importacion.ErrorReport;
+
+/**
+ * Reportes de errores de los imports (ver {@link ErrorReport}). Los archivos quedan en disco
+ * para descargarlos desde /api/import/reportes/{id} y se borran pasado {@link #RETENCION}.
+ * Igual que los jobs, el registro vive en memoria: un reinicio los descarta.
+ */
+@Service
+public class ErrorReportService {
+
+    private static final Duration RETENCION = Duration.ofHours(24);
+
+    private final Path dir;
+    private final Map<String, ErrorReport> reportes = new ConcurrentHashMap<>();
+
+    public ErrorReportService(@Value("${import.reportes.dir:}") String dir) throws IOException {
+        this.dir = StringUtils.hasText(dir)
+                ? Paths.get(dir)
+                : Paths.get(System.getProperty("java.io.tmpdir"), "inventario-reportes");
+        Files.createDirectories(this.dir);
+        try (Stream<Path> viejos = Files.list(this.dir)) {
+            viejos.filter(p -> p.getFileName().toString().endsWith(".ndjson")).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /** Reporte nuevo; hay que pasarlo a {@link #publicar} o {@link #descartar} al terminar */
+    public ErrorReport crear() throws IOException {
+        purgeViejos();
+        return ErrorReport.crear(dir);
+    }
+
+    /**
+     * Cierra el reporte y agrega a {@code out} el total, las muestras y, si hubo errores,
+     * el id para descargarlo completo. Sin errores, el archivo se borra.
+     */
+    public void publicar(ErrorReport r, Map<String, Object> out) throws IOException {
+        r.close();
+        out.put("errores", r.muestras());
+        out.put("errores_total", r.total());
+        if (r.total() == 0) {
+            descartar(r);
+            return;
+        }
+        reportes.put(r.id(), r);
+        out.put("reporte_errores", r.id());
+    }
+
+    public void descartar(ErrorReport r) {
+        try {
+            r.close();
+            Files.deleteIfExists(r.file());
+        } catch (IOException ignore) {
+            // queda en la carpeta; se borra al reiniciar
+        }
+    }
+
+    public Optional<ErrorReport> find(String id) {
+        if (!StringUtils.hasText(id)) return Optional.empty();
+        return Optional.ofNullable(reportes.get(id));
+    }
+
+    private void purgeViejos() {
+        Instant limite = Instant.now().minus(RETENCION);
+        reportes.values().removeIf(r -> {
+            if (!r.createdAt().isBefore(limite)) return false;
+            descartar(r);
+            return true;
+        });
+    }
+}
@@ -1,21 +1,28 @@
 package com.cargosfsr.inventario.services;
 
-import java.sql.Timestamp;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import com.cargosfsr.inventario.auth.CurrentUser;
+import com.cargosfsr.inventario.config.DbSession;
+import com.cargosfsr.inventario.importacion.StatusExternoMatcher;
+import com.cargosfsr.inventario.importacion.TrackingScanner;
+import com.cargosfsr.inventario.model.HoraCostaRicaConverter;
 import com.cargosfsr.inventario.model.Paquete;
 import com.cargosfsr.inventario.model.PaqueteEstadoHistorial;
 import com.cargosfsr.inventario.model.enums.DevolucionSubtipo;
@@ -31,21 +38,33 @@ public class EstadoService {
 
     private final CurrentUser currentUser;
 
-    private static final Pattern TRACKING_PATTERN =
-            Pattern.compile("(HZCR|CR)\\d+", Pattern.CASE_INSENSITIVE);
-
     private final PaqueteRepository paquetes;
     private final PaqueteEstadoHistorialRepository historial;
+    private final StatusExternoReglas statusReglas;
+    private final JdbcTemplate jdbc;   // bulk por conjuntos (misma transacción que JPA)
+    private final DbSession dbSession;
+    private final StatusExternoTransiciones transiciones;   // estado/subtipo según las reglas
+
+    // trackings/ids por IN y filas de historial por INSERT multi-fila
+    private static final int IN_MAX = 800;
+    private static final int HISTORIAL_POR_INSERT = 500;
 
     @PersistenceContext
     private EntityManager em;
 
     public EstadoService(PaqueteRepository paquetes,
                          PaqueteEstadoHistorialRepository historial,
-                         CurrentUser currentUser) {
+                         CurrentUser currentUser,
+                         StatusExternoReglas statusReglas,
+                         JdbcTemplate jdbc,
+                         DbSession dbSession) {
         this.currentUser = currentUser;
         this.paquetes = paquetes;
         this.historial = historial;
+        this.statusReglas = statusReglas;
+        this.jdbc = jdbc;
+        this.dbSession = dbSession;
+        this.transiciones = new StatusExternoTransiciones(jdbc);
     }
 
     private String actor(String changedByNullable) {
@@ -53,21 +72,10 @@ public class EstadoService {
         return currentUser.display();
     }
 
-    /** Inicializa la sesión SQL con TZ CR y el usuario para triggers/SPs */
-    private void initDbSession(String who) {
-        em.createNativeQuery("SET time_zone = '-06:00'").executeUpdate();
-        em.createNativeQuery("SET @changed_by := :who")
-          .setParameter("who", who)
-          .executeUpdate();
-    }
-
     public List<String> extraerTrackingsDesdeTexto(String raw) {
         List<String> out = new ArrayList<>();
         if (!StringUtils.hasText(raw)) return out;
-        Matcher m = TRACKING_PATTERN.matcher(raw);
-        LinkedHashSet<String> uniq = new LinkedHashSet<>();
-        while (m.find()) uniq.add(m.group().toUpperCase());
-        out.addAll(uniq);
+        out.addAll(TrackingScanner.findAllHzcr(raw));
         return out;
     }
 
@@ -83,7 +91,7 @@ public class EstadoService {
                                                            String devolucionSubtipoOpt) {
         if (!StringUtils.hasText(tracking)) throw new IllegalArgumentException("Tracking requerido");
         String t = tracking.trim().toUpperCase();
-        if (!TRACKING_PATTERN.matcher(t).matches())
+        if (!TrackingScanner.isHzcr(t))
             throw new IllegalArgumentException("Formato de tracking inválido (HZCR/CR + dígitos)");
 
         Paquete p = paquetes.findByTrackingCode(t).orElseThrow(
@@ -91,14 +99,11 @@ public class EstadoService {
         );
 
         String user = actor(changedByIgnored);
-        initDbSession(user);
+        dbSession.actor(user);
 
         PaqueteEstado anterior = p.getEstado();
         Instant ts = (when != null ? when : Instant.now());
 
-        boolean touchedDelivered = false;
-        boolean touchedReturned  = false;
-
         DevolucionSubtipo sub = null;
         if (devolucionSubtipoOpt != null && !devolucionSubtipoOpt.isBlank()) {
             sub = DevolucionSubtipo.valueOf(devolucionSubtipoOpt.trim().toUpperCase());
@@ -108,17 +113,14 @@ public class EstadoService {
         if (nuevo == PaqueteEstado.ENTREGADO_A_TRANSPORTISTA_LOCAL
                 || nuevo == PaqueteEstado.ENTREGADO_A_TRANSPORTISTA_LOCAL_2DO_INTENTO) {
             p.setDeliveredAt(ts);
-            touchedDelivered = true;
         } else if (nuevo == PaqueteEstado.NO_ENTREGABLE) {
             p.setReturnedAt(ts);
-            touchedReturned = true;
             p.setDevolucionSubtipo(sub != null ? sub : DevolucionSubtipo.FUERA_DE_RUTA);
         } else if (nuevo == PaqueteEstado.NO_ENTREGADO_CONSIGNATARIO_DISPONIBLE && force) {
             // reset a "disponible": limpia entregas/devoluciones
             if (p.getDeliveredAt() != null || p.getReturnedAt() != null) {
                 p.setDeliveredAt(null);
                 p.setReturnedAt(null);
-                // no marcamos touched* porque es nullear; se hace con save + update directo aparte
             }
         }
 
@@ -139,34 +141,12 @@ public class EstadoService {
             return out;
         }
 
+        // un solo UPDATE: las fechas (delivered/returned/last_state_change) van en hora CR por HoraCostaRicaConverter
         p.setEstado(nuevo);
         p.setLastStateChangeAt(ts);
+        p.setCambioEnSistemaPor(user);
         paquetes.save(p);
 
-        // Ajuste -6h hecho por MySQL + último cambio por
-        StringBuilder sql = new StringBuilder(
-            "UPDATE paquetes SET " +
-            "last_state_change_at = DATE_SUB(:ts, INTERVAL 6 HOUR), " +
-            "cambio_en_sistema_por = :who"
-        );
-
-        // timestamps de estado
-        if (touchedDelivered) sql.append(", delivered_at = DATE_SUB(:ts, INTERVAL 6 HOUR)");
-        if (touchedReturned)  sql.append(", returned_at  = DATE_SUB(:ts, INTERVAL 6 HOUR)");
-
-        // reset forzado (limpiar)
-        if (nuevo == PaqueteEstado.NO_ENTREGADO_CONSIGNATARIO_DISPONIBLE && force) {
-            sql.append(", delivered_at = NULL, returned_at = NULL");
-        }
-
-        sql.append(" WHERE id = :id");
-
-        em.createNativeQuery(sql.toString())
-          .setParameter("ts", Timestamp.from(ts))
-          .setParameter("who", user)
-          .setParameter("id", p.getId())
-          .executeUpdate();
-
         PaqueteEstadoHistorial h = new PaqueteEstadoHistorial();
         h.setPaquete(p);
         h.setEstadoFrom(anterior);
@@ -176,13 +156,6 @@ public class EstadoService {
         h.setChangedBy(user);
         historial.save(h);
 
-        em.createNativeQuery("""
-            UPDATE paquete_estado_historial
-               SET changed_at = DATE_SUB(changed_at, INTERVAL 6 HOUR)
-             WHERE id = :id
-        """).setParameter("id", h.getId())
-          .executeUpdate();
-
         Map<String, Object> out = new LinkedHashMap<>();
         out.put("tracking", t);
         out.put("estado_anterior", anterior != null ? anterior.name() : null);
@@ -221,36 +194,150 @@ public class EstadoService {
         if (trackings == null || trackings.isEmpty())
             throw new IllegalArgumentException("Lista de trackings vacía");
 
+        String user = actor(changedByIgnored);
+        Instant ts = (when != null ? when : Instant.now());
+        boolean reset = (nuevo == PaqueteEstado.NO_ENTREGADO_CONSIGNATARIO_DISPONIBLE && force);
+
+        String errorSubtipo = null;
+        DevolucionSubtipo sub = null;
+        try {
+            if (devolucionSubtipoOpt != null && !devolucionSubtipoOpt.isBlank()) {
+                sub = DevolucionSubtipo.valueOf(devolucionSubtipoOpt.trim().toUpperCase());
+            }
+        } catch (IllegalArgumentException ex) {
+            errorSubtipo = ex.getMessage();   // como antes: falla cada tracking que sí existe
+        }
+
+        // tracking -> (id, estado) con un SELECT por trozo; FOR UPDATE para que nadie cambie el estado en medio
+        List<String> validos = trackings.stream()
+                .filter(StringUtils::hasText)
+                .map(t -> t.trim().toUpperCase())
+                .filter(TrackingScanner::isHzcr)
+                .distinct()
+                .toList();
+        Map<String, Long> ids = new HashMap<>();
+        Map<Long, PaqueteEstado> estados = new HashMap<>();
+        for (int i = 0; i < validos.size(); i += IN_MAX) {
+            List<String> slice = validos.subList(i, Math.min(i + IN_MAX, validos.size()));
+            jdbc.query("SELECT id, tracking_code, estado FROM paquetes WHERE tracking_code IN (" +
+                       slice.stream().map(x -> "?").collect(Collectors.joining(",")) + ") FOR UPDATE",
+                rs -> {
+                    long id = rs.getLong("id");
+                    ids.put(rs.getString("tracking_code").toUpperCase(), id);
+                    String e = rs.getString("estado");
+                    estados.put(id, e == null ? null : PaqueteEstado.valueOf(e));
+                },
+                slice.toArray());
+        }
+
+        // validación y transiciones en memoria, en el orden de la lista (un repetido ya ve el estado nuevo)
         int ok = 0, fail = 0;
         List<Map<String,Object>> items = new ArrayList<>();
+        Set<Long> cambiados = new LinkedHashSet<>();
+        List<Object[]> hist = new ArrayList<>();
         for (String t : trackings) {
-            try {
-                Map<String, Object> r = actualizarEstadoPorTracking(t, nuevo, motivo, changedByIgnored, force, when, devolucionSubtipoOpt);
-                Map<String, Object> row = new LinkedHashMap<>();
-                row.put("tracking", t.toUpperCase());
-                row.put("ok", true);
-                row.put("nuevoEstado", nuevo.name());
-                row.put("changed", r.get("changed"));
-                items.add(row);
-                ok++;
-            } catch (Exception ex) {
-                Map<String, Object> row = new LinkedHashMap<>();
+            String error = null;
+            Long id = null;
+            if (!StringUtils.hasText(t)) {
+                error = "Tracking requerido";
+            } else if (!TrackingScanner.isHzcr(t.trim().toUpperCase())) {
+                error = "Formato de tracking inválido (HZCR/CR + dígitos)";
+            } else if ((id = ids.get(t.trim().toUpperCase())) == null) {
+                error = "No existe paquete con tracking: " + t.trim().toUpperCase();
+            } else if (errorSubtipo != null) {
+                error = errorSubtipo;
+            }
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            if (error != null) {
                 row.put("tracking", t);
                 row.put("ok", false);
-                row.put("error", ex.getMessage());
+                row.put("error", error);
                 items.add(row);
                 fail++;
+                continue;
+            }
+
+            PaqueteEstado anterior = estados.get(id);
+            boolean changed = (anterior != nuevo) || reset;
+            if (changed) {
+                cambiados.add(id);
+                estados.put(id, nuevo);
+                hist.add(new Object[] { id, anterior != null ? anterior.name() : null, nuevo.name() });
             }
+            row.put("tracking", t.toUpperCase());
+            row.put("ok", true);
+            row.put("nuevoEstado", nuevo.name());
+            row.put("changed", changed);
+            items.add(row);
+            ok++;
         }
+
+        if (!cambiados.isEmpty()) {
+            dbSession.actor(user);
+            escribirTransiciones(new ArrayList<>(cambiados), hist, nuevo, reset, sub, motivo, user, ts);
+        }
+
         Map<String, Object> out = new LinkedHashMap<>();
         out.put("total", trackings.size());
         out.put("ok", ok);
         out.put("fail", fail);
         out.put("items", items);
-        out.put("changed_by", actor(changedByIgnored));
+        out.put("changed_by", user);
         return out;
     }
 
+    /**
+     * Escribe las transiciones del bulk: un UPDATE paquetes por trozo de ids (todos quedan con los
+     * mismos valores) y el historial con INSERT multi-fila. Mismos campos que
+     * actualizarEstadoPorTracking; la hora va en hora CR, igual que HoraCostaRicaConverter.
+     */
+    private void escribirTransiciones(List<Long> ids, List<Object[]> hist, PaqueteEstado nuevo, boolean reset,
+                                      DevolucionSubtipo sub, String motivo, String user, Instant ts) {
+        LocalDateTime at = LocalDateTime.ofInstant(ts, HoraCostaRicaConverter.ZONA);
+
+        StringBuilder set = new StringBuilder(
+            "UPDATE paquetes SET estado = ?, " +
+            "last_state_change_at = ?, " +
+            "cambio_en_sistema_por = ?");
+        List<Object> base = new ArrayList<>(List.of(nuevo.name(), at, user));
+        if (nuevo == PaqueteEstado.ENTREGADO_A_TRANSPORTISTA_LOCAL
+                || nuevo == PaqueteEstado.ENTREGADO_A_TRANSPORTISTA_LOCAL_2DO_INTENTO) {
+            set.append(", delivered_at = ?");
+            base.add(at);
+        } else if (nuevo == PaqueteEstado.NO_ENTREGABLE) {
+            set.append(", returned_at = ?, devolucion_subtipo = ?");
+            base.add(at);
+            base.add((sub != null ? sub : DevolucionSubtipo.FUERA_DE_RUTA).name());
+        } else if (reset) {
+            set.append(", delivered_at = NULL, returned_at = NULL");
+        }
+        for (int i = 0; i < ids.size(); i += IN_MAX) {
+            List<Long> slice = ids.subList(i, Math.min(i + IN_MAX, ids.size()));
+            List<Object> args = new ArrayList<>(base);
+            args.addAll(slice);
+            jdbc.update(set + " WHERE id IN (" + slice.stream().map(x -> "?").collect(Collectors.joining(",")) + ")",
+                    args.toArray());
+        }
+
+        for (int i = 0; i < hist.size(); i += HISTORIAL_POR_INSERT) {
+            List<Object[]> slice = hist.subList(i, Math.min(i + HISTORIAL_POR_INSERT, hist.size()));
+            List<Object> args = new ArrayList<>(slice.size() * 6);
+            for (Object[] h : slice) {
+                args.add(h[0]);
+                args.add(h[1]);
+                args.add(h[2]);
+                args.add(at);
+                args.add(motivo);
+                args.add(user);
+            }
+            jdbc.update(
+                "INSERT INTO paquete_estado_historial(paquete_id, estado_from, estado_to, changed_at, motivo, changed_by) VALUES " +
+                slice.stream().map(x -> "(?, ?, ?, ?, ?, ?)").collect(Collectors.joining(",")),
+                args.toArray());
+        }
+    }
+
     // ================== STATUS EXTERNO (SP ya existe en tu schema nuevo) ==================
     @Transactional
     @CacheEvict(cacheNames = { "inventario", "busquedas" }, allEntries = true)
@@ -260,22 +347,25 @@ public class EstadoService {
                                                     String changedByIgnored) {
         if (!StringUtils.hasText(tracking)) throw new IllegalArgumentException("Tracking requerido");
         String t = tracking.trim().toUpperCase();
-        if (!TRACKING_PATTERN.matcher(t).matches())
+        if (!TrackingScanner.isHzcr(t))
             throw new IllegalArgumentException("Formato de tracking inválido (HZCR/CR + dígitos)");
         if (!StringUtils.hasText(statusExterno)) throw new IllegalArgumentException("status externo requerido");
 
         String user = actor(changedByIgnored);
-        initDbSession(user);
+        dbSession.actor(user);
 
         Instant when = (statusAt != null ? statusAt : Instant.now());
-        em.createNativeQuery("CALL sp_aplicar_status_externo(?, ?, ?, ?)")
-          .setParameter(1, t)
-          .setParameter(2, statusExterno)
-          .setParameter(3, Timestamp.from(when)) // el SP aplica la resta interna
-          .setParameter(4, user)
-          .executeUpdate();
+        // el SP espera UTC y aplica la resta interna; por JdbcTemplate el LocalDateTime va tal cual
+        // (setObject), sin depender de hibernate.jdbc.time_zone ni de la zona de la JVM
+        jdbc.update("CALL sp_aplicar_status_externo(?, ?, ?, ?)",
+                t, statusExterno, LocalDateTime.ofInstant(when, ZoneOffset.UTC), user);
+
+        // el estado/subtipo lo decide la regla (misma clasificación que el import de tracks)
+        StatusExternoMatcher.Clasificacion c = statusReglas.clasificar(statusExterno);
+        transiciones.aplicar(List.of(new StatusExternoTransiciones.Fila(t, c,
+                LocalDateTime.ofInstant(when, HoraCostaRicaConverter.ZONA))), user);
 
-        // refrescar paquete (estado pudo cambiar por SP)
+        // refrescar paquete (estado pudo cambiar por SP o por la regla)
         Paquete p = paquetes.findByTrackingCode(t).orElseThrow();
         em.createNativeQuery("UPDATE paquetes SET cambio_en_sistema_por = :who WHERE id = :id")
           .setParameter("who", user)
@@ -287,6 +377,7 @@ public class EstadoService {
         out.put("estado", p.getEstado().name());
         out.put("status_externo", statusExterno);
         out.put("status_externo_at", when);
+        out.put("clasificacion", c.clase().name());
         return out;
     }
 
@@ -320,6 +411,7 @@ public class EstadoService {
                 row.put("tracking", t.toUpperCase());
                 row.put("ok", true);
                 row.put("estado", r.get("estado"));
+                row.put("clasificacion", r.get("clasificacion"));
                 row.put("status_externo", statusExterno);
                 items.add(row);
                 ok++;
@@ -0,0 +1,180 @@
+package com.cargosfsr.inventario.services;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.cargosfsr.inventario.config.DbSession;
+
+/**
+ * Linaje de los imports del consolidado (tablas import_batches / import_batch_antes, ver ImportSchema).
+ *
+ * Antes de escribir, cada import guarda por paquete existente lo que va a pisar (saco, distrito,
+ * received_at, observaciones, responsable) y al terminar cómo quedaron saco, distrito y
+ * received_at. Revertir restaura todo con un solo UPDATE ... JOIN, pero solo en los paquetes que
+ * siguen como los dejó ese import: si después alguien los re-ensacó, se respetan.
+ *
+ * Los paquetes que el import creó no tienen imagen previa y no se tocan al revertir.
+ * Las imágenes se borran pasados {@code import.batches.retencion-dias}.
+ */
+@Service
+public class ImportBatchService {
+
+    private static final int IN_MAX = 800;
+
+    private final JdbcTemplate jdbc;
+    private final DbSession dbSession;
+    private final int retencionDias;
+
+    public ImportBatchService(JdbcTemplate jdbc, DbSession dbSession,
+                              @Value("${import.batches.retencion-dias:30}") int retencionDias) {
+        this.jdbc = jdbc;
+        this.dbSession = dbSession;
+        this.retencionDias = retencionDias;
+    }
+
+    /** Registra un import nuevo (dentro de la transacción del import: si falla, no queda) */
+    public Lote abrir(String tipo, String actor) {
+        purgarViejos();
+        KeyHolder kh = new GeneratedKeyHolder();
+        jdbc.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "INSERT INTO import_batches(tipo, actor) VALUES (?, ?)", Statement.RETURN_GENERATED_KEYS);
+            ps.setString(1, tipo);
+            ps.setString(2, actor);
+            return ps;
+        }, kh);
+        return new Lote(kh.getKey().longValue());
+    }
+
+    /** Un import ya registrado que sigue después de un reinicio (ver ImportCheckpointService) */
+    Lote reabrir(long id) {
+        return new Lote(id);
+    }
+
+    /** Un import en curso */
+    public final class Lote {
+        private final long id;
+
+        private Lote(long id) {
+            this.id = id;
+        }
+
+        public long id() {
+            return id;
+        }
+
+        /**
+         * Imagen previa de los paquetes cuyos trackings están en {@code tabla} (columna tracking_code).
+         * Si un paquete ya tiene imagen en este import, se conserva la primera.
+         */
+        void guardarAntes(String tabla) {
+            jdbc.update(
+                "INSERT IGNORE INTO import_batch_antes(batch_id, paquete_id, saco_id, distrito_id, received_at, " +
+                "                                      observaciones, responsable_consolidado) " +
+                "SELECT ?, p.id, p.saco_id, p.distrito_id, p.received_at, p.observaciones, p.responsable_consolidado " +
+                "  FROM paquetes p JOIN " + tabla + " t ON t.tracking_code = p.tracking_code",
+                id);
+        }
+
+        /** Igual que {@link #guardarAntes(String)} para una lista de trackings (en trozos de IN) */
+        void guardarAntes(Collection<String> trackings) {
+            List<String> list = new ArrayList<>(trackings);
+            for (int i = 0; i < list.size(); i += IN_MAX) {
+                List<String> slice = list.subList(i, Math.min(i + IN_MAX, list.size()));
+                List<Object> args = new ArrayList<>(slice.size() + 1);
+                args.add(id);
+                args.addAll(slice);
+                jdbc.update(
+                    "INSERT IGNORE INTO import_batch_antes(batch_id, paquete_id, saco_id, distrito_id, received_at, " +
+                    "                                      observaciones, responsable_consolidado) " +
+                    "SELECT ?, p.id, p.saco_id, p.distrito_id, p.received_at, p.observaciones, p.responsable_consolidado " +
+                    "  FROM paquetes p WHERE p.tracking_code IN (" +
+                    slice.stream().map(x -> "?").collect(Collectors.joining(",")) + ")",
+                    args.toArray());
+            }
+        }
+
+        /** Guarda cómo quedaron los paquetes (para revertir solo los que nadie tocó después) */
+        void cerrar() {
+            jdbc.update(
+                "UPDATE import_batch_antes a JOIN paquetes p ON p.id = a.paquete_id " +
+                "   SET a.saco_despues = p.saco_id, a.distrito_despues = p.distrito_id, a.received_despues = p.received_at " +
+                " WHERE a.batch_id = ?",
+                id);
+            jdbc.update(
+                "UPDATE import_batches SET paquetes = (SELECT COUNT(*) FROM import_batch_antes WHERE batch_id = ?) WHERE id = ?",
+                id, id);
+        }
+    }
+
+    public List<Map<String, Object>> listar(int limite) {
+        return jdbc.queryForList(
+            "SELECT id, tipo, actor, creado_en, paquetes, revertido_en, revertido_por " +
+            "  FROM import_batches ORDER BY id DESC LIMIT ?",
+            Math.max(1, Math.min(limite, 500)));
+    }
+
+    /**
+     * Restaura los paquetes del import a su imagen previa, en una pasada.
+     * Los que cambiaron después del import (saco, distrito o received_at distintos de lo que dejó)
+     * se cuentan en con_cambios_posteriores y no se tocan.
+     */
+    @Transactional
+    @CacheEvict(cacheNames = { "inventario", "busquedas" }, allEntries = true)
+    public Map<String, Object> revertir(long id, String actor) {
+        int marcado = jdbc.update(
+            "UPDATE import_batches SET revertido_en = NOW(), revertido_por = ? " +
+            " WHERE id = ? AND revertido_en IS NULL AND paquetes IS NOT NULL",
+            actor, id);
+        if (marcado == 0) {
+            throw new IllegalArgumentException("El import " + id + " no existe, no terminó o ya fue revertido");
+        }
+        Integer total = jdbc.queryForObject("SELECT COUNT(*) FROM import_batch_antes WHERE batch_id = ?", Integer.class, id);
+
+        dbSession.actor(actor);
+        int restaurados = jdbc.update(
+            "UPDATE paquetes p JOIN import_batch_antes a ON a.paquete_id = p.id AND a.batch_id = ? " +
+            "   SET p.saco_id = a.saco_id, p.distrito_id = a.distrito_id, p.received_at = a.received_at, " +
+            "       p.observaciones = a.observaciones, p.responsable_consolidado = a.responsable_consolidado, " +
+            "       p.cambio_en_sistema_por = ? " +
+            " WHERE p.saco_id <=> a.saco_despues AND p.distrito_id <=> a.distrito_despues " +
+            "   AND p.received_at <=> a.received_despues",
+            id, actor);
+
+        // sin huella, el próximo import delta vuelve a aplicar estos trackings
+        jdbc.update(
+            "DELETE h FROM consolidado_huellas h " +
+            "  JOIN paquetes p ON p.tracking_code = h.tracking_code " +
+            "  JOIN import_batch_antes a ON a.paquete_id = p.id AND a.batch_id = ?",
+            id);
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("import_batch", id);
+        out.put("restaurados", restaurados);
+        out.put("con_cambios_posteriores", (total == null ? 0 : total) - restaurados);
+        out.put("actor", actor);
+        return out;
+    }
+
+    private void purgarViejos() {
+        jdbc.update(
+            "DELETE a FROM import_batch_antes a JOIN import_batches b ON b.id = a.batch_id " +
+            " WHERE b.creado_en < NOW() - INTERVAL ? DAY",
+            retencionDias);
+        jdbc.update("DELETE FROM import_batches WHERE creado_en < NOW() - INTERVAL ? DAY", retencionDias);
+    }
+}
@@ -0,0 +1,130 @@
+package com.cargosfsr.inventario.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+/**
+ * Checkpoints de los imports por tramos (tabla import_checkpoints, ver ImportSchema).
+ *
+ * Los imports de consolidado y tracks ya confirman cada {@code import.tramos.filas} filas (ver
+ * ImportService); con {@code import.checkpoint.dir} configurado además cada tramo guarda en su
+ * misma transacción cuántas filas del archivo quedaron aplicadas. El archivo se mueve a esa
+ * carpeta (debe sobrevivir al redeploy) y se conserva hasta terminar; si la app se cae o se
+ * redespliega a mitad, al arrancar el import se reanuda como job desde la última fila confirmada
+ * (ver ImportJobService).
+ *
+ * Un import que se cae {@link #MAX_INTENTOS} veces seguidas queda FALLIDO y no se reanuda más.
+ */
+@Service
+public class ImportCheckpointService {
+
+    public static final int MAX_INTENTOS = 3;
+
+    /** Un import por tramos; {@code filas} = filas del archivo ya confirmadas */
+    public record Checkpoint(String id, String tipo, String archivo, Path ruta, String actor,
+                             long filas, Long importBatch) {
+        Checkpoint conLote(long lote) {
+            return new Checkpoint(id, tipo, archivo, ruta, actor, filas, lote);
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+    private final Path dir;   // null = tramos sin checkpoint (no se reanudan)
+
+    public ImportCheckpointService(JdbcTemplate jdbc,
+                                   @Value("${import.tramos.filas:5000}") int filasPorTramo,
+                                   @Value("${import.checkpoint.dir:}") String dir) throws IOException {
+        this.jdbc = jdbc;
+        // sin tramos no hay nada que reanudar; una carpeta temporal no sobrevive al redeploy, por
+        // eso no hay carpeta por defecto
+        this.dir = (filasPorTramo > 0 && StringUtils.hasText(dir)) ? Paths.get(dir) : null;
+        if (this.dir != null) Files.createDirectories(this.dir);
+    }
+
+    public boolean activo() {
+        return dir != null;
+    }
+
+    /** Registra un import nuevo y se queda con su archivo (lo mueve a la carpeta de checkpoints) */
+    public Checkpoint abrir(String id, String tipo, String archivo, String actor, Path file) throws IOException {
+        String nombre = file.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        Path ruta = dir.resolve(id + (punto >= 0 ? nombre.substring(punto) : ""));
+        Files.move(file, ruta, StandardCopyOption.REPLACE_EXISTING);
+        try {
+            jdbc.update("INSERT INTO import_checkpoints(id, tipo, archivo, ruta, actor) VALUES (?, ?, ?, ?, ?)",
+                    id, tipo, clip(archivo, 255), ruta.toString(), actor);
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(ruta);
+            throw e;
+        }
+        return new Checkpoint(id, tipo, archivo, ruta, actor, 0, null);
+    }
+
+    /** Filas confirmadas hasta ahora (llamar dentro de la transacción del tramo) */
+    void avanzar(Checkpoint cp, long filas) {
+        jdbc.update("UPDATE import_checkpoints SET filas_aplicadas = ? WHERE id = ?", filas, cp.id());
+    }
+
+    /** Lote de linaje del import (ver ImportBatchService), para seguir con el mismo al reanudar */
+    Checkpoint lote(Checkpoint cp, long lote) {
+        jdbc.update("UPDATE import_checkpoints SET import_batch = ? WHERE id = ?", lote, cp.id());
+        return cp.conLote(lote);
+    }
+
+    public void terminar(Checkpoint cp) {
+        cerrar(cp, "TERMINADO", null);
+    }
+
+    public void fallar(Checkpoint cp, String error) {
+        cerrar(cp, "FALLIDO", error);
+    }
+
+    /**
+     * Imports que quedaron a medias (la app se cayó con ellos EN_CURSO), con un intento más
+     * anotado. Los que ya agotaron los intentos o perdieron su archivo pasan a FALLIDO.
+     */
+    public List<Checkpoint> reanudables() {
+        if (!activo()) return List.of();
+        jdbc.update(
+            "UPDATE import_checkpoints SET estado = 'FALLIDO', error = 'Se interrumpió demasiadas veces' " +
+            " WHERE estado = 'EN_CURSO' AND intentos >= ?",
+            MAX_INTENTOS);
+        List<Checkpoint> out = jdbc.query(
+            "SELECT id, tipo, archivo, ruta, actor, filas_aplicadas, import_batch " +
+            "  FROM import_checkpoints WHERE estado = 'EN_CURSO' ORDER BY creado_en",
+            (rs, i) -> new Checkpoint(rs.getString("id"), rs.getString("tipo"), rs.getString("archivo"),
+                    Paths.get(rs.getString("ruta")), rs.getString("actor"), rs.getLong("filas_aplicadas"),
+                    rs.getObject("import_batch", Long.class)));
+        return out.stream().filter(cp -> {
+            if (!Files.isRegularFile(cp.ruta())) {
+                fallar(cp, "El archivo del import ya no está en " + dir);
+                return false;
+            }
+            jdbc.update("UPDATE import_checkpoints SET intentos = intentos + 1 WHERE id = ?", cp.id());
+            return true;
+        }).toList();
+    }
+
+    private void cerrar(Checkpoint cp, String estado, String error) {
+        jdbc.update("UPDATE import_checkpoints SET estado = ?, error = ? WHERE id = ?", estado, clip(error, 500), cp.id());
+        try {
+            Files.deleteIfExists(cp.ruta());
+        } catch (IOException ignore) {
+            // queda huérfano en la carpeta: sin checkpoint EN_CURSO nadie lo vuelve a leer
+        }
+    }
+
+    private static String clip(String s, int max) {
+        return (s == null || s.length() <= max) ? s : s.substring(0, max);
+    }
+}
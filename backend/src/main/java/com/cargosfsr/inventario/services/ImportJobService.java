@@ -0,0 +1,187 @@
+package com.cargosfsr.inventario.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.cargosfsr.inventario.auth.CurrentUser;
+import com.cargosfsr.inventario.importacion.ImportJob;
+
+/**
+ * Imports en segundo plano.
+ *
+ * El POST guarda el archivo en disco, encola el trabajo en un executor acotado y devuelve
+ * el id del job de inmediato; el avance se consulta con {@link #find}. Los jobs viven en
+ * memoria (una sola instancia) y los terminados se descartan después de {@link #RETENCION}.
+ *
+ * Con checkpoints activos (ver ImportCheckpointService) el job guarda el avance de sus tramos y,
+ * si la app se reinicia a mitad, al arrancar se reencola con el mismo id y sigue desde su checkpoint.
+ */
+@Service
+public class ImportJobService {
+
+    public static final String TIPO_CONSOLIDADO = "consolidado";
+    public static final String TIPO_PAQUETES = "paquetes";
+
+    private static final Duration RETENCION = Duration.ofHours(2);
+
+    /** Lo que hace el job con el archivo ya copiado a disco */
+    @FunctionalInterface
+    private interface Trabajo {
+        Map<String, Object> run(Path file, ImportJob job) throws Exception;
+    }
+
+    /** Cola llena: el executor rechazó el job */
+    public static class ColaLlenaException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        public ColaLlenaException(String msg) { super(msg); }
+    }
+
+    private final ImportService importService;
+    private final CurrentUser currentUser;
+    private final Executor executor;
+    private final ImportCheckpointService checkpoints;
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    public ImportJobService(ImportService importService,
+                            CurrentUser currentUser,
+                            @Qualifier("importJobExecutor") Executor executor,
+                            ImportCheckpointService checkpoints) {
+        this.importService = importService;
+        this.currentUser = currentUser;
+        this.executor = executor;
+        this.checkpoints = checkpoints;
+    }
+
+    public ImportJob submitConsolidado(MultipartFile file, boolean delta) throws IOException {
+        return submit(TIPO_CONSOLIDADO, file, ".xlsx", trabajo(TIPO_CONSOLIDADO, delta));
+    }
+
+    public ImportJob submitPaquetes(MultipartFile file) throws IOException {
+        return submit(TIPO_PAQUETES, file, ".csv", trabajo(TIPO_PAQUETES, false));
+    }
+
+    /**
+     * Encola un import sobre un archivo que ya está en disco (p. ej. el spool de una subida
+     * por fragmentos). El job se queda con el archivo y lo borra al terminar; si la cola está
+     * llena el archivo queda intacto para reintentar.
+     */
+    public ImportJob submitArchivo(String tipo, Path file, String archivo, boolean delta) {
+        Trabajo trabajo = trabajo(tipo, delta);
+        purgeFinished();
+        return enqueue(tipo, archivo, file, trabajo);
+    }
+
+    public Optional<ImportJob> find(String id) {
+        if (!StringUtils.hasText(id)) return Optional.empty();
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /** Al arrancar: reencola los imports por tramos que el reinicio dejó a medias */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reanudarPendientes() {
+        for (ImportCheckpointService.Checkpoint cp : checkpoints.reanudables()) {
+            ImportJob job = new ImportJob(cp.id(), cp.tipo(), cp.archivo(), cp.actor());
+            jobs.put(job.id(), job);
+            try {
+                executor.execute(() -> run(job, cp.ruta(), (f, j) -> importService.importarPorTramos(cp, j)));
+            } catch (RejectedExecutionException ex) {
+                // queda EN_CURSO: se reintenta en el próximo arranque
+                jobs.remove(job.id());
+            }
+        }
+    }
+
+    private Trabajo trabajo(String tipo, boolean delta) {
+        if (importService.conCheckpoint(tipo, delta)) {
+            if (!TIPO_CONSOLIDADO.equals(tipo) && !TIPO_PAQUETES.equals(tipo)) {
+                throw new IllegalArgumentException("Tipo de import desconocido: " + tipo);
+            }
+            // el checkpoint lleva el id del job: al reanudar tras un reinicio sigue siendo el mismo job
+            return (f, job) -> importService.importarPorTramos(checkpoints.abrir(job.id(), tipo, job.archivo(), job.actor(), f), job);
+        }
+        return switch (tipo) {
+            case TIPO_CONSOLIDADO -> (f, job) -> importService.importarConsolidado(f, job.actor(), delta, job);
+            case TIPO_PAQUETES -> (f, job) -> importService.importarPaquetesCSV(f, job.actor(), job);
+            default -> throw new IllegalArgumentException("Tipo de import desconocido: " + tipo);
+        };
+    }
+
+    private ImportJob submit(String tipo, MultipartFile file, String suffix, Trabajo trabajo) throws IOException {
+        purgeFinished();
+
+        // El multipart se borra al terminar el request: hay que copiarlo antes de encolar
+        Path tmp = Files.createTempFile("import-job-", suffix);
+        try {
+            file.transferTo(tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        try {
+            return enqueue(tipo, file.getOriginalFilename(), tmp, trabajo);
+        } catch (ColaLlenaException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /** Registra el job y lo encola (el job pasa a ser dueño del archivo) */
+    private ImportJob enqueue(String tipo, String archivo, Path tmp, Trabajo trabajo) {
+        String actor = currentUser.display(); // request-scoped: se resuelve aquí, no en el worker
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), tipo, archivo, actor);
+        jobs.put(job.id(), job);
+
+        try {
+            executor.execute(() -> run(job, tmp, trabajo));
+        } catch (RejectedExecutionException ex) {
+            jobs.remove(job.id());
+            throw new ColaLlenaException("Hay demasiadas importaciones en curso; intente de nuevo en unos minutos");
+        }
+        return job;
+    }
+
+    private void run(ImportJob job, Path file, Trabajo trabajo) {
+        try {
+            job.succeed(trabajo.run(file, job));
+        } catch (Exception ex) {
+            job.fail(rootMessage(ex));
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignore) {
+                // temp del sistema; se limpia solo
+            }
+        }
+    }
+
+    private void purgeFinished() {
+        Instant limite = Instant.now().minus(RETENCION);
+        jobs.values().removeIf(j -> j.isFinished() && j.finishedAt() != null && j.finishedAt().isBefore(limite));
+    }
+
+    private static String rootMessage(Throwable t) {
+        Throwable cur = t;
+        String last = t.getMessage();
+        while (cur.getCause() != null) {
+            cur = cur.getCause();
+            if (StringUtils.hasText(cur.getMessage())) last = cur.getMessage();
+        }
+        return last;
+    }
+}
@@ -0,0 +1,174 @@
+package com.cargosfsr.inventario.services;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * Ritmo de los imports según la carga del momento: los imports por tramos (import.tramos.filas,
+ * ver ImportService) llaman a {@link #pausa()} después de cada commit y, si el sistema está
+ * ocupado, esperan un rato antes del siguiente tramo. Con el sistema tranquilo la pausa es 0 y el
+ * import va a toda velocidad.
+ *
+ * Solo entre tramos ya confirmados: pausar con la transacción abierta retendría la conexión y los
+ * locks justo cuando hay más esperas, así que los imports de una sola transacción
+ * (import.tramos.filas=0, consolidado delta, particiones) no se pausan.
+ *
+ * Señales (leídas a lo sumo una vez por segundo):
+ * <ul>
+ *   <li>hilos esperando conexión en Hikari</li>
+ *   <li>p95 de latencia de los requests interactivos (los últimos, ver {@link #registrar})</li>
+ *   <li>tiempo esperando locks de fila en InnoDB desde la lectura anterior (delta de
+ *       Innodb_row_lock_time, en ms por segundo: sumado entre todas las sesiones)</li>
+ * </ul>
+ * Cada una da una presión de 0 a 1; manda la mayor. La pausa sube de inmediato con la presión y
+ * baja de a poco (media móvil), para no volver a saturar apenas se alivia.
+ */
+@Service
+public class ImportPacer {
+
+    private static final long LECTURA_NS = 1_000_000_000L;
+    private static final long VENTANA_MS = 30_000;      // muestras de latencia más viejas no cuentan
+    private static final int MUESTRAS = 256;
+    private static final int PENDIENTES_MAX = 3;        // hilos esperando conexión = presión 1
+    private static final long LOCK_MS_MAX = 1000;       // ms de espera por lock por segundo = presión 1
+
+    private final JdbcTemplate jdbc;
+    private final DataSource dataSource;
+    private final boolean activo;
+    private final long p95ObjetivoMs;
+    private final long maxPausaMs;
+
+    // latencias interactivas: anillo de (ms, cuándo)
+    private final long[] latencias = new long[MUESTRAS];
+    private final long[] cuando = new long[MUESTRAS];
+    private int siguiente;
+
+    private volatile long leidoEn;
+    private volatile double presion;
+    private volatile Map<String, Object> senales = Map.of();
+    private boolean sinLocks;   // sin permiso para SHOW GLOBAL STATUS: no se vuelve a intentar
+    private long lockMs = -1;   // Innodb_row_lock_time de la lectura anterior (-1 = todavía ninguna)
+    private long lockLeidoEn;
+
+    public ImportPacer(JdbcTemplate jdbc, DataSource dataSource,
+                       @Value("${import.pacing.enabled:true}") boolean activo,
+                       @Value("${import.pacing.p95-objetivo-ms:300}") long p95ObjetivoMs,
+                       @Value("${import.pacing.max-pausa-ms:2000}") long maxPausaMs) {
+        this.jdbc = jdbc;
+        this.dataSource = dataSource;
+        this.activo = activo;
+        this.p95ObjetivoMs = Math.max(1, p95ObjetivoMs);
+        this.maxPausaMs = maxPausaMs;
+    }
+
+    /** Latencia de un request interactivo (ver WebConfig) */
+    public void registrar(long ms) {
+        synchronized (latencias) {
+            latencias[siguiente] = ms;
+            cuando[siguiente] = System.currentTimeMillis();
+            siguiente = (siguiente + 1) % MUESTRAS;
+        }
+    }
+
+    /** Después de confirmar un tramo (nunca con la transacción abierta): espera según la presión actual */
+    public void pausa() {
+        if (!activo || maxPausaMs <= 0) return;
+        if (System.nanoTime() - leidoEn >= LECTURA_NS) leer();
+        long ms = Math.round(presion * maxPausaMs);
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Últimas señales leídas (para diagnóstico) */
+    public Map<String, Object> estado() {
+        Map<String, Object> out = new LinkedHashMap<>(senales);
+        out.put("activo", activo);
+        out.put("pausa_ms", Math.round(presion * maxPausaMs));
+        return out;
+    }
+
+    private synchronized void leer() {
+        if (System.nanoTime() - leidoEn < LECTURA_NS) return;
+        int pendientes = pendientes();
+        long p95 = p95();
+        long locks = esperaDeLocks();
+
+        double p = Math.max(Math.min(1.0, pendientes / (double) PENDIENTES_MAX),
+                   Math.max(Math.min(1.0, Math.max(0, p95 - p95ObjetivoMs) / (double) p95ObjetivoMs),
+                            Math.min(1.0, locks / (double) LOCK_MS_MAX)));
+        presion = (p >= presion) ? p : presion * 0.7 + p * 0.3;
+        if (presion < 0.01) presion = 0;
+
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("hilos_esperando_conexion", pendientes);
+        s.put("p95_interactivo_ms", p95);
+        s.put("espera_locks_ms_por_s", sinLocks ? null : locks);
+        s.put("presion", Math.round(presion * 100) / 100.0);
+        senales = s;
+        leidoEn = System.nanoTime();
+    }
+
+    private int pendientes() {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                HikariPoolMXBean pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+                if (pool != null) return pool.getThreadsAwaitingConnection();
+            }
+        } catch (Exception e) {
+            // sin Hikari no hay señal
+        }
+        return 0;
+    }
+
+    private long p95() {
+        long[] ventana;
+        int n = 0;
+        long desde = System.currentTimeMillis() - VENTANA_MS;
+        synchronized (latencias) {
+            ventana = new long[MUESTRAS];
+            for (int i = 0; i < MUESTRAS; i++) {
+                if (cuando[i] >= desde) ventana[n++] = latencias[i];
+            }
+        }
+        if (n == 0) return 0;
+        Arrays.sort(ventana, 0, n);
+        return ventana[Math.min(n - 1, (int) Math.ceil(n * 0.95) - 1)];
+    }
+
+    /** ms esperando locks de fila por segundo desde la lectura anterior (la primera da 0) */
+    private long esperaDeLocks() {
+        if (sinLocks) return 0;
+        Long total;
+        try {
+            total = jdbc.query("SHOW GLOBAL STATUS LIKE 'Innodb_row_lock_time'",
+                    rs -> rs.next() ? rs.getLong(2) : null);
+        } catch (DataAccessException e) {
+            sinLocks = true;
+            return 0;
+        }
+        if (total == null) return 0;
+        long ahora = System.nanoTime();
+        long antes = lockMs, desde = lockLeidoEn;
+        lockMs = total;
+        lockLeidoEn = ahora;
+        // el contador se reinicia con FLUSH STATUS o al reiniciar MySQL: esa vuelta no cuenta
+        if (antes < 0 || total < antes) return 0;
+        long transcurridoMs = Math.max(1, (ahora - desde) / 1_000_000);
+        return (total - antes) * 1000 / transcurridoMs;
+    }
+}
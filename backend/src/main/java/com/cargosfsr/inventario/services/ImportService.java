@@ -1,44 +1,60 @@
 package com.cargosfsr.inventario.services;
 
-import java.io.StringReader;
+import java.io.IOException;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.math.BigDecimal;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Timestamp;
-import java.text.DecimalFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.ss.usermodel.DateUtil;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.cargosfsr.inventario.auth.CurrentUser;
+import com.cargosfsr.inventario.config.DbSession;
+import com.cargosfsr.inventario.config.ImportConfig;
+import com.cargosfsr.inventario.importacion.CsvSource;
+import com.cargosfsr.inventario.importacion.CsvTokenizer;
+import com.cargosfsr.inventario.importacion.DistritoTrie;
+import com.cargosfsr.inventario.importacion.ErrorReport;
+import com.cargosfsr.inventario.importacion.Fechas;
+import com.cargosfsr.inventario.importacion.ImportPipeline;
+import com.cargosfsr.inventario.importacion.ImportProgress;
+import com.cargosfsr.inventario.importacion.LayoutProfiles;
+import com.cargosfsr.inventario.importacion.StatusExternoMatcher;
+import com.cargosfsr.inventario.importacion.StringIndex;
+import com.cargosfsr.inventario.importacion.TabularSource;
+import com.cargosfsr.inventario.importacion.TrackingScanner;
 
 
 /**
@@ -56,256 +72,408 @@ public class ImportService {
 
     private final JdbcTemplate jdbc;
     private final CurrentUser currentUser; // actor = usuario logueado
-
-    public ImportService(JdbcTemplate jdbc, CurrentUser currentUser) {
+    private final Executor parseExecutor;  // parser del pipeline (ver ImportPipeline)
+    private final boolean consoStaging;    // consolidado vía tabla temporal (ver ConsolidadoStaging)
+    private final StatusExternoReglas statusReglas;
+    private final ErrorReportService reportes;
+    private final ImportBatchService batches;     // linaje del consolidado (revertir)
+    private final DistritoDictionary distritos;
+    private final ImportPacer pacer;       // pausa después de cada tramo confirmado si el sistema está ocupado
+    // charset, separador, columna de tracking y formato de fecha por cabecera ya vista
+    private final LayoutProfiles perfiles = new LayoutProfiles(64);
+    private final int tracksParticiones;   // >1: tracks en paralelo, una transacción por partición
+    private final int filasPorTramo;       // >0: consolidado y tracks confirman cada N filas
+    private final TransactionTemplate tx;  // imports sin tramos: todo en una transacción
+    private final Executor applyExecutor;
+    private final TransactionTemplate particionTx;
+    private final ImportCheckpointService checkpoints;   // tramos reanudables tras un reinicio
+    private final TransactionTemplate tramoTx;
+    private final DbSession dbSession;     // @changed_by por conexión (SET solo si cambia)
+
+    public ImportService(JdbcTemplate jdbc, CurrentUser currentUser,
+                         @Qualifier("importParseExecutor") Executor parseExecutor,
+                         @Value("${import.consolidado.modo:staging}") String consoModo,
+                         StatusExternoReglas statusReglas,
+                         @Value("${import.tracks.particiones:1}") int tracksParticiones,
+                         @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolConexiones,
+                         @Value("${import.tramos.filas:5000}") int filasPorTramo,
+                         @Qualifier("importApplyExecutor") Executor applyExecutor,
+                         PlatformTransactionManager txManager,
+                         ErrorReportService reportes,
+                         ImportBatchService batches,
+                         DistritoDictionary distritos,
+                         ImportPacer pacer,
+                         ImportCheckpointService checkpoints,
+                         DbSession dbSession) {
         this.jdbc = jdbc;
         this.currentUser = currentUser;
+        this.parseExecutor = parseExecutor;
+        this.statusReglas = statusReglas;
+        this.reportes = reportes;
+        this.batches = batches;
+        this.distritos = distritos;
+        this.pacer = pacer;
+        this.tracksParticiones = ImportConfig.particionesTracks(tracksParticiones, poolConexiones);
+        this.filasPorTramo = Math.max(0, filasPorTramo);
+        this.tx = new TransactionTemplate(txManager);
+        this.applyExecutor = applyExecutor;
+        this.particionTx = new TransactionTemplate(txManager);
+        this.particionTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.checkpoints = checkpoints;
+        this.tramoTx = new TransactionTemplate(txManager);
+        this.tramoTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.dbSession = dbSession;
+        this.consoStaging = !"lotes".equalsIgnoreCase(consoModo.trim());
     }
 
-    // ==========================
-    // Distritos conocidos + "PENDIENTE"
-    // ==========================
-    private static final String DISTRITO_PENDIENTE = "PENDIENTE";
-
-    private static final Map<String, String> DISTRITO_CANON = Map.of(
-        "la colonia", "La colonia",
-        "jimenez", "Jimenez",
-        "colorado", "Colorado",
-        "la rita", "La Rita",
-        "roxana", "Roxana",
-        "pendiente", "PENDIENTE"
-    );
-
-    private static String canonDistrito(String raw) {
-        if (raw == null) return null;
-        String t = raw.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
-
-        // soporta "Distrito: Roxana" / "ROXANA" / etc.
-        if (t.contains("la colonia")) return "La colonia";
-        if (t.contains("jimenez")) return "Jimenez";
-        if (t.contains("colorado")) return "Colorado";
-        if (t.contains("la rita")) return "La Rita";
-        if (t.contains("roxana")) return "Roxana";
-        if (t.contains("pendiente")) return "PENDIENTE";
+    // Lotes del pipeline del consolidado: filas por lote y lotes en cola (back-pressure)
+    private static final int CONSO_BATCH = 1000;
+    private static final int CONSO_QUEUE = 4;
 
-        return DISTRITO_CANON.get(t); // exact match fallback
-    }
+    // Distrito placeholder (los demás salen de DistritoDictionary)
+    private static final String DISTRITO_PENDIENTE = "PENDIENTE";
+    private static final String HOJA_CONSOLIDADO = "CONSOLIDADO OFICIAL";
 
     // =====================================================================
     // 1) CONSOLIDADO (XLSX) – autodetecta columnas tipo:
     //    (Fecha, Marchamo, Distrito, Tracking, Responsable, Observaciones).
+    //    Sin @Transactional: por tramos confirmados (import.tramos.filas > 0, salvo el delta);
+    //    si no, en una sola transacción (enTransaccion).
     // =====================================================================
-    @Transactional
     @CacheEvict(cacheNames = { "inventario", "busquedas" }, allEntries = true)
-    public Map<String, Object> importarConsolidadoXLSX(MultipartFile file) throws Exception {
-        long t0 = System.currentTimeMillis();
+    public Map<String, Object> importarConsolidadoXLSX(MultipartFile file, boolean delta) throws Exception {
+        Path tmp = spool(file, ".xlsx");
+        try {
+            return importarConsolidado(tmp, file.getOriginalFilename(), currentUser.display(), delta, ImportProgress.NONE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
 
-        List<ConsoRow> rows = new ArrayList<>(4096);
+    /**
+     * Import del consolidado desde un archivo ya guardado en disco.
+     * El actor va explícito porque los jobs en segundo plano no tienen request (ni CurrentUser).
+     *
+     * @param delta solo aplica los trackings cuya huella cambió desde el último import
+     *              (siempre usa la tabla staging, aunque el modo configurado sea "lotes")
+     */
+    @CacheEvict(cacheNames = { "inventario", "busquedas" }, allEntries = true)
+    public Map<String, Object> importarConsolidado(Path xlsx, String actor, boolean delta, ImportProgress progress) throws Exception {
+        return importarConsolidado(xlsx, xlsx.getFileName().toString(), actor, delta, progress);
+    }
 
-        try (var is = file.getInputStream(); Workbook wb = WorkbookFactory.create(is)) {
-            Sheet sh = wb.getSheet("CONSOLIDADO OFICIAL");
-            if (sh == null) sh = wb.getSheetAt(0);
+    private Map<String, Object> importarConsolidado(Path xlsx, String archivo, String actor, boolean delta,
+                                                    ImportProgress progress) throws Exception {
+        if (conCheckpoint(ImportJobService.TIPO_CONSOLIDADO, delta)) {
+            return importarPorTramos(checkpoints.abrir(UUID.randomUUID().toString(),
+                    ImportJobService.TIPO_CONSOLIDADO, archivo, actor, xlsx), progress);
+        }
+        if (porTramos(ImportJobService.TIPO_CONSOLIDADO, delta)) {
+            return importarConsolidadoPorTramos(xlsx, actor, null, progress);
+        }
+        return enTransaccion(() -> importarConsolidadoEnUnaTransaccion(xlsx, actor, delta, progress));
+    }
 
-            Map<String, Integer> hIndex = new HashMap<>();
-            Row header = sh.getRow(sh.getFirstRowNum());
-            if (header != null) {
-                for (int c = header.getFirstCellNum(); c < header.getLastCellNum(); c++) {
-                    String name = getString(header.getCell(c));
-                    if (name != null) {
-                        hIndex.put(name.trim().toUpperCase(Locale.ROOT), c);
-                    }
+    /** ¿Confirma cada {@code import.tramos.filas} filas? (el consolidado delta va siempre en una transacción) */
+    private boolean porTramos(String tipo, boolean delta) {
+        return filasPorTramo > 0 && !(delta && ImportJobService.TIPO_CONSOLIDADO.equals(tipo));
+    }
+
+    /** ¿Va por tramos y además guarda el avance para reanudar? ({@code import.checkpoint.dir} configurado) */
+    public boolean conCheckpoint(String tipo, boolean delta) {
+        return porTramos(tipo, delta) && checkpoints.activo();
+    }
+
+    /**
+     * Import por tramos de un checkpoint ya registrado (nuevo o que quedó a medias): el
+     * checkpoint queda EN_CURSO mientras corre (y si la app se cae), TERMINADO o FALLIDO al final.
+     */
+    @CacheEvict(cacheNames = { "inventario", "busquedas" }, allEntries = true)
+    public Map<String, Object> importarPorTramos(ImportCheckpointService.Checkpoint cp, ImportProgress progress) throws Exception {
+        try {
+            Map<String, Object> out = ImportJobService.TIPO_CONSOLIDADO.equals(cp.tipo())
+                    ? importarConsolidadoPorTramos(cp.ruta(), cp.actor(), cp, progress)
+                    : importarPaquetesCSV(cp.ruta(), cp.actor(), progress, cp);
+            checkpoints.terminar(cp);
+            return out;
+        } catch (Exception e) {
+            checkpoints.fallar(cp, rootMessage(e));
+            throw e;
+        }
+    }
+
+    /** Corre {@code trabajo} en una transacción; cualquier excepción (también las checked) la deshace */
+    private <T> T enTransaccion(Callable<T> trabajo) throws Exception {
+        try {
+            return tx.execute(st -> {
+                try {
+                    return trabajo.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new UndeclaredThrowableException(e);
                 }
-            }
+            });
+        } catch (UndeclaredThrowableException e) {
+            throw (Exception) e.getUndeclaredThrowable();
+        }
+    }
 
-            Integer colFecha         = headerIndex(hIndex, "FECHA");
-            Integer colTracking      = headerIndex(hIndex, "TRACKING");
-            Integer colMarchamo      = headerIndex(hIndex, "MARCHAMO");
-            Integer colDistrito      = headerIndex(hIndex, "DISTRITO", "DISTRICT", "ZONA", "UBICACION", "UBICACIÓN", "MUEBLE"); // soporta viejas cabeceras
-            Integer colResponsable   = headerIndex(hIndex, "RESPONSABLE", "RESP"); // opcional
-            Integer colObservaciones = headerIndex(hIndex, "OBSERVACIONES", "OBSERVACION", "OBS", "NOTAS", "NOTA");
+    private Map<String, Object> importarConsolidadoEnUnaTransaccion(Path xlsx, String actor, boolean delta,
+                                                                    ImportProgress progress) throws Exception {
+        long t0 = System.currentTimeMillis();
+        progress.phase(ImportProgress.Phase.LEYENDO);
 
-            if (colFecha == null) colFecha = 0;
-            if (colTracking == null) colTracking = detectTrackingColumn(sh);
+        // placeholders
+        long sacoPend = ensureSaco("PENDIENTE");
+        long distPend = ensureDistrito(DISTRITO_PENDIENTE);
 
-            for (int r = sh.getFirstRowNum() + 1; r <= sh.getLastRowNum(); r++) {
-                Row row = sh.getRow(r);
-                if (row == null) continue;
+        // distritos reconocibles (nombre o alias -> distrito) y nombre -> id
+        DistritoTrie distritos = this.distritos.trie();
+        Map<String, Long> distMap = distritosPorNombre();
 
-                String marchamoActual = null;
-                String distritoActual = null;
+        ImportBatchService.Lote lote = batches.abrir(delta ? "CONSOLIDADO_DELTA" : "CONSOLIDADO", actor);
+        if (consoStaging || delta) {
+            return importarConsolidadoStaging(xlsx, actor, delta, progress, distritos, distMap, sacoPend, distPend, lote, t0);
+        }
 
-                if (colMarchamo != null) {
-                    String raw = getCellStr(row.getCell(colMarchamo));
-                    if (raw != null && !raw.isBlank()) {
-                        marchamoActual = raw.trim();
-                    }
-                }
-                if (colDistrito != null) {
-                    String raw = getString(row.getCell(colDistrito));
-                    if (raw != null && !raw.isBlank()) {
-                        distritoActual = canonDistrito(raw);
-                    }
-                }
+        // Solo los marchamos que aparecen en el archivo (no toda la tabla sacos)
+        Map<String, Long> sacoMap = new HashMap<>();
+        // trackings del archivo y cuáles tienen marchamo+distrito reales (la última fila del archivo gana)
+        StringIndex trackings = new StringIndex(4096);
+        BitSet marcadores = new BitSet();
+
+        // Pipeline: el parser lee el XLSX en otro hilo mientras este hilo (el de la transacción)
+        // aplica cada lote en BD.
+        ImportPipeline.<ConsoRow>run(parseExecutor, CONSO_BATCH, CONSO_QUEUE,
+            emit -> parseConsolidado(xlsx, distritos, perfiles, r -> { emit.accept(r); progress.parsed(1); }),
+            batch -> {
+                progress.phase(ImportProgress.Phase.APLICANDO);
+                applyConsolidadoBatch(batch, sacoMap, distMap, sacoPend, distPend, actor, lote, trackings, marcadores);
+                progress.applied(batch.size());
+            });
 
-                if (marchamoActual == null || distritoActual == null) {
-                    Marker mk = scanRowForMarker(row);
-                    if (distritoActual == null && mk.distrito != null) distritoActual = mk.distrito;
-                    if (marchamoActual  == null && mk.marchamo  != null) marchamoActual  = mk.marchamo;
-                }
+        int total = trackings.size();
+        int conMarcadores = marcadores.cardinality();
+        lote.cerrar();
+        Map<String, Object> out = resumenConsolidado(total, conMarcadores, actor, t0);
+        out.put("import_batch", lote.id());
+        return out;
+    }
 
-                // Responsable por fila (si existe y viene valor)
-                String responsableFila = null;
-                if (colResponsable != null) {
-                    String resp = getString(row.getCell(colResponsable));
-                    if (notBlank(resp)) responsableFila = resp.trim();
-                }
+    /**
+     * Consolidado por tramos ({@code import.tramos.filas} > 0): aplica como el modo "lotes"
+     * (también con el modo staging) pero confirma cada N filas y después deja que el pacer
+     * espere si el sistema está ocupado. Sin delta (ese va por la tabla staging, que vive en una
+     * sola transacción).
+     *
+     * Con checkpoint (cp != null) el avance va en la misma transacción del tramo y al reanudar se
+     * saltan las filas ya confirmadas; como van en orden de archivo, la última fila sigue ganando.
+     * Los totales del resumen cuentan solo las filas aplicadas en esta corrida.
+     */
+    private Map<String, Object> importarConsolidadoPorTramos(Path xlsx, String actor, ImportCheckpointService.Checkpoint cp,
+                                                             ImportProgress progress) throws Exception {
+        long t0 = System.currentTimeMillis();
+        progress.phase(ImportProgress.Phase.LEYENDO);
 
-                // OBSERVACIONES: SOLO si la celda es texto; si no, se deja vacío.
-                String observacionesFila = null;
-                if (colObservaciones != null) {
-                    String obs = getObservacionStrict(row.getCell(colObservaciones));
-                    if (obs != null) observacionesFila = obs;
-                }
+        long sacoPend = ensureSaco("PENDIENTE");
+        long distPend = ensureDistrito(DISTRITO_PENDIENTE);
+        DistritoTrie distritos = this.distritos.trie();
+        Map<String, Long> distMap = distritosPorNombre();
+
+        ImportBatchService.Lote lote;
+        if (cp != null && cp.importBatch() != null) {
+            lote = batches.reabrir(cp.importBatch());
+        } else {
+            lote = tramoTx.execute(st -> {
+                ImportBatchService.Lote l = batches.abrir("CONSOLIDADO", actor);
+                if (cp != null) checkpoints.lote(cp, l.id());
+                return l;
+            });
+        }
+        long saltar = (cp == null) ? 0 : cp.filas();
+
+        Map<String, Long> sacoMap = new HashMap<>();
+        StringIndex trackings = new StringIndex(4096);
+        BitSet marcadores = new BitSet();
+        List<ConsoRow> pendientes = new ArrayList<>();
+        long[] leidas = { 0 };
+
+        Consumer<List<ConsoRow>> confirmar = tramo -> {
+            long hasta = leidas[0];
+            tramoTx.executeWithoutResult(st -> {
+                applyConsolidadoBatch(tramo, sacoMap, distMap, sacoPend, distPend, actor, lote, trackings, marcadores);
+                if (cp != null) checkpoints.avanzar(cp, hasta);
+            });
+            tramo.clear();
+            pacer.pausa();   // ya confirmado: la pausa no retiene locks
+        };
 
-                Timestamp llegada = null;
-                try {
-                    Date f = parseFecha(row.getCell(colFecha));
-                    if (f != null) llegada = new Timestamp(f.getTime());
-                } catch (Exception ignore) {}
-
-                List<String> trackings = new ArrayList<>();
-                if (colTracking != null) {
-                    String cellVal = getCellStr(row.getCell(colTracking));
-                    trackings.addAll(findAllTrackings(cellVal));
-                }
-                if (trackings.isEmpty()) {
-                    StringBuilder sb = new StringBuilder();
-                    for (Cell c : row) {
-                        String v = getCellStr(c);
-                        if (v != null) sb.append(v).append(' ');
-                    }
-                    trackings.addAll(findAllTrackings(sb.toString()));
+        ImportPipeline.<ConsoRow>run(parseExecutor, CONSO_BATCH, CONSO_QUEUE,
+            emit -> parseConsolidado(xlsx, distritos, perfiles, r -> { emit.accept(r); progress.parsed(1); }),
+            batch -> {
+                progress.phase(ImportProgress.Phase.APLICANDO);
+                for (ConsoRow r : batch) {
+                    if (leidas[0]++ >= saltar) pendientes.add(r);
                 }
+                if (pendientes.size() >= filasPorTramo) confirmar.accept(pendientes);
+                progress.applied(batch.size());
+            });
+        if (!pendientes.isEmpty()) confirmar.accept(pendientes);
+        tramoTx.executeWithoutResult(st -> lote.cerrar());
 
-                // ===== EARLY EXIT: si esta fila NO tiene tracking y las 2 próximas tampoco, cortar =====
-                if (trackings.isEmpty()) {
-                    boolean next1Has = rowHasTracking((r + 1) <= sh.getLastRowNum() ? sh.getRow(r + 1) : null, colTracking);
-                    boolean next2Has = rowHasTracking((r + 2) <= sh.getLastRowNum() ? sh.getRow(r + 2) : null, colTracking);
-                    if (!next1Has && !next2Has) {
-                        break;
-                    } else {
-                        continue;
-                    }
-                }
-                // ======================================================================================
-
-                for (String tracking : trackings) {
-                    if (tracking == null || tracking.isBlank()) continue;
-                    ConsoRow cr = new ConsoRow(
-                        tracking.trim(),
-                        marchamoActual,
-                        distritoActual,
-                        llegada,
-                        responsableFila,
-                        observacionesFila
-                    );
-                    rows.add(cr);
-                }
+        Map<String, Object> out = resumenConsolidado(trackings.size(), marcadores.cardinality(), actor, t0);
+        out.put("import_batch", lote.id());
+        if (saltar > 0) out.put("reanudado_desde", saltar);
+        return out;
+    }
+
+    /**
+     * Modo staging: el pipeline solo carga la tabla temporal; sacos y paquetes se aplican al
+     * final con sentencias por conjuntos (O(1) sentencias en vez de una por paquete).
+     */
+    private Map<String, Object> importarConsolidadoStaging(Path xlsx, String actor, boolean delta, ImportProgress progress,
+                                                           DistritoTrie distritos, Map<String, Long> distMap,
+                                                           long sacoPend, long distPend,
+                                                           ImportBatchService.Lote lote, long t0) throws Exception {
+        ConsolidadoStaging staging = new ConsolidadoStaging(jdbc, dbSession);
+        staging.create();
+        try {
+            ImportPipeline.<ConsoRow>run(parseExecutor, CONSO_BATCH, CONSO_QUEUE,
+                emit -> parseConsolidado(xlsx, distritos, perfiles, r -> { emit.accept(r); progress.parsed(1); }),
+                batch -> {
+                    progress.phase(ImportProgress.Phase.APLICANDO);
+                    staging.load(batch, distMap);
+                    progress.applied(batch.size());
+                });
+
+            ConsolidadoStaging.Resultado res = staging.apply(sacoPend, distPend, actor, delta, lote);
+            lote.cerrar();
+            Map<String, Object> out = resumenConsolidado(res.total(), res.conMarcadores(), actor, t0);
+            out.put("import_batch", lote.id());
+            if (delta) {
+                out.put("modo", "delta");
+                out.put("aplicados", res.aplicados());
+                out.put("sin_cambios", res.sinCambios());
             }
+            return out;
+        } finally {
+            staging.drop();
         }
+    }
 
-        // uniq por tracking (última fila gana)
+    /** nombre del distrito -> id */
+    private Map<String, Long> distritosPorNombre() {
+        return jdbc.query("SELECT id, nombre FROM distritos",
+            rs -> {
+                Map<String, Long> m = new HashMap<>();
+                while (rs.next()) m.put(rs.getString("nombre"), rs.getLong("id"));
+                return m;
+            });
+    }
+
+    private static Map<String, Object> resumenConsolidado(int total, int conMarcadores, String actor, long t0) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("total", total);
+        out.put("procesados", total);
+        out.put("con_marcadores", conMarcadores);
+        out.put("sin_marcadores", total - conMarcadores);
+        out.put("ms", System.currentTimeMillis() - t0);
+        out.put("actor", actor);
+        return out;
+    }
+
+    /**
+     * Aplica un lote del consolidado: crea sacos y paquetes faltantes y actualiza los paquetes.
+     * Los lotes llegan en orden de archivo, así que si un tracking se repite la última fila gana.
+     */
+    private void applyConsolidadoBatch(List<ConsoRow> batch,
+                                       Map<String, Long> sacoMap,
+                                       Map<String, Long> distMap,
+                                       long sacoPend, long distPend,
+                                       String actor,
+                                       ImportBatchService.Lote lote,
+                                       StringIndex trackings, BitSet marcadores) {
+        // uniq por tracking dentro del lote (última fila gana)
         Map<String, ConsoRow> byTracking = new LinkedHashMap<>();
-        for (ConsoRow r : rows) {
+        for (ConsoRow r : batch) {
             if (r.tracking == null) continue;
             byTracking.put(r.tracking, r);
         }
+        if (byTracking.isEmpty()) return;
         List<ConsoRow> uniqRows = new ArrayList<>(byTracking.values());
 
-        // placeholders
-        long sacoPend = ensureSaco("PENDIENTE");
-        long distPend = ensureDistrito(DISTRITO_PENDIENTE);
-
-        // Map distritos existentes (nombre canonical -> id)
-        Map<String, Long> distMap = jdbc.query("SELECT id, nombre FROM distritos",
-            rs -> {
-                Map<String, Long> m = new HashMap<>();
-                while (rs.next()) {
-                    String canon = canonDistrito(rs.getString("nombre"));
-                    if (canon == null) canon = rs.getString("nombre");
-                    m.put(canon, rs.getLong("id"));
-                }
-                return m;
-            });
-
-        // crear sacos faltantes
-        List<String> marchamos = uniqRows.stream()
+        // crear sacos faltantes y resolver sus ids
+        List<String> nuevos = uniqRows.stream()
                 .map(v -> v.marchamo)
                 .filter(ImportService::notBlank)
+                .filter(m -> !sacoMap.containsKey(m))
                 .distinct()
                 .collect(Collectors.toList());
-        batchInsertIgnoreSacos(marchamos);
+        if (!nuevos.isEmpty()) {
+            batchInsertIgnoreSacos(nuevos);
+            sacoMap.putAll(fetchSacoIds(nuevos));
+        }
 
-        Map<String, Long> sacoMap = jdbc.query("SELECT id, marchamo FROM sacos",
-                rs -> {
-                    Map<String, Long> m = new HashMap<>();
-                    while (rs.next()) {
-                        m.put(rs.getString("marchamo"), rs.getLong("id"));
-                    }
-                    return m;
-                });
+        // imagen previa de los que ya existen (antes de crear los faltantes)
+        lote.guardarAntes(byTracking.keySet());
 
-        List<String> trackings = uniqRows.stream()
-                .map(v -> v.tracking)
-                .distinct()
-                .collect(Collectors.toList());
+        // Inserta paquetes faltantes con saco/distrito PENDIENTE y estado base "DISPONIBLE"
+        dbSession.actor(actor);
+        batchInsertIgnorePaquetes(new ArrayList<>(byTracking.keySet()), sacoPend, distPend);
 
-        String actor = currentUser.display();
+        batchUpdatePaquetes(uniqRows, sacoMap, distMap, sacoPend, distPend, actor);
 
-        // Inserta paquetes faltantes con saco/distrito PENDIENTE y estado base "DISPONIBLE"
-        try {
-            jdbc.update("SET @changed_by = ?", actor);
-            batchInsertIgnorePaquetes(trackings, sacoPend, distPend);
-        } finally {
-            jdbc.update("SET @changed_by = NULL");
+        for (ConsoRow r : uniqRows) {
+            Long sId = (r.marchamo == null) ? null : sacoMap.get(r.marchamo);
+            Long dId = (r.distrito == null) ? null : distMap.get(r.distrito);
+            marcadores.set(trackings.add(r.tracking), sId != null && dId != null && sId != sacoPend && dId != distPend);
         }
+    }
 
-        int conMarcadores = batchUpdatePaquetes(uniqRows, sacoMap, distMap, sacoPend, distPend, actor);
-
-        Map<String, Object> out = new LinkedHashMap<>();
-        out.put("total", trackings.size());
-        out.put("procesados", trackings.size());
-        out.put("con_marcadores", conMarcadores);
-        out.put("sin_marcadores", trackings.size() - conMarcadores);
-        out.put("ms", System.currentTimeMillis() - t0);
-        out.put("actor", actor);
+    /** ids de los marchamos dados (en trozos para no pasarse de placeholders) */
+    private Map<String, Long> fetchSacoIds(List<String> marchamos) {
+        Map<String, Long> out = new HashMap<>();
+        final int B = 800;
+        for (int i = 0; i < marchamos.size(); i += B) {
+            List<String> slice = marchamos.subList(i, Math.min(i + B, marchamos.size()));
+            String placeholders = slice.stream().map(x -> "?").collect(Collectors.joining(","));
+            jdbc.query("SELECT id, marchamo FROM sacos WHERE marchamo IN (" + placeholders + ")",
+                    rs -> { out.put(rs.getString("marchamo"), rs.getLong("id")); },
+                    slice.toArray());
+        }
         return out;
     }
 
 
-    /** Devuelve el índice de la primera cabecera que coincida con alguno de los nombres dados */
-    private static Integer headerIndex(Map<String,Integer> hIndex, String... names) {
-        if (hIndex == null || hIndex.isEmpty() || names == null) return null;
-        for (String n : names) {
-            if (n == null) continue;
-            Integer idx = hIndex.get(n.toUpperCase(Locale.ROOT));
-            if (idx != null) return idx;
+    /**
+     * Lee el consolidado fila por fila y entrega cada ConsoRow al sink.
+     * XLSX se lee en streaming (SAX); un .xls viejo cae al modelo completo de POI (ver TabularSource).
+     */
+    private static void parseConsolidado(Path xlsx, DistritoTrie distritos, LayoutProfiles perfiles,
+                                         Consumer<ConsoRow> sink) throws Exception {
+        ConsolidadoParser parser = new ConsolidadoParser(distritos, perfiles, sink);
+        try (TabularSource src = TabularSource.open(xlsx, (char) 0, false)) {
+            src.read(HOJA_CONSOLIDADO, parser);
         }
-        return null;
+        parser.finish();
     }
 
-    /** Extrae TODOS los trackings que parezcan válidos de un texto dado */
-    private static List<String> findAllTrackings(String text) {
-        List<String> out = new ArrayList<>();
-        if (text == null) return out;
-        Matcher m = P_TRACK.matcher(text);
-        while (m.find()) {
-            String t = m.group();
-            if (t != null && !t.isBlank()) {
-                out.add(t.trim().toUpperCase(Locale.ROOT));
-            }
+    /** Copia el upload a un archivo temporal (el caller lo borra) */
+    private static Path spool(MultipartFile file, String suffix) throws IOException {
+        Path tmp = Files.createTempFile("import-", suffix);
+        try {
+            file.transferTo(tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
         }
-        return out;
+        return tmp;
+    }
+
+    /** Extrae TODOS los trackings que parezcan válidos de un texto dado */
+    static List<String> findAllTrackings(String text) {
+        return TrackingScanner.findAllTrackings(text);
     }
 
     private static String clip(String s, int max) {
@@ -316,81 +484,95 @@ public class ImportService {
 
     // =====================================================================
     // 2) TRACKS (CSV) -> actualizar SOLO existentes (no crea nuevos)
+    //    Sin @Transactional: cada modo abre las suyas (ver importarPaquetesCSV con ErrorReport).
     // =====================================================================
-    @Transactional
     @CacheEvict(cacheNames = { "inventario", "busquedas" }, allEntries = true)
     public Map<String, Object> importarPaquetesCSV(MultipartFile file) throws Exception {
-        int total = 0, entregados = 0, devoluciones = 0, actualizados = 0, noExistentes = 0, rechazados = 0;
-        List<String> errores = new ArrayList<>();
-
-        String csv = decodeBestEffort(file);
-        String firstLine = csv.contains("\n") ? csv.substring(0, csv.indexOf('\n')) : csv;
-        char delimiter = detectDelimiterFromLine(firstLine);
-
-        CSVFormat fmt = CSVFormat.DEFAULT
-                .withDelimiter(delimiter)
-                .withFirstRecordAsHeader()
-                .withIgnoreHeaderCase()
-                .withTrim();
-
-        List<CsvRow> filas = new ArrayList<>();
+        Path tmp = spool(file, ".csv");
+        try {
+            return importarPaquetesCSV(tmp, file.getOriginalFilename(), currentUser.display(), ImportProgress.NONE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
 
-        try (CSVParser parser = new CSVParser(new StringReader(csv), fmt)) {
-            Map<String, Integer> header = new HashMap<>();
-            parser.getHeaderMap().forEach((k, v) -> header.put(k.toUpperCase(Locale.ROOT), v));
-
-            for (CSVRecord row : parser) {
-                total++;
-
-                String cand = get(row, header,
-                        "AEROTRACK", "COURIER_NUMBER", "AWB", "TRK_BAGNUM",
-                        "TRACKING", "TRACKING_NUMBER",
-                        "NUMERO DE ENVIO", "NUMERO_DE_ENVIO",
-                        "CÓDIGO ENVÍO", "CODIGO ENVIO");
-                String tracking = isValidTracking(cand) ? cand : null;
-                if (tracking == null) {
-                    for (int i = 0; i < row.size(); i++) {
-                        String v = row.get(i);
-                        String t = findTrackingInText(v);
-                        if (isValidTracking(t)) { tracking = t; break; }
-                    }
-                }
-                if (isBlank(tracking)) {
-                    rechazados++; errores.add("Fila " + row.getRecordNumber() + ": tracking inválido o vacío");
-                    continue;
-                }
-                tracking = tracking.trim().toUpperCase(Locale.ROOT);
+    /** Import de tracks desde un archivo ya guardado en disco (actor explícito, ver importarConsolidado). */
+    @CacheEvict(cacheNames = { "inventario", "busquedas" }, allEntries = true)
+    public Map<String, Object> importarPaquetesCSV(Path csvFile, String actor, ImportProgress progress) throws Exception {
+        return importarPaquetesCSV(csvFile, csvFile.getFileName().toString(), actor, progress);
+    }
 
-                String nombre    = get(row, header, "CLIENT_NAME", "CONSIGNEE", "NOMBRE", "NAME");
-                String direccion = get(row, header, "THIRDPARTY_ADDRESS", "DIRECCION", "DIRECCIÓN", "ADDRESS");
+    private Map<String, Object> importarPaquetesCSV(Path csvFile, String archivo, String actor,
+                                                    ImportProgress progress) throws Exception {
+        if (conCheckpoint(ImportJobService.TIPO_PAQUETES, false)) {
+            return importarPorTramos(checkpoints.abrir(UUID.randomUUID().toString(),
+                    ImportJobService.TIPO_PAQUETES, archivo, actor, csvFile), progress);
+        }
+        return importarPaquetesCSV(csvFile, actor, progress, (ImportCheckpointService.Checkpoint) null);
+    }
 
-                String telefono = get(row, header,
-                        "THIRDPARTY_PHONE", "THIRDPARTY PHONE", "THIRD_PARTY_PHONE", "THIRD PARTY PHONE");
+    /**
+     * Tracks con checkpoint (cp != null, ver importarPorTramos): sin transacción envolvente, cada
+     * tramo de N filas se confirma junto con su avance (ver aplicarTracksPorTramos).
+     * El reporte de errores de una corrida reanudada no trae los de aplicación de los tramos
+     * confirmados antes del corte.
+     */
+    private Map<String, Object> importarPaquetesCSV(Path csvFile, String actor, ImportProgress progress,
+                                                    ImportCheckpointService.Checkpoint cp) throws Exception {
+        ErrorReport errores = reportes.crear();
+        try {
+            Map<String, Object> out = importarPaquetesCSV(csvFile, actor, progress, errores, cp);
+            reportes.publicar(errores, out);
+            return out;
+        } catch (Exception | Error e) {
+            reportes.descartar(errores);
+            throw e;
+        }
+    }
 
-                if (telefono != null) {
-                    String t = telefono.replaceAll("[^\\d+]", "");
-                    if (!t.startsWith("+") && (t.length() == 8 || (t.startsWith("506") && t.length()==11))) {
-                        t = (t.length()==8) ? "+506"+t : "+"+t;
+    /**
+     * El parseo va sin transacción; la aplicación según el modo: por tramos con checkpoint (cp),
+     * por particiones (cada una la suya), por tramos confirmados (import.tramos.filas > 0) o
+     * secuencial (una sola transacción).
+     *
+     * @param cp null = sin checkpoint
+     */
+    private Map<String, Object> importarPaquetesCSV(Path csvFile, String actor, ImportProgress progress,
+                                                    ErrorReport errores, ImportCheckpointService.Checkpoint cp) throws Exception {
+        int total = 0, entregados = 0, devoluciones = 0, actualizados = 0, noExistentes = 0, rechazados = 0;
+        progress.phase(ImportProgress.Phase.LEYENDO);
+
+        TracksBuffer filas = new TracksBuffer();
+        DistritoTrie distritos = this.distritos.trie();
+
+        // Perfil de un archivo anterior con la misma cabecera: separador y formato de fecha sin
+        // detectar. El charset solo si era UTF-8 (su lector acepta también Windows-1252); uno de
+        // un byte se vuelve a detectar, por si este archivo llega en UTF-8.
+        long firma = LayoutProfiles.firmaCsv(csvFile);
+        LayoutProfiles.Perfil perfil = perfiles.get(firma);
+        Charset charset = (perfil != null && StandardCharsets.UTF_8.equals(perfil.charset()))
+                ? perfil.charset() : CsvSource.detectCharset(csvFile);
+        Fechas.Columna fechas = new Fechas.Columna(perfil == null ? null : perfil.fecha(), FORMATOS_FECHA);
+
+        // bytes desde disco; el registro 0 es la cabecera
+        try (CsvTokenizer csv = CsvTokenizer.open(csvFile, charset, perfil == null ? (char) 0 : perfil.delimitador())) {
+            if (csv.next()) {
+                TracksLayout layout = new TracksLayout(csv);
+                while (csv.next()) {
+                    progress.parsed(1);
+                    CsvRow f = readCsvRow(csv, layout, distritos, fechas);
+                    if (f == null) {
+                        errores.add(csv.num() + 1, null, "tracking inválido o vacío");
+                        progress.errors(1);
+                    } else {
+                        filas.add(f);
                     }
-                    telefono = t;
                 }
-
-                BigDecimal valor = parseDecimal(firstNonNull(
-                        get(row,header,"MERCHANDISE_VALUE","VALOR","VALOR_MERCANCIA","VALUE"),
-                        get(row,header,"DECLARED_VALUE")
-                ));
-                String contenido = get(row, header, "DESCRIPTION", "DESCRIPCION", "CONTENT_DESCRIPTION", "CONTENIDO");
-                String statusRaw = get(row, header, "STATUS", "ESTADO");
-                String fupdate   = get(row, header, "LAST_UPDATE", "FECHA", "LAST UPDATE", "FECHA ULTIMA ACTUALIZACION", "FECHA_ULTIMA_ACTUALIZACION");
-
-                // Distrito (opcional, si el CSV lo trae)
-                String distritoRaw = get(row, header, "DISTRITO", "DISTRICT", "ZONA", "UBICACION", "UBICACIÓN", "MUEBLE");
-                String distritoCanon = canonDistrito(distritoRaw);
-
-                Timestamp statusAt = parseDateToTs(fupdate);
-                filas.add(new CsvRow(row.getRecordNumber(), tracking, nombre, direccion, telefono, valor, contenido, statusRaw, statusAt, distritoCanon));
+                perfiles.put(firma, new LayoutProfiles.Perfil(charset, csv.delimiter(), null, fechas.formato()));
             }
         }
+        rechazados = (int) errores.total();
+        total = filas.size() + rechazados;
 
         if (filas.isEmpty()) {
             Map<String, Object> out = new LinkedHashMap<>();
@@ -400,78 +582,40 @@ public class ImportService {
             out.put("actualizados", 0);
             out.put("no_existentes", 0);
             out.put("rechazados", rechazados);
-            out.put("errores", errores);
             return out;
         }
 
-        Set<String> solicitados = filas.stream().map(f -> f.tracking).collect(Collectors.toSet());
-        Set<String> existentes = fetchExistentes(solicitados);
-
-        String actor = currentUser.display();
-
-        jdbc.update("SET @changed_by = ?", actor);
-        try {
-            for (CsvRow f : filas) {
-                if (!existentes.contains(f.tracking)) {
-                    noExistentes++; errores.add("Fila " + f.recNo + " (" + f.tracking + "): no existe en BD, saltado.");
-                    continue;
-                }
-                try {
-                    // Si el CSV no trae distrito válido, preserva el distrito actual del paquete.
-                    String distritoParaSP = f.distritoCanon;
-                    if (isBlank(distritoParaSP)) {
-                        distritoParaSP = jdbc.queryForObject(
-                            "SELECT distrito_nombre FROM vw_paquete_resumen WHERE tracking_code=? LIMIT 1",
-                            String.class,
-                            f.tracking
-                        );
-                    }
-                    if (isBlank(distritoParaSP)) {
-                        // fallback extremo (no debería ocurrir porque distrito_id es NOT NULL)
-                        distritoParaSP = "PENDIENTE";
-                        ensureDistrito("PENDIENTE");
-                    }
-
-                    jdbc.update("CALL sp_upsert_paquete_base(?,?,?,?,?,?,?)",
-                            f.tracking,
-                            emptyToNull(f.nombre),
-                            emptyToNull(f.direccion),
-                            emptyToNull(f.telefono),
-                            f.valor,
-                            emptyToNull(f.contenido),
-                            distritoParaSP
-                    );
-
-                    String status = opt(f.statusRaw);
-                    if (!isBlank(status)) {
-                        jdbc.update("CALL sp_aplicar_status_externo(?,?,?,?)",
-                                f.tracking, status, f.statusAt, actor);
-
-                        jdbc.update("UPDATE paquetes SET cambio_en_sistema_por=? WHERE tracking_code=?", actor, f.tracking);
-
-                        String norm = normalize(status);
-                        boolean isEntregado = norm.contains("prueba de entrega") || norm.startsWith("entregado")
-                                || norm.startsWith("en entrega") || norm.startsWith("delivered")
-                                || norm.contains("proof of delivery");
-                        boolean isDevolucion = norm.contains("transito a bodegas") || norm.startsWith("devolucion")
-                                || norm.startsWith("devoluciones") || norm.startsWith("devuelto")
-                                || norm.startsWith("almacenaje") || norm.contains("in transit to warehouse")
-                                || norm.contains("in transit to warehouses") || norm.startsWith("return")
-                                || norm.startsWith("returned") || norm.startsWith("storage");
-
-                        if (isDevolucion) devoluciones++;
-                        else if (isEntregado) entregados++;
-                        else actualizados++;
-                    } else {
-                        actualizados++;
-                        jdbc.update("UPDATE paquetes SET cambio_en_sistema_por=? WHERE tracking_code=?", actor, f.tracking);
-                    }
-                } catch (Exception ex) {
-                    rechazados++; errores.add("Fila " + f.recNo + " (" + f.tracking + "): " + ex.getMessage());
-                }
-            }
-        } finally {
-            jdbc.update("SET @changed_by = NULL");
+        progress.phase(ImportProgress.Phase.APLICANDO);
+        StatusExternoMatcher clasificador = statusReglas.matcher();
+        List<TracksApplier> aplicados;
+        if (cp != null) {
+            marcarExistentes(filas);
+            aplicados = List.of(aplicarTracksPorTramos(filas, actor, cp, clasificador, errores, progress));
+        } else if (tracksParticiones > 1 && filas.size() > 1) {
+            marcarExistentes(filas);
+            aplicados = aplicarTracksParticionado(filas, actor, clasificador, errores, progress);
+        } else if (porTramos(ImportJobService.TIPO_PAQUETES, false)) {
+            marcarExistentes(filas);
+            aplicados = List.of(aplicarTracksPorTramos(filas, actor, null, clasificador, errores, progress));
+        } else {
+            TracksApplier applier = new TracksApplier(jdbc, actor, clasificador, filas, errores, progress);
+            int[] todas = new int[filas.size()];
+            for (int i = 0; i < todas.length; i++) todas[i] = i;
+            tx.executeWithoutResult(st -> {
+                marcarExistentes(filas);
+                dbSession.actor(actor);
+                applier.apply(todas);
+            });
+            aplicados = List.of(applier);
+        }
+        int particionesFallidas = 0;
+        for (TracksApplier a : aplicados) {
+            entregados += a.entregados;
+            devoluciones += a.devoluciones;
+            actualizados += a.actualizados;
+            noExistentes += a.noExistentes;
+            rechazados += a.rechazados;
+            if (a.fallo != null) particionesFallidas++;
         }
 
         Map<String, Object> out = new LinkedHashMap<>();
@@ -481,16 +625,121 @@ public class ImportService {
         out.put("actualizados", actualizados);
         out.put("no_existentes", noExistentes);
         out.put("rechazados", rechazados);
-        out.put("errores", errores);
         out.put("actor", actor);
+        if (cp != null && cp.filas() > 0) out.put("reanudado_desde", cp.filas());
+        if (particionesFallidas > 0) out.put("particiones_fallidas", particionesFallidas);
         return out;
     }
 
+    /**
+     * Tracks en tramos de {@code import.tramos.filas} filas, cada uno en su transacción (con el
+     * avance del checkpoint si hay). Las filas del buffer salen del archivo en el mismo orden en
+     * cada corrida, así que al reanudar se sigue desde el índice confirmado. Si un tramo falla,
+     * los anteriores quedan aplicados.
+     *
+     * @param cp null = sin checkpoint
+     */
+    private TracksApplier aplicarTracksPorTramos(TracksBuffer filas, String actor, ImportCheckpointService.Checkpoint cp,
+                                                 StatusExternoMatcher clasificador, ErrorReport errores,
+                                                 ImportProgress progress) {
+        TracksApplier applier = new TracksApplier(jdbc, actor, clasificador, filas, errores, progress);
+        int desde = (cp == null) ? 0 : (int) Math.min(cp.filas(), filas.size());
+        progress.applied(desde);
+        for (int i = desde; i < filas.size(); i += filasPorTramo) {
+            int hasta = Math.min(i + filasPorTramo, filas.size());
+            int[] tramo = new int[hasta - i];
+            for (int k = 0; k < tramo.length; k++) tramo[k] = i + k;
+            tramoTx.executeWithoutResult(st -> {
+                dbSession.actor(actor);
+                applier.apply(tramo);
+                if (cp != null) checkpoints.avanzar(cp, hasta);
+            });
+            pacer.pausa();   // ya confirmado: la pausa no retiene locks
+        }
+        return applier;
+    }
+
+    /**
+     * Tracks en K particiones disjuntas por hash del tracking, cada una en su propia conexión y
+     * transacción (con su @changed_by). Ningún paquete queda en dos particiones, así que los
+     * workers no se bloquean entre sí; dentro de cada partición se respeta el orden del archivo.
+     * Corre sin transacción envolvente: el import usa solo las conexiones de sus particiones.
+     *
+     * Cada partición confirma por su cuenta. Si una falla, se deshace solo esa: sus filas quedan
+     * rechazadas con el motivo y el resto del resumen cuenta lo que sí quedó aplicado. Cada
+     * partición escribe sus errores a su propio reporte; al final se mezclan en orden de archivo.
+     */
+    private List<TracksApplier> aplicarTracksParticionado(TracksBuffer filas, String actor,
+                                                          StatusExternoMatcher clasificador, ErrorReport errores,
+                                                          ImportProgress progress) throws Exception {
+        int k = Math.min(tracksParticiones, filas.size());
+        int[] parteDe = new int[filas.size()];
+        int[] tam = new int[k];
+        for (int i = 0; i < parteDe.length; i++) {
+            parteDe[i] = Math.floorMod(filas.trackingDeFila(i).hashCode(), k);
+            tam[parteDe[i]]++;
+        }
+        List<int[]> partes = new ArrayList<>(k);
+        for (int p = 0; p < k; p++) partes.add(new int[tam[p]]);
+        Arrays.fill(tam, 0);
+        for (int i = 0; i < parteDe.length; i++) partes.get(parteDe[i])[tam[parteDe[i]]++] = i;
+
+        List<ErrorReport> erroresPorParte = new ArrayList<>(k);
+        try {
+            List<CompletableFuture<TracksApplier>> futuros = new ArrayList<>(k);
+            for (int[] parte : partes) {
+                ErrorReport errs = reportes.crear();
+                erroresPorParte.add(errs);
+                TracksApplier applier = new TracksApplier(jdbc, actor, clasificador, filas, errs, progress);
+                CompletableFuture<TracksApplier> fut;
+                try {
+                    fut = CompletableFuture.supplyAsync(() -> particionTx.execute(st -> {
+                        dbSession.actor(actor);
+                        applier.apply(parte);
+                        return applier;
+                    }), applyExecutor);
+                } catch (RejectedExecutionException e) {
+                    fut = CompletableFuture.failedFuture(e);   // cola llena: cuenta como partición fallida
+                }
+                futuros.add(fut);
+            }
+
+            List<TracksApplier> out = new ArrayList<>(k);
+            for (int p = 0; p < k; p++) {
+                try {
+                    out.add(futuros.get(p).join());
+                } catch (CompletionException e) {
+                    // la partición se deshizo: sus errores de aplicación ya no valen
+                    reportes.descartar(erroresPorParte.get(p));
+                    ErrorReport errs = reportes.crear();
+                    erroresPorParte.set(p, errs);
+                    TracksApplier fallida = new TracksApplier(jdbc, actor, clasificador, filas, errs, progress);
+                    fallida.rechazarTodas(partes.get(p), "no se aplicó, falló su partición: " + rootMessage(e));
+                    out.add(fallida);
+                }
+            }
+
+            errores.addOrdenado(erroresPorParte);
+            return out;
+        } finally {
+            erroresPorParte.forEach(reportes::descartar);
+        }
+    }
+
+    private static String rootMessage(Throwable t) {
+        Throwable cur = t;
+        String last = t.getMessage();
+        while (cur.getCause() != null) {
+            cur = cur.getCause();
+            if (StringUtils.hasText(cur.getMessage())) last = cur.getMessage();
+        }
+        return last;
+    }
 
     /* ===================== Tipos y utilidades internas ===================== */
 
     /** Contenedor para filas del consolidado */
-    private static class ConsoRow {
+    static class ConsoRow {
         final String tracking;
         final String marchamo;
         final String distrito;       // <-- antes "ubicacion"
@@ -508,14 +757,8 @@ public class ImportService {
         }
     }
 
-    /** Marcador parcial en una fila */
-    private static class Marker {
-        String marchamo;
-        String distrito;
-    }
-
     /** Contenedor para filas del CSV */
-    private static class CsvRow {
+    static class CsvRow {
         final long recNo;
         final String tracking, nombre, direccion, telefono, contenido, statusRaw;
         final BigDecimal valor;
@@ -638,115 +881,17 @@ public class ImportService {
         return conMarcadores;
     }
 
-    // ===================== Helpers de codificación y detección =================
-
-    // Leer observaciones SOLO si la celda es texto (o fórmula que produce texto).
-    private static String getObservacionStrict(Cell c) {
-        if (c == null) return null;
-        CellType t = c.getCellType();
-        if (t == CellType.STRING) {
-            String s = c.getStringCellValue();
-            return (s == null || s.isEmpty()) ? null : s;
-        }
-        if (t == CellType.FORMULA) {
-            if (c.getCachedFormulaResultType() == CellType.STRING) {
-                String s = c.getRichStringCellValue() != null ? c.getRichStringCellValue().getString() : null;
-                return (s == null || s.isEmpty()) ? null : s;
-            }
-        }
-        return null;
-    }
+    // ===================== Helpers de texto =================
 
     private static String clipNoTrim(String s, int max) {
         if (s == null) return null;
         return (s.length() > max) ? s.substring(0, max) : s;
     }
 
-    /** Descifra mejor esfuerzo: UTF-8, Windows-1252 e ISO-8859-1 */
-    private static String decodeBestEffort(MultipartFile file) throws Exception {
-        byte[] bytes = file.getBytes();
-
-        String utf8   = new String(bytes, StandardCharsets.UTF_8);
-        String cp1252 = new String(bytes, Charset.forName("windows-1252"));
-        String iso    = new String(bytes, Charset.forName("ISO-8859-1"));
-
-        int scoreUtf8  = badCharScore(utf8);
-        int score1252  = badCharScore(cp1252);
-        int scoreIso   = badCharScore(iso);
-
-        String best = utf8;
-        int bestScore = scoreUtf8;
-        if (score1252 < bestScore) { best = cp1252; bestScore = score1252; }
-        if (scoreIso   < bestScore) { best = iso;   bestScore = scoreIso;   }
-
-        return best;
-    }
-
-    private static int badCharScore(String s) {
-        if (s == null) return Integer.MAX_VALUE;
-        int score = 0;
-        for (int i = 0; i < s.length(); i++) {
-            if (s.charAt(i) == '\uFFFD') score += 5;
-        }
-        score += countSubstr(s, "Ã");
-        score += countSubstr(s, "Â");
-        return score;
-    }
-
-    private static int countSubstr(String s, String sub) {
-        int count = 0, idx = 0;
-        while ((idx = s.indexOf(sub, idx)) != -1) {
-            count++;
-            idx += sub.length();
-        }
-        return count;
-    }
-
-    private static char detectDelimiterFromLine(String headerLine) {
-        int commas = countSubstr(headerLine, ",");
-        int semis  = countSubstr(headerLine, ";");
-        int tabs   = countSubstr(headerLine, "\t");
-        if (semis >= commas && semis >= tabs) return ';';
-        if (commas >= semis && commas >= tabs) return ',';
-        return '\t';
-    }
-
     // ===================== Helpers de Tracking ==========================
 
-    /** Encuentra la columna probable de tracking por heurística (primeras ~200 filas) */
-    private static Integer detectTrackingColumn(Sheet sh) {
-        int start = Math.max(sh.getFirstRowNum(), 0);
-        int end   = Math.min(sh.getLastRowNum(), start + 200);
-        Integer guess = null;
-        int bestScore = -1;
-
-        for (int c = 0; c < 30; c++) {
-            int score = 0;
-            for (int r = start + 1; r <= end; r++) {
-                Row row = sh.getRow(r);
-                if (row == null) continue;
-                String v = getCellStr(row.getCell(c));
-                if (v != null && looksLikeTracking(v)) score++;
-            }
-            if (score > bestScore) {
-                bestScore = score;
-                guess = (score == 0 ? null : c);
-            }
-        }
-        return guess;
-    }
-
-    // Regex amplio
-    private static final Pattern P_TRACK = Pattern.compile("(?i)\\b(?!MUEBLE)(?!CAJA)(?!DISTRITO)[A-Z]{2,4}[A-Z0-9]{6,18}\\b");
-
-    private static boolean looksLikeTracking(String s) {
-        if (s == null) return false;
-        String t = s.trim();
-        if (t.length() < 8 || t.length() > 24) return false;
-        if (t.matches("\\d+")) return false;
-        String up = t.toUpperCase(Locale.ROOT);
-        if (up.startsWith("MUEBLE") || up.startsWith("CAJA") || up.startsWith("DISTRITO")) return false;
-        return P_TRACK.matcher(t).find();
+    static boolean looksLikeTracking(String s) {
+        return TrackingScanner.looksLikeTracking(s);
     }
 
     private static boolean isValidTracking(String s) {
@@ -754,38 +899,12 @@ public class ImportService {
     }
 
     private static String findTrackingInText(String v) {
-        if (v == null) return null;
-        Matcher m = P_TRACK.matcher(v);
-        return m.find() ? m.group().trim().toUpperCase(Locale.ROOT) : null;
-    }
-
-    /** Escanea una fila para ver si contiene marchamo y/o distrito */
-    private static Marker scanRowForMarker(Row row) {
-        Marker mk = new Marker();
-        for (Cell c : row) {
-            String s = getString(c);
-            if (s == null) continue;
-            String raw = s.trim();
-            if (raw.isEmpty()) continue;
-
-            // marchamo: números (mínimo 4)
-            if (mk.marchamo == null && raw.toUpperCase(Locale.ROOT).matches("\\d{4,}")) {
-                mk.marchamo = raw;
-                continue;
-            }
-
-            // distrito: buscar en cualquier texto de celda
-            if (mk.distrito == null) {
-                String canon = canonDistrito(raw);
-                if (canon != null) mk.distrito = canon;
-            }
-        }
-        return mk;
+        return TrackingScanner.findFirstTracking(v);
     }
 
     // ===================== Helpers comunes ===============================
 
-    private static boolean notBlank(String s) {
+    static boolean notBlank(String s) {
         return s != null && !s.trim().isEmpty();
     }
 
@@ -793,14 +912,6 @@ public class ImportService {
         return s == null || s.trim().isEmpty();
     }
 
-    private static String emptyToNull(String s) {
-        return isBlank(s) ? null : s;
-    }
-
-    private static String opt(String s) {
-        return s == null ? "" : s.trim();
-    }
-
     private static String firstNonNull(String a, String b) {
         return isBlank(a) ? b : a;
     }
@@ -820,126 +931,113 @@ public class ImportService {
         }
     }
 
-    private static Timestamp parseDateToTs(String s) {
-        if (isBlank(s)) return null;
-        String[] patterns = {
-            "dd/MM/yyyy HH:mm:ss",
-            "dd/MM/yyyy HH:mm",
-            "dd/MM/yyyy",
-            "yyyy-MM-dd HH:mm:ss",
-            "yyyy-MM-dd"
-        };
-        for (String p : patterns) {
-            try {
-                SimpleDateFormat df = new SimpleDateFormat(p);
-                df.setLenient(false);
-                return new Timestamp(df.parse(s).getTime());
-            } catch (ParseException ignore) {}
+    // fechas del CSV de tracks, en orden de preferencia (ver Fechas.Columna)
+    private static final DateTimeFormatter[] FORMATOS_FECHA = {
+        Fechas.DMY_HMS, Fechas.DMY_HM, Fechas.DMY, Fechas.YMD_HMS, Fechas.YMD
+    };
+
+    /** Primer valor no vacío entre las columnas dadas (en orden de alias) */
+    private static String get(CsvTokenizer row, int[] cols) {
+        for (int c : cols) {
+            if (!row.isBlank(c)) return row.get(c);
         }
         return null;
     }
 
-    private static String normalize(String s) {
-        if (s == null) return "";
-        String n = s.toLowerCase(Locale.ROOT).trim();
-        n = n.replace('í','i').replace('ó','o').replace('á','a')
-             .replace('é','e').replace('ú','u').replace('ñ','n');
-        return n;
-    }
-
-    private static String get(CSVRecord row, Map<String, Integer> header, String... keys) {
-        if (row == null || header == null || keys == null) return null;
-        for (String k : keys) {
-            if (k == null) continue;
-            Integer idx = header.get(k.toUpperCase(Locale.ROOT));
-            if (idx != null && idx >= 0 && idx < row.size()) {
-                String v = row.get(idx);
-                if (v != null) {
-                    String t = v.trim();
-                    if (!t.isEmpty()) return t;
+    /**
+     * Columnas del CSV de tracks resueltas una vez desde la cabecera: por cada campo, las columnas
+     * de sus alias presentes, en orden de preferencia. Nombre en mayúsculas; si se repite, gana la
+     * última columna. Igual que commons-csv con cabecera: un nombre vacío es un error.
+     */
+    private static final class TracksLayout {
+        final int[] tracking, nombre, direccion, telefono, valor, valorDeclarado, contenido, status, fecha, distrito;
+
+        TracksLayout(CsvTokenizer cabecera) {
+            Map<String, Integer> header = new HashMap<>();
+            for (int i = 0; i < cabecera.size(); i++) {
+                if (cabecera.isBlank(i)) {
+                    String[] names = new String[cabecera.size()];
+                    for (int k = 0; k < names.length; k++) names[k] = cabecera.get(k);
+                    throw new IllegalArgumentException("A header name is missing in " + Arrays.toString(names));
                 }
+                header.put(cabecera.get(i).toUpperCase(Locale.ROOT), i);
             }
+            tracking = cols(header,
+                    "AEROTRACK", "COURIER_NUMBER", "AWB", "TRK_BAGNUM",
+                    "TRACKING", "TRACKING_NUMBER",
+                    "NUMERO DE ENVIO", "NUMERO_DE_ENVIO",
+                    "CÓDIGO ENVÍO", "CODIGO ENVIO");
+            nombre    = cols(header, "CLIENT_NAME", "CONSIGNEE", "NOMBRE", "NAME");
+            direccion = cols(header, "THIRDPARTY_ADDRESS", "DIRECCION", "DIRECCIÓN", "ADDRESS");
+            telefono  = cols(header, "THIRDPARTY_PHONE", "THIRDPARTY PHONE", "THIRD_PARTY_PHONE", "THIRD PARTY PHONE");
+            valor     = cols(header, "MERCHANDISE_VALUE", "VALOR", "VALOR_MERCANCIA", "VALUE");
+            valorDeclarado = cols(header, "DECLARED_VALUE");
+            contenido = cols(header, "DESCRIPTION", "DESCRIPCION", "CONTENT_DESCRIPTION", "CONTENIDO");
+            status    = cols(header, "STATUS", "ESTADO");
+            fecha     = cols(header, "LAST_UPDATE", "FECHA", "LAST UPDATE", "FECHA ULTIMA ACTUALIZACION", "FECHA_ULTIMA_ACTUALIZACION");
+            distrito  = cols(header, "DISTRITO", "DISTRICT", "ZONA", "UBICACION", "UBICACIÓN", "MUEBLE");
         }
-        return null;
-    }
 
-    private static String getCellStr(Cell c) {
-        if (c == null) return null;
-        switch (c.getCellType()) {
-            case STRING:  return c.getStringCellValue();
-            case NUMERIC:
-                if (DateUtil.isCellDateFormatted(c)) {
-                    return new SimpleDateFormat("yyyy-MM-dd").format(c.getDateCellValue());
-                } else {
-                    return new DecimalFormat("#").format(c.getNumericCellValue());
-                }
-            default:
-                return null;
+        private static int[] cols(Map<String, Integer> header, String... alias) {
+            return Arrays.stream(alias)
+                    .map(a -> header.get(a.toUpperCase(Locale.ROOT)))
+                    .filter(Objects::nonNull)
+                    .mapToInt(Integer::intValue)
+                    .distinct()
+                    .toArray();
         }
     }
 
-    private static String getString(Cell c) {
-        if (c == null) return null;
-        switch (c.getCellType()) {
-            case STRING:  return c.getStringCellValue();
-            case NUMERIC:
-                if (DateUtil.isCellDateFormatted(c)) {
-                    return c.getDateCellValue().toString();
-                } else {
-                    return new DecimalFormat("#").format(c.getNumericCellValue());
-                }
-            case FORMULA: return c.getCellFormula();
-            case BOOLEAN: return Boolean.toString(c.getBooleanCellValue());
-            default:      return null;
+    /** Una fila de datos del CSV, o null si no trae un tracking válido */
+    private static CsvRow readCsvRow(CsvTokenizer row, TracksLayout l, DistritoTrie distritos, Fechas.Columna fechas) {
+        String cand = get(row, l.tracking);
+        String tracking = isValidTracking(cand) ? cand : null;
+        if (tracking == null) {
+            for (int i = 0; i < row.size(); i++) {
+                if (row.isBlank(i)) continue;
+                String t = findTrackingInText(row.get(i));
+                if (isValidTracking(t)) { tracking = t; break; }
+            }
         }
-    }
+        if (isBlank(tracking)) return null;
+        tracking = tracking.trim().toUpperCase(Locale.ROOT);
 
-    private static Date parseFecha(Cell c) {
-        if (c == null) return null;
-        if (c.getCellType() == CellType.NUMERIC && DateUtil.isCellDateFormatted(c)) {
-            return c.getDateCellValue();
-        }
-        String s = getString(c);
-        if (s == null) return null;
-        try {
-            SimpleDateFormat df1 = new SimpleDateFormat("dd/MM/yyyy");
-            SimpleDateFormat df2 = new SimpleDateFormat("yyyy-MM-dd");
-            df1.setLenient(false);
-            df2.setLenient(false);
-            return s.contains("/") ? df1.parse(s) : df2.parse(s);
-        } catch (Exception ignore) {
-            return null;
-        }
-    }
+        String nombre    = get(row, l.nombre);
+        String direccion = get(row, l.direccion);
+        String telefono  = get(row, l.telefono);
 
-    private Set<String> fetchExistentes(Set<String> trackings) {
-        Set<String> out = new HashSet<>();
-        if (trackings == null || trackings.isEmpty()) return out;
-        List<String> list = new ArrayList<>(trackings);
-        final int B = 800;
-        for (int i = 0; i < list.size(); i += B) {
-            List<String> slice = list.subList(i, Math.min(i + B, list.size()));
-            String placeholders = slice.stream().map(x -> "?").collect(Collectors.joining(","));
-            String sql = "SELECT tracking_code FROM paquetes WHERE tracking_code IN (" + placeholders + ")";
-            Object[] params = slice.toArray(new Object[0]);
-            List<String> found = jdbc.query(sql, params, (rs, rn) -> rs.getString(1));
-            out.addAll(found);
+        if (telefono != null) {
+            String t = telefono.replaceAll("[^\\d+]", "");
+            if (!t.startsWith("+") && (t.length() == 8 || (t.startsWith("506") && t.length()==11))) {
+                t = (t.length()==8) ? "+506"+t : "+"+t;
+            }
+            telefono = t;
         }
-        return out;
+
+        BigDecimal valor = parseDecimal(firstNonNull(get(row, l.valor), get(row, l.valorDeclarado)));
+        String contenido = get(row, l.contenido);
+        String statusRaw = get(row, l.status);
+        String fupdate   = get(row, l.fecha);
+
+        // Distrito (opcional, si el CSV lo trae)
+        DistritoTrie.Canon d = distritos.buscar(get(row, l.distrito));
+        String distritoCanon = (d == null) ? null : d.nombre();
+
+        Timestamp statusAt = isBlank(fupdate) ? null : fechas.parse(fupdate);
+        return new CsvRow(row.num() + 1L, tracking, nombre, direccion, telefono, valor, contenido, statusRaw, statusAt, distritoCanon);
     }
 
-    private static boolean rowHasTracking(Row row, Integer colTracking) {
-        if (row == null) return false;
-        if (colTracking != null) {
-            String val = getCellStr(row.getCell(colTracking));
-            if (!findAllTrackings(val).isEmpty()) return true;
-        }
-        StringBuilder sb = new StringBuilder();
-        for (Cell c : row) {
-            String v = getCellStr(c);
-            if (v != null) sb.append(v).append(' ');
+    /** Marca en el buffer los trackings del archivo que existen en BD (en trozos de IN) */
+    private void marcarExistentes(TracksBuffer filas) {
+        final int B = 800;
+        for (int i = 0; i < filas.trackings(); i += B) {
+            int to = Math.min(i + B, filas.trackings());
+            Object[] params = new Object[to - i];
+            for (int k = i; k < to; k++) params[k - i] = filas.tracking(k);
+            String placeholders = String.join(",", Collections.nCopies(params.length, "?"));
+            jdbc.query("SELECT tracking_code FROM paquetes WHERE tracking_code IN (" + placeholders + ")",
+                    rs -> { filas.marcarExistente(rs.getString(1)); }, params);
         }
-        return !findAllTrackings(sb.toString()).isEmpty();
     }
 
     // ===== Infra: asegurar placeholders =====
@@ -1,251 +1,281 @@
 package com.cargosfsr.inventario.services;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
-import java.util.regex.Pattern;
-
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.DateUtil;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.cargosfsr.inventario.model.Distrito;
-import com.cargosfsr.inventario.model.Paquete;
-import com.cargosfsr.inventario.model.Saco;
-import com.cargosfsr.inventario.repository.DistritoRepository;
-import com.cargosfsr.inventario.repository.PaqueteRepository;
-import com.cargosfsr.inventario.repository.SacoRepository;
-
+import com.cargosfsr.inventario.auth.CurrentUser;
+import com.cargosfsr.inventario.config.DbSession;
+import com.cargosfsr.inventario.importacion.DistritoTrie;
+import com.cargosfsr.inventario.importacion.ErrorReport;
+import com.cargosfsr.inventario.importacion.SheetCell;
+import com.cargosfsr.inventario.importacion.SheetRow;
+import com.cargosfsr.inventario.importacion.TabularSource;
+import com.cargosfsr.inventario.importacion.TrackingScanner;
+
+/**
+ * Re-ensacado por archivo "por grupos" (POST /api/import/marchamos): cada tracking pasa al
+ * marchamo (y opcionalmente al distrito) bajo el que aparece.
+ *
+ * Se aplica por conjuntos: ids de paquetes y sacos en trozos con IN, los sacos faltantes en un
+ * INSERT multi-fila y las reasignaciones como batch JDBC, en vez de find + save por paquete.
+ */
 @Service
 public class MarchamoUpdateService {
 
-    private final PaqueteRepository paquetes;
-    private final SacoRepository sacos;
-    private final DistritoRepository distritos;
+    private static final int IN_MAX = 800;      // placeholders por IN / filas por INSERT
+    private static final int BATCH = 1000;      // UPDATEs por batch
+
+    // los del patrón fijo de antes del diccionario: si no están activos en la BD siguen siendo
+    // distritos (inválidos), no trackings
+    private static final List<String> DISTRITOS_FIJOS = List.of("LA COLONIA", "JIMENEZ", "COLORADO", "LA RITA", "ROXANA");
 
-    public MarchamoUpdateService(PaqueteRepository paquetes, SacoRepository sacos, DistritoRepository distritos) {
-        this.paquetes = paquetes;
-        this.sacos = sacos;
+    private final JdbcTemplate jdbc;
+    private final CurrentUser currentUser;
+    private final ErrorReportService reportes;
+    private final DistritoDictionary distritos;
+    private final DbSession dbSession;
+
+    public MarchamoUpdateService(JdbcTemplate jdbc, CurrentUser currentUser, ErrorReportService reportes,
+                                 DistritoDictionary distritos, DbSession dbSession) {
+        this.jdbc = jdbc;
+        this.currentUser = currentUser;
+        this.reportes = reportes;
         this.distritos = distritos;
+        this.dbSession = dbSession;
     }
 
-    private static final Pattern TRACKING_P = Pattern.compile("^[A-Z0-9]{2,}$");
-    private static final Pattern MARCHAMO_P = Pattern.compile("^\\d{5,}$"); // ej 368749
-
-    // Solo acepta los distritos definidos (case-insensitive)
-    private static final Pattern DISTRITO_P = Pattern.compile(
-            "^(LA\\s*COLONIA|JIMENEZ|COLORADO|LA\\s*RITA|ROXANA)$",
-            Pattern.CASE_INSENSITIVE
-    );
+    // Tracking: [A-Z0-9]{2,}; marchamo: solo dígitos, 5+ (ej 368749). Ver TrackingScanner.
 
     @Transactional
+    @CacheEvict(cacheNames = { "inventario", "busquedas" }, allEntries = true)
     public Map<String,Object> actualizarMarchamos(MultipartFile file, boolean createMissingSacos, boolean updateDistrito) throws IOException {
-        // 1) Parsear archivo (xlsx o csv): tracking -> (marchamo, distrito opcional)
-        Map<String,Asignacion> map = esXlsx(file) ? parseXlsx(file) : parseCsvGrupos(file);
+        Path tmp = Files.createTempFile("marchamos-", ".tmp");
+        try {
+            file.transferTo(tmp);
+            return actualizarMarchamos(tmp, createMissingSacos, updateDistrito, currentUser.display());
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Desde un archivo ya guardado en disco, con actor explícito (import de un ZIP, sin request) */
+    @Transactional
+    @CacheEvict(cacheNames = { "inventario", "busquedas" }, allEntries = true)
+    public Map<String,Object> actualizarMarchamos(Path file, boolean createMissingSacos, boolean updateDistrito,
+                                                  String actor) throws IOException {
+        // 1) Parsear archivo (xlsx, xls o csv): tracking -> (marchamo, distrito opcional)
+        Map<String,Asignacion> map = parseGrupos(file, distritos.trie(), distritosNoValidos());
+
+        ErrorReport detalle = reportes.crear();
+        try {
+            Map<String,Object> out = aplicar(map, createMissingSacos, updateDistrito, actor, detalle);
+            reportes.publicar(detalle, out);
+            return out;
+        } catch (IOException | RuntimeException e) {
+            reportes.descartar(detalle);
+            throw e;
+        }
+    }
 
-        // 2) Aplicar en BD
-        int asignados = 0, creadosSacos = 0, paquetesNoEncontrados = 0, errores = 0, distritoNoExiste = 0;
-        List<Map<String,Object>> detalle = new ArrayList<>();
+    private Map<String,Object> aplicar(Map<String,Asignacion> map, boolean createMissingSacos, boolean updateDistrito,
+                                       String actor, ErrorReport detalle) {
+        // 2) Prefetch: paquetes, distritos y sacos del archivo
+        Map<String, Long> paqueteIds = idsPorClave("paquetes", "tracking_code", map.keySet());
+        Set<String> marchamos = new LinkedHashSet<>();
+        for (var e : map.entrySet()) {
+            if (paqueteIds.containsKey(e.getKey()) && e.getValue().marchamo != null) marchamos.add(e.getValue().marchamo);
+        }
+        Map<String, Long> sacoIds = idsPorClave("sacos", "marchamo", marchamos);
+
+        int creadosSacos = 0;
+        if (createMissingSacos) {
+            List<String> faltantes = marchamos.stream().filter(m -> !sacoIds.containsKey(m)).toList();
+            creadosSacos = insertSacos(faltantes);
+            sacoIds.putAll(idsPorClave("sacos", "marchamo", faltantes));
+        }
 
+        // 3) Decidir por tracking (mismas reglas y mensajes que el find + save por paquete)
+        int asignados = 0, paquetesNoEncontrados = 0, errores = 0, distritoNoExiste = 0;
+        List<Object[]> updates = new ArrayList<>();
         for (var e : map.entrySet()) {
             String tracking = e.getKey();
             Asignacion a = e.getValue();
+            Long paqueteId = paqueteIds.get(tracking);
+            if (paqueteId == null) {
+                paquetesNoEncontrados++;
+                detalle.add(a.fila, tracking, "Paquete no existe");
+                continue;
+            }
 
-            try {
-                Paquete p = paquetes.findByTrackingCode(tracking).orElse(null);
-                if (p == null) {
-                    paquetesNoEncontrados++;
-                    detalle.add(Map.of("tracking", tracking, "error", "Paquete no existe"));
-                    continue;
-                }
+            // Distrito (opcional); se aplica aunque el saco falle, como hacía la entidad modificada
+            Long distritoId = (updateDistrito && a.distrito != null) ? a.distrito.id() : null;
+            if (updateDistrito && a.distritoInvalido != null) {
+                distritoNoExiste++;
+                detalle.add(a.fila, tracking, "Distrito inválido o inactivo: " + a.distritoInvalido);
+            }
 
-                // Distrito (opcional)
-                if (updateDistrito && a.distritoNombre != null) {
-                    String canon = canonicalDistrito(a.distritoNombre);
-                    if (canon == null) {
-                        distritoNoExiste++;
-                        detalle.add(Map.of("tracking", tracking, "warning", "Distrito inválido: " + a.distritoNombre));
-                    } else {
-                        Distrito d = distritos.findByNombre(canon).orElse(null);
-                        if (d == null) {
-                            distritoNoExiste++;
-                            detalle.add(Map.of("tracking", tracking, "warning", "Distrito no existe en BD: " + canon));
-                        } else {
-                            p.setDistrito(d);
-                        }
-                    }
-                }
+            // Saco / marchamo (obligatorio)
+            Long sacoId = null;
+            if (a.marchamo == null || a.marchamo.isBlank()) {
+                errores++;
+                detalle.add(a.fila, tracking, "Sin marchamo en asignacion");
+            } else if ((sacoId = sacoIds.get(a.marchamo)) == null) {
+                errores++;
+                detalle.add(a.fila, tracking, "Saco no existe: " + a.marchamo);
+            } else {
+                asignados++;
+            }
 
-                // Saco / marchamo (obligatorio)
-                if (a.marchamo == null || a.marchamo.isBlank()) {
-                    errores++;
-                    detalle.add(Map.of("tracking", tracking, "error", "Sin marchamo en asignacion"));
-                    continue;
-                }
+            if (sacoId != null || distritoId != null) updates.add(new Object[] { sacoId, distritoId, actor, paqueteId });
+        }
 
-                Saco s = sacos.findByMarchamo(a.marchamo).orElse(null);
-                if (s == null) {
-                    if (!createMissingSacos) {
-                        errores++;
-                        detalle.add(Map.of("tracking", tracking, "error", "Saco no existe: " + a.marchamo));
-                        continue;
-                    }
-                    s = new Saco();
-                    s.setMarchamo(a.marchamo);
-                    s = sacos.save(s);
-                    creadosSacos++;
-                }
+        // 4) Reasignaciones en batch
+        dbSession.actor(actor);
+        for (int i = 0; i < updates.size(); i += BATCH) {
+            jdbc.batchUpdate(
+                "UPDATE paquetes SET saco_id = COALESCE(?, saco_id), distrito_id = COALESCE(?, distrito_id), " +
+                "cambio_en_sistema_por = ? WHERE id = ?",
+                updates.subList(i, Math.min(i + BATCH, updates.size())));
+        }
 
-                p.setSaco(s);
-                paquetes.save(p);
-                asignados++;
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("asignados", asignados);
+        out.put("sacos_creados", creadosSacos);
+        out.put("paquetes_no_encontrados", paquetesNoEncontrados);
+        out.put("distritos_invalidos_o_inexistentes", distritoNoExiste);
+        out.put("rechazados", errores);
+        out.put("actor", actor);
+        return out;
+    }
 
-            } catch (Exception ex) {
-                errores++;
-                detalle.add(Map.of("tracking", tracking, "error", ex.getMessage()));
-            }
+    /** clave -> id de {@code tabla} para las claves dadas (en trozos de IN) */
+    private Map<String, Long> idsPorClave(String tabla, String columna, Collection<String> claves) {
+        Map<String, Long> out = new HashMap<>();
+        List<String> list = new ArrayList<>(claves);
+        for (int i = 0; i < list.size(); i += IN_MAX) {
+            List<String> slice = list.subList(i, Math.min(i + IN_MAX, list.size()));
+            String placeholders = slice.stream().map(x -> "?").collect(Collectors.joining(","));
+            jdbc.query("SELECT id, " + columna + " FROM " + tabla + " WHERE " + columna + " IN (" + placeholders + ")",
+                    rs -> { out.put(rs.getString(2).toUpperCase(Locale.ROOT), rs.getLong(1)); },
+                    slice.toArray());
         }
+        return out;
+    }
 
-        return Map.of(
-            "asignados", asignados,
-            "sacos_creados", creadosSacos,
-            "paquetes_no_encontrados", paquetesNoEncontrados,
-            "distritos_invalidos_o_inexistentes", distritoNoExiste,
-            "errores", errores,
-            "detalle", detalle
-        );
+    /** INSERT multi-fila de los sacos faltantes; devuelve cuántos se crearon */
+    private int insertSacos(List<String> marchamos) {
+        int creados = 0;
+        for (int i = 0; i < marchamos.size(); i += IN_MAX) {
+            List<String> slice = marchamos.subList(i, Math.min(i + IN_MAX, marchamos.size()));
+            String values = slice.stream().map(x -> "(?)").collect(Collectors.joining(","));
+            creados += jdbc.update("INSERT IGNORE INTO sacos(marchamo) VALUES " + values, slice.toArray());
+        }
+        return creados;
+    }
+
+    /**
+     * Lo que en el archivo es un distrito pero no se puede asignar: distritos inactivos (y sus
+     * alias) y los nombres fijos de antes que no estén activos. Se consulta en cada import.
+     */
+    private DistritoTrie distritosNoValidos() {
+        List<Map.Entry<String, DistritoTrie.Canon>> claves = new ArrayList<>();
+        jdbc.query("SELECT id, nombre FROM distritos WHERE activo = 0", rs -> {
+            claves.add(Map.entry(rs.getString("nombre"), new DistritoTrie.Canon(rs.getLong("id"), rs.getString("nombre"))));
+        });
+        jdbc.query(
+            "SELECT a.alias, d.id, d.nombre FROM distrito_alias a JOIN distritos d ON d.id = a.distrito_id WHERE d.activo = 0",
+            rs -> {
+                claves.add(Map.entry(rs.getString("alias"), new DistritoTrie.Canon(rs.getLong("id"), rs.getString("nombre"))));
+            });
+        for (String n : DISTRITOS_FIJOS) claves.add(Map.entry(n, new DistritoTrie.Canon(0, n)));
+        return new DistritoTrie(claves);
     }
 
     // ====== Parseos ======
 
-    /** XLSX: escanea todas las celdas; cuando ve un marchamo o distrito lo guarda como contexto;
-     * cualquier celda que parezca tracking se asigna al marchamo/distrito vigentes hasta que cambien. */
-    private Map<String,Asignacion> parseXlsx(MultipartFile file) throws IOException {
+    /**
+     * Archivo "por grupos" (XLSX/XLS o CSV), leído en streaming: escanea todas las celdas; cuando ve
+     * un marchamo o distrito lo guarda como contexto; cualquier celda que parezca tracking se asigna
+     * al marchamo/distrito vigentes hasta que cambien. El contexto se reinicia en cada hoja.
+     * Un distrito de {@code noValidos} (que no esté en {@code distritos}) también es contexto: sus
+     * trackings quedan con el distrito inválido, no se toma por tracking.
+     */
+    private Map<String,Asignacion> parseGrupos(Path file, DistritoTrie distritos, DistritoTrie noValidos) throws IOException {
         Map<String,Asignacion> out = new LinkedHashMap<>();
-        try (InputStream in = file.getInputStream();
-             Workbook wb = new XSSFWorkbook(in)) {
-
-            for (int si = 0; si < wb.getNumberOfSheets(); si++) {
-                Sheet sh = wb.getSheetAt(si);
-                String currentMarchamo = null;
-                String currentDistrito = null;
+        try (TabularSource src = TabularSource.open(file, ',', false)) {
+            src.readAll(new TabularSource.RowHandler() {
+                String currentMarchamo;
+                DistritoTrie.Canon currentDistrito;
+                String currentInvalido;     // texto del distrito no válido vigente
+
+                @Override
+                public void onSheet(String name) {
+                    currentMarchamo = null;
+                    currentDistrito = null;
+                    currentInvalido = null;
+                }
 
-                for (Row row : sh) {
-                    for (Cell cell : row) {
+                @Override
+                public boolean onRow(SheetRow row) {
+                    for (SheetCell cell : row.cells()) {
                         String txt = cellToString(cell).trim();
                         if (txt.isEmpty()) continue;
 
-                        if (MARCHAMO_P.matcher(txt).matches()) {
+                        if (TrackingScanner.isDigits(txt, 5)) {
                             currentMarchamo = txt;
                             continue;
                         }
-                        if (DISTRITO_P.matcher(txt).matches()) {
-                            currentDistrito = txt;
+                        DistritoTrie.Canon d = distritos.exacto(txt);
+                        if (d != null) {
+                            currentDistrito = d;
+                            currentInvalido = null;
                             continue;
                         }
-                        if (TRACKING_P.matcher(txt).matches()) {
-                            out.put(txt.toUpperCase(Locale.ROOT), new Asignacion(currentMarchamo, currentDistrito));
+                        if (noValidos.exacto(txt) != null) {
+                            currentDistrito = null;
+                            currentInvalido = txt;
+                            continue;
+                        }
+                        if (TrackingScanner.isUpperAlnum(txt, 2)) {
+                            out.put(txt.toUpperCase(Locale.ROOT),
+                                    new Asignacion(currentMarchamo, currentDistrito, currentInvalido, row.num() + 1));
                         }
                     }
+                    return true;
                 }
-            }
-        }
-        return out;
-    }
-
-    /** CSV en “formato por grupos”: cualquier columna puede traer marchamo o distrito. */
-    private Map<String,Asignacion> parseCsvGrupos(MultipartFile file) throws IOException {
-        Map<String,Asignacion> out = new LinkedHashMap<>();
-        Charset cs = sniffLatin1(file) ? Charset.forName("ISO-8859-1") : StandardCharsets.UTF_8;
-
-        try (var br = new BufferedReader(new InputStreamReader(file.getInputStream(), cs));
-             var parser = CSVParser.parse(br, CSVFormat.DEFAULT)) {
-
-            String currentMarchamo = null;
-            String currentDistrito = null;
-
-            for (CSVRecord r : parser) {
-                for (String raw : r) {
-                    String txt = (raw == null) ? "" : raw.trim();
-                    if (txt.isEmpty()) continue;
-
-                    if (MARCHAMO_P.matcher(txt).matches()) {
-                        currentMarchamo = txt;
-                        continue;
-                    }
-                    if (DISTRITO_P.matcher(txt).matches()) {
-                        currentDistrito = txt;
-                        continue;
-                    }
-                    if (TRACKING_P.matcher(txt).matches()) {
-                        out.put(txt.toUpperCase(Locale.ROOT), new Asignacion(currentMarchamo, currentDistrito));
-                    }
-                }
-            }
+            });
         }
         return out;
     }
 
     // ====== helpers ======
-    private static boolean esXlsx(MultipartFile f) {
-        String n = Optional.ofNullable(f.getOriginalFilename()).orElse("").toLowerCase(Locale.ROOT);
-        return n.endsWith(".xlsx") || n.endsWith(".xlsm");
-    }
-
-    private static boolean sniffLatin1(MultipartFile file) {
-        try {
-            byte[] buf = file.getBytes();
-            String tryUtf = new String(buf, StandardCharsets.UTF_8);
-            return tryUtf.contains("\uFFFD");
-        } catch (IOException e) {
-            return false;
-        }
-    }
-
-    private static String cellToString(Cell c) {
+    private static String cellToString(SheetCell c) {
         if (c == null) return "";
-        return switch (c.getCellType()) {
-            case STRING -> c.getStringCellValue();
-            case NUMERIC -> (DateUtil.isCellDateFormatted(c) ? c.getDateCellValue().toString()
-                    : String.valueOf((long) c.getNumericCellValue()));
-            case BOOLEAN -> String.valueOf(c.getBooleanCellValue());
-            case FORMULA -> c.getCellFormula();
+        return switch (c.type()) {
+            case STRING -> c.text();
+            case NUMERIC -> (c.isDateFormatted() ? c.dateString() : Long.toString(c.longValue()));
+            case BOOLEAN -> String.valueOf(c.bool());
+            case FORMULA -> c.formula();
             default -> "";
         };
     }
 
-    /** Normaliza a los nombres EXACTOS que existen en la BD. */
-    private static String canonicalDistrito(String raw) {
-        if (raw == null) return null;
-        String t = raw.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
-
-        return switch (t) {
-            case "la colonia" -> "La colonia";
-            case "jimenez" -> "Jimenez";
-            case "colorado" -> "Colorado";
-            case "la rita" -> "La Rita";
-            case "roxana" -> "Roxana";
-            default -> null;
-        };
-    }
-
-    private record Asignacion(String marchamo, String distritoNombre) {}
+    private record Asignacion(String marchamo, DistritoTrie.Canon distrito, String distritoInvalido, long fila) {}
 }
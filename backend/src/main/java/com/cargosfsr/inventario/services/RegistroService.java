@@ -4,7 +4,6 @@ import java.time.Instant;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Pattern;
 
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
@@ -12,6 +11,8 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import com.cargosfsr.inventario.auth.CurrentUser;
+import com.cargosfsr.inventario.config.DbSession;
+import com.cargosfsr.inventario.importacion.TrackingScanner;
 import com.cargosfsr.inventario.model.Distrito;
 import com.cargosfsr.inventario.model.Paquete;
 import com.cargosfsr.inventario.model.Saco;
@@ -21,35 +22,28 @@ import com.cargosfsr.inventario.repository.PaqueteEstadoHistorialRepository;
 import com.cargosfsr.inventario.repository.PaqueteRepository;
 import com.cargosfsr.inventario.repository.SacoRepository;
 
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
-
 @Service
 public class RegistroService {
 
-    // Acepta CR123, HZCR1, HZCR123456, etc.
-    private static final Pattern TRACKING_PATTERN =
-            Pattern.compile("^(HZCR|CR)\\d+$", Pattern.CASE_INSENSITIVE);
-
     private final PaqueteRepository paquetes;
     private final SacoRepository sacos;
     private final DistritoRepository distritos;
     private final PaqueteEstadoHistorialRepository historial;
     private final CurrentUser currentUser;
-
-    @PersistenceContext
-    private EntityManager em;
+    private final DbSession dbSession;
 
     public RegistroService(PaqueteRepository paquetes,
                            SacoRepository sacos,
                            DistritoRepository distritos,
                            PaqueteEstadoHistorialRepository historial,
-                           CurrentUser currentUser) {
+                           CurrentUser currentUser,
+                           DbSession dbSession) {
         this.paquetes = paquetes;
         this.sacos = sacos;
         this.distritos = distritos;
         this.historial = historial;
         this.currentUser = currentUser;
+        this.dbSession = dbSession;
     }
 
     private String actor() { return currentUser.display(); }
@@ -62,14 +56,6 @@ public class RegistroService {
         if (!cond) throw new IllegalArgumentException(msg);
     }
 
-    /** Inicializa la sesión SQL con TZ CR y el usuario para triggers */
-    private void initDbSession(String who) {
-        em.createNativeQuery("SET time_zone = '-06:00'").executeUpdate();
-        em.createNativeQuery("SET @changed_by := :who")
-          .setParameter("who", who)
-          .executeUpdate();
-    }
-
     @Transactional
     public Map<String, Object> preregistrar(String tracking,
                                             String marchamo,
@@ -84,7 +70,8 @@ public class RegistroService {
         final String m = marchamo.trim();
         final String dname = distritoNombre.trim();
 
-        require(TRACKING_PATTERN.matcher(t).matches(),
+        // Acepta CR123, HZCR1, HZCR123456, etc.
+        require(TrackingScanner.isHzcr(t),
                 "tracking inválido: debe iniciar con HZCR o CR seguido de dígitos");
 
         if (paquetes.findByTrackingCode(t).isPresent()) {
@@ -114,20 +101,10 @@ public class RegistroService {
         p.setLastStateChangeAt(now);
 
         try {
-            initDbSession(actor());
-            paquetes.save(p); // trigger AFTER INSERT insertará historial (CREACION)
-
-            // Ajuste de hora en BD: mover -6h (DB hace la conversión)
-            em.createNativeQuery("""
-                UPDATE paquetes
-                   SET received_at = CASE WHEN received_at IS NOT NULL
-                                          THEN DATE_SUB(received_at, INTERVAL 6 HOUR)
-                                          ELSE received_at END,
-                       last_state_change_at = DATE_SUB(last_state_change_at, INTERVAL 6 HOUR)
-                 WHERE id = :id
-            """).setParameter("id", p.getId())
-              .executeUpdate();
-
+            dbSession.actor(actor());
+            // received_at / last_state_change_at salen ya en hora CR (HoraCostaRicaConverter).
+            // trigger AFTER INSERT insertará historial (CREACION)
+            paquetes.save(p);
         } catch (DataIntegrityViolationException ex) {
             String msg = ex.getMessage();
             if (msg != null && msg.toLowerCase().contains("uk_paquetes_tracking")) {
@@ -208,7 +185,7 @@ public class RegistroService {
             );
         }
 
-        initDbSession(actor());
+        dbSession.actor(actor());
 
         java.util.List<Paquete> existentes = paquetes.findByTrackingCodeIn(trackings);
         java.util.Set<String> existentesSet = existentes.stream()
@@ -0,0 +1,101 @@
+package com.cargosfsr.inventario.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.cargosfsr.inventario.importacion.StatusExternoMatcher;
+import com.cargosfsr.inventario.model.enums.DevolucionSubtipo;
+import com.cargosfsr.inventario.model.enums.PaqueteEstado;
+
+/**
+ * Reglas de status externo (tabla status_externo_reglas, ver ImportSchema) compiladas en un
+ * {@link StatusExternoMatcher} compartido por el import de tracks y EstadoService.
+ *
+ * Se compilan en el primer uso. Cada {@link #RECHEQUEO_NS} se compara una firma barata de la
+ * tabla (filas, última modificación, suma de ids) y, si cambió, se recompila: editar la tabla
+ * no requiere reiniciar. {@link #recargar()} fuerza la recarga (endpoint de admin).
+ */
+@Service
+public class StatusExternoReglas {
+
+    private static final long RECHEQUEO_NS = 30_000_000_000L;
+
+    private final JdbcTemplate jdbc;
+
+    private volatile StatusExternoMatcher matcher;
+    private volatile String firma;
+    private volatile long revisadoEn;
+
+    public StatusExternoReglas(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Matcher vigente (recompilado si la tabla cambió desde la última revisión) */
+    public StatusExternoMatcher matcher() {
+        StatusExternoMatcher m = matcher;
+        if (m != null && System.nanoTime() - revisadoEn < RECHEQUEO_NS) return m;
+        synchronized (this) {
+            if (matcher == null || System.nanoTime() - revisadoEn >= RECHEQUEO_NS) {
+                String f = leerFirma();
+                if (matcher == null || !Objects.equals(f, firma)) compilar(f);
+                revisadoEn = System.nanoTime();
+            }
+            return matcher;
+        }
+    }
+
+    public StatusExternoMatcher.Clasificacion clasificar(String status) {
+        return matcher().clasificar(status);
+    }
+
+    /** Recompila ya; devuelve cuántas reglas activas quedaron */
+    public synchronized int recargar() {
+        compilar(leerFirma());
+        revisadoEn = System.nanoTime();
+        return matcher.reglas();
+    }
+
+    private void compilar(String f) {
+        List<StatusExternoMatcher.Regla> reglas = new ArrayList<>();
+        jdbc.query(
+            "SELECT id, patron, modo, clase, estado, subtipo, prioridad FROM status_externo_reglas " +
+            " WHERE activo = 1 ORDER BY prioridad, id",
+            rs -> {
+                long id = rs.getLong("id");
+                String modo = rs.getString("modo");
+                if (!"CONTIENE".equalsIgnoreCase(modo) && !"EMPIEZA".equalsIgnoreCase(modo)) {
+                    throw new IllegalArgumentException("Regla " + id + ": modo inválido (" + modo + ")");
+                }
+                reglas.add(new StatusExternoMatcher.Regla(
+                    rs.getString("patron"),
+                    "EMPIEZA".equalsIgnoreCase(modo),
+                    enumDe(StatusExternoMatcher.Clase.class, rs.getString("clase"), id, "clase"),
+                    enumDe(PaqueteEstado.class, rs.getString("estado"), id, "estado"),
+                    enumDe(DevolucionSubtipo.class, rs.getString("subtipo"), id, "subtipo"),
+                    rs.getInt("prioridad")));
+            });
+        matcher = new StatusExternoMatcher(reglas);
+        firma = f;
+    }
+
+    private String leerFirma() {
+        return jdbc.queryForObject(
+            "SELECT CONCAT(COUNT(*), '/', COALESCE(MAX(actualizado_en), ''), '/', COALESCE(SUM(id), 0)) " +
+            "  FROM status_externo_reglas",
+            String.class);
+    }
+
+    private static <E extends Enum<E>> E enumDe(Class<E> tipo, String v, long id, String campo) {
+        if (v == null || v.isBlank()) return null;
+        try {
+            return Enum.valueOf(tipo, v.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Regla " + id + ": " + campo + " inválido (" + v + ")");
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.cargosfsr.inventario.services;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.cargosfsr.inventario.importacion.StatusExternoMatcher;
+import com.cargosfsr.inventario.model.enums.DevolucionSubtipo;
+import com.cargosfsr.inventario.model.enums.PaqueteEstado;
+
+/**
+ * Deja en paquetes el estado/subtipo que dice la regla de status_externo_reglas, después de
+ * sp_aplicar_status_externo (que guarda el status y tiene su propio mapeo fijo). Si el SP ya dejó
+ * ese estado, u otro de la misma clase (p. ej. ENTREGADO_..._2DO_INTENTO para una regla ENTREGADO),
+ * no se escribe nada; si no, la transición va como en EstadoService: estado, fechas, subtipo e
+ * historial. Una regla sin estado (así vienen las sembradas) solo clasifica y el estado queda como
+ * lo dejó el SP.
+ *
+ * Por conjunto de filas: un SELECT ... FOR UPDATE, un batch de UPDATEs (solo las que difieren) y
+ * el historial en un INSERT multi-fila. Necesita la transacción del caller.
+ */
+final class StatusExternoTransiciones {
+
+    private static final String MOTIVO = "Status externo";
+    private static final int IN_MAX = 800;
+    private static final int HISTORIAL_POR_INSERT = 500;
+
+    /** Un status aplicado; {@code at} = cuándo, en hora CR (como HoraCostaRicaConverter) */
+    record Fila(String tracking, StatusExternoMatcher.Clasificacion regla, LocalDateTime at) { }
+
+    private final JdbcTemplate jdbc;
+
+    StatusExternoTransiciones(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Aplica las reglas a las filas dadas (un tracking a lo sumo una vez) */
+    void aplicar(List<Fila> filas, String actor) {
+        Map<String, Fila> porTracking = new LinkedHashMap<>();
+        for (Fila f : filas) {
+            if (f.regla().estado() != null) porTracking.put(f.tracking().toUpperCase(Locale.ROOT), f);
+        }
+        if (porTracking.isEmpty()) return;
+
+        // tracking -> {id, estado, subtipo} tal como los dejó el SP
+        Map<String, Object[]> actuales = new HashMap<>();
+        List<String> trackings = new ArrayList<>(porTracking.keySet());
+        for (int i = 0; i < trackings.size(); i += IN_MAX) {
+            List<String> slice = trackings.subList(i, Math.min(i + IN_MAX, trackings.size()));
+            jdbc.query("SELECT id, tracking_code, estado, devolucion_subtipo FROM paquetes WHERE tracking_code IN (" +
+                       slice.stream().map(x -> "?").collect(Collectors.joining(",")) + ") FOR UPDATE",
+                rs -> {
+                    actuales.put(rs.getString("tracking_code").toUpperCase(Locale.ROOT), new Object[] {
+                        rs.getLong("id"), rs.getString("estado"), rs.getString("devolucion_subtipo") });
+                },
+                slice.toArray());
+        }
+
+        Map<String, List<Object[]>> updates = new LinkedHashMap<>();   // SQL -> args
+        List<Object[]> hist = new ArrayList<>();
+        for (Map.Entry<String, Fila> e : porTracking.entrySet()) {
+            Object[] actual = actuales.get(e.getKey());
+            if (actual == null) continue;
+            long id = (Long) actual[0];
+            String antes = (String) actual[1];
+            Fila f = e.getValue();
+            PaqueteEstado nuevo = f.regla().estado();
+            boolean cambia = !nuevo.name().equals(antes) && !deLaClase(f.regla().clase(), antes);
+
+            DevolucionSubtipo sub = null;
+            if (nuevo == PaqueteEstado.NO_ENTREGABLE) {
+                sub = f.regla().subtipo();
+                if (sub == null && cambia) sub = DevolucionSubtipo.FUERA_DE_RUTA;
+            }
+            boolean cambiaSub = sub != null && !sub.name().equals(actual[2]);
+            if (!cambia && !cambiaSub) continue;
+
+            if (!cambia) {
+                updates.computeIfAbsent("UPDATE paquetes SET devolucion_subtipo = ?, cambio_en_sistema_por = ? WHERE id = ?",
+                        k -> new ArrayList<>()).add(new Object[] { sub.name(), actor, id });
+                continue;
+            }
+            String set = "UPDATE paquetes SET estado = ?, last_state_change_at = ?, cambio_en_sistema_por = ?";
+            List<Object> args = new ArrayList<>(List.of(nuevo.name(), f.at(), actor));
+            if (nuevo == PaqueteEstado.ENTREGADO_A_TRANSPORTISTA_LOCAL
+                    || nuevo == PaqueteEstado.ENTREGADO_A_TRANSPORTISTA_LOCAL_2DO_INTENTO) {
+                set += ", delivered_at = ?";
+                args.add(f.at());
+            } else if (nuevo == PaqueteEstado.NO_ENTREGABLE) {
+                set += ", returned_at = ?, devolucion_subtipo = ?";
+                args.add(f.at());
+                args.add(sub.name());
+            }
+            args.add(id);
+            updates.computeIfAbsent(set + " WHERE id = ?", k -> new ArrayList<>()).add(args.toArray());
+            hist.add(new Object[] { id, antes, nuevo.name(), f.at(), MOTIVO, actor });
+        }
+
+        updates.forEach(jdbc::batchUpdate);
+        for (int i = 0; i < hist.size(); i += HISTORIAL_POR_INSERT) {
+            List<Object[]> slice = hist.subList(i, Math.min(i + HISTORIAL_POR_INSERT, hist.size()));
+            jdbc.update(
+                "INSERT INTO paquete_estado_historial(paquete_id, estado_from, estado_to, changed_at, motivo, changed_by) VALUES " +
+                slice.stream().map(x -> "(?, ?, ?, ?, ?, ?)").collect(Collectors.joining(",")),
+                slice.stream().flatMap(Arrays::stream).toArray());
+        }
+    }
+
+    /** ¿El estado que dejó el SP ya es de la clase de la regla? */
+    private static boolean deLaClase(StatusExternoMatcher.Clase clase, String estado) {
+        return switch (clase) {
+            case ENTREGADO -> PaqueteEstado.ENTREGADO_A_TRANSPORTISTA_LOCAL.name().equals(estado)
+                    || PaqueteEstado.ENTREGADO_A_TRANSPORTISTA_LOCAL_2DO_INTENTO.name().equals(estado);
+            case DEVOLUCION -> PaqueteEstado.NO_ENTREGABLE.name().equals(estado);
+            case OTRO -> false;
+        };
+    }
+}
@@ -0,0 +1,287 @@
+package com.cargosfsr.inventario.services;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.cargosfsr.inventario.importacion.ErrorReport;
+import com.cargosfsr.inventario.importacion.ImportProgress;
+import com.cargosfsr.inventario.importacion.StatusExternoMatcher;
+import com.cargosfsr.inventario.model.HoraCostaRicaConverter;
+import com.cargosfsr.inventario.model.enums.PaqueteEstado;
+
+/**
+ * Aplica las filas del CSV de tracks por tramos en vez de fila por fila.
+ *
+ * Por tramo: un SELECT con el distrito actual de los paquetes que vienen sin distrito, un batch
+ * JDBC de sp_upsert_paquete_base, otro de sp_aplicar_status_externo, el estado/subtipo de las
+ * reglas de status externo (StatusExternoTransiciones) y un solo UPDATE de cambio_en_sistema_por.
+ * Un tracking repetido cierra el tramo, así cada fila ve lo que dejaron las anteriores del mismo
+ * tracking (igual que el loop fila por fila).
+ *
+ * Cada tramo corre dentro de un SAVEPOINT: si un batch falla, el tramo se deshace y se repite
+ * fila por fila, de modo que los errores y contadores por fila son los mismos de siempre. Un
+ * deadlock o lock wait (PessimisticLockingFailureException) no es error de fila: se propaga.
+ * Necesita la conexión de la transacción del caller.
+ */
+class TracksApplier {
+
+    private static final int FILAS_POR_TRAMO = 500;
+    private static final String SAVEPOINT = "import_tracks";
+    private static final String DISTRITO_PENDIENTE = "PENDIENTE";
+
+    private static final String SQL_UPSERT = "CALL sp_upsert_paquete_base(?,?,?,?,?,?,?)";
+    private static final String SQL_STATUS = "CALL sp_aplicar_status_externo(?,?,?,?)";
+    private static final String SIN_RESUMEN = "no aparece en vw_paquete_resumen";
+
+    int entregados, devoluciones, actualizados, noExistentes, rechazados;
+    String fallo;   // motivo si sus filas no se aplicaron (ver rechazarTodas)
+
+    private final JdbcTemplate jdbc;
+    private final String actor;
+    private final StatusExternoMatcher clasificador;
+    private final TracksBuffer filas;
+    private final ErrorReport errores;
+    private final ImportProgress progress;
+    private final StatusExternoTransiciones transiciones;
+    private boolean pendienteAsegurado;
+
+    TracksApplier(JdbcTemplate jdbc, String actor, StatusExternoMatcher clasificador,
+                  TracksBuffer filas, ErrorReport errores, ImportProgress progress) {
+        this.jdbc = jdbc;
+        this.actor = actor;
+        this.clasificador = clasificador;
+        this.filas = filas;
+        this.errores = errores;
+        this.progress = progress;
+        this.transiciones = new StatusExternoTransiciones(jdbc);
+    }
+
+    /** Aplica las filas dadas (índices del buffer, en orden de archivo; requiere @changed_by ya puesto) */
+    void apply(int[] indices) {
+        List<ImportService.CsvRow> tramo = new ArrayList<>(FILAS_POR_TRAMO);
+        Set<String> enTramo = new HashSet<>();
+        for (int i : indices) {
+            ImportService.CsvRow f = filas.fila(i);
+            if (tramo.size() == FILAS_POR_TRAMO || enTramo.contains(f.tracking)) {
+                applyTramo(tramo);
+                tramo.clear();
+                enTramo.clear();
+            }
+            tramo.add(f);
+            if (filas.existe(f.tracking)) enTramo.add(f.tracking);
+        }
+        applyTramo(tramo);
+    }
+
+    /** Filas que no se aplicaron (su transacción se deshizo): todas rechazadas con el mismo motivo */
+    void rechazarTodas(int[] indices, String motivo) {
+        fallo = motivo;
+        for (int i : indices) {
+            ImportService.CsvRow f = filas.fila(i);
+            rechazados++;
+            errores.add(f.recNo, f.tracking, motivo);
+            progress.errors(1);
+        }
+    }
+
+    private void applyTramo(List<ImportService.CsvRow> tramo) {
+        if (tramo.isEmpty()) return;
+        String[] errorPorFila = new String[tramo.size()];
+        List<ImportService.CsvRow> existentesTramo = new ArrayList<>(tramo.size());
+        for (ImportService.CsvRow f : tramo) {
+            if (filas.existe(f.tracking)) existentesTramo.add(f);
+        }
+        Map<String, String> distritos = distritosParaSP(existentesTramo);
+
+        List<ImportService.CsvRow> aplicar = new ArrayList<>(existentesTramo.size());
+        for (int i = 0; i < tramo.size(); i++) {
+            ImportService.CsvRow f = tramo.get(i);
+            if (!filas.existe(f.tracking)) continue;
+            if (distritos.containsKey(f.tracking)) aplicar.add(f);
+            else errorPorFila[i] = SIN_RESUMEN; // sin fila en la vista no hay distrito que mandar al SP
+        }
+        if (!aplicar.isEmpty()) {
+            jdbc.execute("SAVEPOINT " + SAVEPOINT);
+            boolean ok;
+            try {
+                applyBatch(aplicar, distritos);
+                ok = true;
+            } catch (PessimisticLockingFailureException e) {
+                // deadlock / lock wait: MySQL ya pudo deshacer la transacción entera (y el savepoint);
+                // fila por fila no tiene sentido y el ROLLBACK TO taparía la causa
+                throw e;
+            } catch (RuntimeException e) {
+                ok = false;
+            }
+            if (ok) {
+                jdbc.execute("RELEASE SAVEPOINT " + SAVEPOINT);
+            } else {
+                jdbc.execute("ROLLBACK TO SAVEPOINT " + SAVEPOINT);
+                for (int i = 0; i < tramo.size(); i++) {
+                    ImportService.CsvRow f = tramo.get(i);
+                    if (filas.existe(f.tracking) && errorPorFila[i] == null) {
+                        errorPorFila[i] = applyFila(f, distritos);
+                    }
+                }
+            }
+        }
+
+        // contadores y errores en orden de archivo
+        for (int i = 0; i < tramo.size(); i++) {
+            ImportService.CsvRow f = tramo.get(i);
+            progress.applied(1);
+            if (!filas.existe(f.tracking)) {
+                noExistentes++; errores.add(f.recNo, f.tracking, "no existe en BD, saltado.");
+                progress.errors(1);
+            } else if (errorPorFila[i] != null) {
+                rechazados++; errores.add(f.recNo, f.tracking, errorPorFila[i]);
+                progress.errors(1);
+            } else {
+                contar(f);
+            }
+        }
+    }
+
+    private void applyBatch(List<ImportService.CsvRow> aplicar, Map<String, String> distritos) {
+        List<Object[]> upserts = new ArrayList<>(aplicar.size());
+        List<Object[]> statuses = new ArrayList<>();
+        List<StatusExternoTransiciones.Fila> reglas = new ArrayList<>();
+        for (ImportService.CsvRow f : aplicar) {
+            upserts.add(upsertArgs(f, distritos));
+            String status = opt(f.statusRaw);
+            if (!status.isEmpty()) {
+                statuses.add(new Object[] { f.tracking, status, f.statusAt, actor });
+                reglas.add(filaRegla(f, status));
+            }
+        }
+        jdbc.batchUpdate(SQL_UPSERT, upserts);
+        if (!statuses.isEmpty()) {
+            jdbc.batchUpdate(SQL_STATUS, statuses);
+            transiciones.aplicar(reglas, actor);
+        }
+
+        String placeholders = aplicar.stream().map(x -> "?").collect(Collectors.joining(","));
+        List<Object> args = new ArrayList<>(aplicar.size() + 1);
+        args.add(actor);
+        for (ImportService.CsvRow f : aplicar) args.add(f.tracking);
+        jdbc.update("UPDATE paquetes SET cambio_en_sistema_por=? WHERE tracking_code IN (" + placeholders + ")",
+                args.toArray());
+    }
+
+    /** Camino fila por fila (tramo con error): devuelve el mensaje de error o null */
+    private String applyFila(ImportService.CsvRow f, Map<String, String> distritos) {
+        try {
+            jdbc.update(SQL_UPSERT, upsertArgs(f, distritos));
+            String status = opt(f.statusRaw);
+            if (!status.isEmpty()) {
+                jdbc.update(SQL_STATUS, f.tracking, status, f.statusAt, actor);
+                transiciones.aplicar(List.of(filaRegla(f, status)), actor);
+            }
+            jdbc.update("UPDATE paquetes SET cambio_en_sistema_por=? WHERE tracking_code=?", actor, f.tracking);
+            return null;
+        } catch (PessimisticLockingFailureException ex) {
+            throw ex;   // no es un error de la fila: la transacción ya no sirve
+        } catch (Exception ex) {
+            return ex.getMessage();
+        }
+    }
+
+    /** El status de la fila con su regla; sin fecha en el CSV, ahora */
+    private StatusExternoTransiciones.Fila filaRegla(ImportService.CsvRow f, String status) {
+        LocalDateTime at = LocalDateTime.ofInstant(f.statusAt != null ? f.statusAt.toInstant() : Instant.now(),
+                HoraCostaRicaConverter.ZONA);
+        return new StatusExternoTransiciones.Fila(f.tracking, clasificador.clasificar(status), at);
+    }
+
+    private Object[] upsertArgs(ImportService.CsvRow f, Map<String, String> distritos) {
+        return new Object[] {
+            f.tracking,
+            emptyToNull(f.nombre),
+            emptyToNull(f.direccion),
+            emptyToNull(f.telefono),
+            f.valor,
+            emptyToNull(f.contenido),
+            distritos.get(f.tracking)
+        };
+    }
+
+    /**
+     * Distrito a mandar al SP por tracking: el del CSV o, si no trae, el actual del paquete
+     * (leído en un solo SELECT para el tramo); en último caso PENDIENTE. Los trackings que no
+     * aparecen en vw_paquete_resumen quedan fuera del mapa.
+     */
+    private Map<String, String> distritosParaSP(List<ImportService.CsvRow> aplicar) {
+        Map<String, String> out = new HashMap<>();
+        List<String> sinDistrito = new ArrayList<>();
+        for (ImportService.CsvRow f : aplicar) {
+            if (ImportService.notBlank(f.distritoCanon)) out.put(f.tracking, f.distritoCanon);
+            else sinDistrito.add(f.tracking);
+        }
+        if (!sinDistrito.isEmpty()) {
+            String placeholders = sinDistrito.stream().map(x -> "?").collect(Collectors.joining(","));
+            Map<String, String> actuales = new HashMap<>();
+            jdbc.query("SELECT tracking_code, distrito_nombre FROM vw_paquete_resumen WHERE tracking_code IN (" + placeholders + ")",
+                    rs -> {
+                        String t = rs.getString(1).toUpperCase(Locale.ROOT);
+                        String d = rs.getString(2);
+                        if (!actuales.containsKey(t)) actuales.put(t, d);
+                    },
+                    sinDistrito.toArray());
+            for (String t : sinDistrito) {
+                if (!actuales.containsKey(t)) continue; // sin fila en la vista: la fila se rechaza
+                String d = actuales.get(t);
+                if (!ImportService.notBlank(d)) {
+                    // fallback extremo (no debería ocurrir porque distrito_id es NOT NULL)
+                    d = DISTRITO_PENDIENTE;
+                    asegurarPendiente();
+                }
+                out.put(t, d);
+            }
+        }
+        return out;
+    }
+
+    private void asegurarPendiente() {
+        if (pendienteAsegurado) return;
+        jdbc.update("INSERT IGNORE INTO distritos(nombre, activo) VALUES (?, 1)", DISTRITO_PENDIENTE);
+        pendienteAsegurado = true;
+    }
+
+    private void contar(ImportService.CsvRow f) {
+        String status = opt(f.statusRaw);
+        if (status.isEmpty()) {
+            actualizados++;
+            return;
+        }
+        // con estado en la regla se cuenta por ese estado, que es el que quedó en paquetes
+        StatusExternoMatcher.Clasificacion c = clasificador.clasificar(status);
+        PaqueteEstado e = c.estado();
+        if (e == PaqueteEstado.NO_ENTREGABLE || (e == null && c.clase() == StatusExternoMatcher.Clase.DEVOLUCION)) {
+            devoluciones++;
+        } else if (e == PaqueteEstado.ENTREGADO_A_TRANSPORTISTA_LOCAL || e == PaqueteEstado.ENTREGADO_A_TRANSPORTISTA_LOCAL_2DO_INTENTO
+                || (e == null && c.clase() == StatusExternoMatcher.Clase.ENTREGADO)) {
+            entregados++;
+        } else {
+            actualizados++;
+        }
+    }
+
+    private static String opt(String s) {
+        return s == null ? "" : s.trim();
+    }
+
+    private static String emptyToNull(String s) {
+        return ImportService.notBlank(s) ? s : null;
+    }
+}
@@ -0,0 +1,142 @@
+package com.cargosfsr.inventario.services;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.cargosfsr.inventario.importacion.StringIndex;
+
+/**
+ * Filas del CSV de tracks guardadas por columnas mientras se lee el archivo, en vez de una lista
+ * de CsvRow con sus propios String, BigDecimal y Timestamp por fila.
+ *
+ * Los textos van a diccionarios ({@link StringIndex}) y cada fila guarda solo el id: nombres,
+ * direcciones, status y distritos se repiten mucho y quedan una vez en memoria. El valor se
+ * guarda como entero sin escala + escala y la fecha como epoch ms, en arrays primitivos.
+ * El tracking tiene su propio índice (tracking -> id de tracking distinto), que sirve para
+ * deduplicar y para marcar cuáles existen en BD.
+ *
+ * {@link #fila(int)} arma el CsvRow de una fila cuando se aplica (de a un tramo).
+ */
+final class TracksBuffer {
+
+    private static final int NULO = -1;
+    private static final long SIN_LONG = Long.MIN_VALUE;
+
+    private final StringIndex trackings = new StringIndex(1024);
+    private final StringIndex textos = new StringIndex(1024);   // nombre, dirección, teléfono, contenido, status, distrito
+    private final BitSet existentes = new BitSet();
+
+    private int size;
+    private int[] recNo = new int[1024];                // número de fila (commons-csv)
+    private int[] tracking = new int[1024];
+    private int[] nombre = new int[1024], direccion = new int[1024], telefono = new int[1024],
+                  contenido = new int[1024], status = new int[1024], distrito = new int[1024];
+    private long[] valor = new long[1024];             // sin escala; SIN_LONG = null
+    private byte[] escala = new byte[1024];
+    private long[] statusAt = new long[1024];          // epoch ms; SIN_LONG = null
+    private final Map<Integer, BigDecimal> valoresGrandes = new HashMap<>();   // los que no entran en long
+
+    void add(ImportService.CsvRow f) {
+        if (size == recNo.length) crecer();
+        int i = size++;
+        recNo[i] = Math.toIntExact(f.recNo);
+        tracking[i] = trackings.add(f.tracking);
+        nombre[i] = texto(f.nombre);
+        direccion[i] = texto(f.direccion);
+        telefono[i] = texto(f.telefono);
+        contenido[i] = texto(f.contenido);
+        status[i] = texto(f.statusRaw);
+        distrito[i] = texto(f.distritoCanon);
+        statusAt[i] = (f.statusAt == null) ? SIN_LONG : f.statusAt.getTime();
+        guardarValor(i, f.valor);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Trackings distintos del archivo */
+    int trackings() {
+        return trackings.size();
+    }
+
+    String tracking(int trackingId) {
+        return trackings.get(trackingId);
+    }
+
+    /** Tracking de la fila i (sin armar el CsvRow) */
+    String trackingDeFila(int i) {
+        return trackings.get(tracking[i]);
+    }
+
+    /** Marca el tracking como existente en BD (trackings que no vienen en el archivo se ignoran) */
+    void marcarExistente(String tracking) {
+        int id = trackings.find(tracking);
+        if (id >= 0) existentes.set(id);
+    }
+
+    boolean existe(String tracking) {
+        int id = trackings.find(tracking);
+        return id >= 0 && existentes.get(id);
+    }
+
+    ImportService.CsvRow fila(int i) {
+        long ms = statusAt[i];
+        return new ImportService.CsvRow(recNo[i], trackings.get(tracking[i]),
+                texto(nombre[i]), texto(direccion[i]), texto(telefono[i]), valor(i),
+                texto(contenido[i]), texto(status[i]), ms == SIN_LONG ? null : new Timestamp(ms),
+                texto(distrito[i]));
+    }
+
+    private int texto(String s) {
+        return (s == null) ? NULO : textos.add(s);
+    }
+
+    private String texto(int id) {
+        return (id == NULO) ? null : textos.get(id);
+    }
+
+    private void guardarValor(int i, BigDecimal v) {
+        if (v == null) {
+            valor[i] = SIN_LONG;
+            return;
+        }
+        BigInteger u = v.unscaledValue();
+        if (u.bitLength() < 63 && v.scale() >= Byte.MIN_VALUE && v.scale() <= Byte.MAX_VALUE) {
+            valor[i] = u.longValue();
+            escala[i] = (byte) v.scale();
+        } else {
+            valor[i] = SIN_LONG;
+            valoresGrandes.put(i, v);
+        }
+    }
+
+    private BigDecimal valor(int i) {
+        if (valor[i] == SIN_LONG) return valoresGrandes.get(i);
+        return BigDecimal.valueOf(valor[i], escala[i]);
+    }
+
+    private void crecer() {
+        int n = recNo.length + (recNo.length >> 1);
+        recNo = Arrays.copyOf(recNo, n);
+        tracking = Arrays.copyOf(tracking, n);
+        nombre = Arrays.copyOf(nombre, n);
+        direccion = Arrays.copyOf(direccion, n);
+        telefono = Arrays.copyOf(telefono, n);
+        contenido = Arrays.copyOf(contenido, n);
+        status = Arrays.copyOf(status, n);
+        distrito = Arrays.copyOf(distrito, n);
+        valor = Arrays.copyOf(valor, n);
+        escala = Arrays.copyOf(escala, n);
+        statusAt = Arrays.copyOf(statusAt, n);
+    }
+}
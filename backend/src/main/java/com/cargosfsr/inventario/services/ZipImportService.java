@@ -0,0 +1,235 @@
+package com.cargosfsr.inventario.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.cargosfsr.inventario.auth.CurrentUser;
+import com.cargosfsr.inventario.importacion.ImportProgress;
+
+/**
+ * Import de varios archivos en un ZIP (POST /api/import/zip).
+ *
+ * Las entradas se leen en streaming y cada una se copia a su archivo temporal (nada queda en
+ * memoria). Cada archivo va a su import según nombre y contenido:
+ * <ul>
+ *   <li>nombre con "marchamo" → re-ensacado "por grupos" (MarchamoUpdateService)</li>
+ *   <li>Excel (.xlsx/.xls, por contenido) → consolidado</li>
+ *   <li>.csv / .txt → tracks</li>
+ *   <li>lo demás se ignora y se informa</li>
+ * </ul>
+ * Orden: primero los consolidados, después los re-ensacados y al final los tracks; cada grupo
+ * uno tras otro en el orden del ZIP. Igual que subirlos de a uno: el último gana, y dos archivos
+ * de tracks con los mismos trackings no se pisan en paralelo (el paralelismo de tracks es por
+ * tracking dentro de cada archivo, ver import.tracks.particiones). Cada archivo corre en sus
+ * propias transacciones: si uno falla, se informa su error y los demás siguen.
+ */
+@Service
+public class ZipImportService {
+
+    public static final int MAX_ARCHIVOS = 200;
+
+    enum Tipo { CONSOLIDADO, MARCHAMOS, TRACKS }
+
+    private record Entrada(String nombre, Path file, Tipo tipo) { }
+
+    private final ImportService importService;
+    private final MarchamoUpdateService marchamos;
+    private final CurrentUser currentUser;
+    private final long maxBytes;
+
+    public ZipImportService(ImportService importService, MarchamoUpdateService marchamos, CurrentUser currentUser,
+                            @Value("${import.uploads.max-bytes:2147483648}") long maxBytes) {
+        this.importService = importService;
+        this.marchamos = marchamos;
+        this.currentUser = currentUser;
+        this.maxBytes = maxBytes;
+    }
+
+    public Map<String, Object> importar(MultipartFile file, boolean delta) throws IOException {
+        Path tmp = Files.createTempFile("zip-", ".zip");
+        try {
+            file.transferTo(tmp);
+            return importar(tmp, currentUser.display(), delta);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * @param delta consolidados en modo delta (ver ImportService.importarConsolidado)
+     */
+    public Map<String, Object> importar(Path zip, String actor, boolean delta) throws IOException {
+        long t0 = System.currentTimeMillis();
+        List<Object> orden = new ArrayList<>();          // Entrada o nombre ignorado, en orden del ZIP
+        List<Entrada> entradas = new ArrayList<>();
+        try {
+            extraer(zip, orden, entradas);
+            if (entradas.isEmpty()) throw new IllegalArgumentException("El ZIP no trae archivos CSV ni Excel");
+
+            Map<Entrada, Map<String, Object>> res = new LinkedHashMap<>();
+            for (Entrada e : entradas) {
+                if (e.tipo() == Tipo.CONSOLIDADO) res.put(e, correr(e, actor, delta));
+            }
+            for (Entrada e : entradas) {
+                if (e.tipo() == Tipo.MARCHAMOS) res.put(e, correr(e, actor, delta));
+            }
+            for (Entrada e : entradas) {
+                if (e.tipo() == Tipo.TRACKS) res.put(e, correr(e, actor, delta));
+            }
+
+            return resumen(orden, res, actor, t0);
+        } finally {
+            for (Entrada e : entradas) Files.deleteIfExists(e.file());
+        }
+    }
+
+    /** Copia cada entrada a un temporal y la clasifica; las que no se importan quedan como nombre */
+    private void extraer(Path zip, List<Object> orden, List<Entrada> entradas) throws IOException {
+        long total = 0;
+        try (ZipInputStream zin = new ZipInputStream(Files.newInputStream(zip))) {
+            ZipEntry ze;
+            while ((ze = zin.getNextEntry()) != null) {
+                String ruta = ze.getName();
+                String nombre = ruta.substring(ruta.lastIndexOf('/') + 1);
+                if (ze.isDirectory() || ruta.startsWith("__MACOSX/") || nombre.isEmpty() || nombre.startsWith(".")) {
+                    continue;
+                }
+                if (entradas.size() == MAX_ARCHIVOS) {
+                    throw new IllegalArgumentException("El ZIP trae más de " + MAX_ARCHIVOS + " archivos");
+                }
+                Path tmp = Files.createTempFile("zip-", ".tmp");
+                Tipo tipo;
+                try {
+                    total += copiar(zin, tmp, maxBytes - total);
+                    tipo = clasificar(nombre, tmp);
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(tmp);
+                    throw e;
+                }
+                if (tipo == null) {
+                    Files.deleteIfExists(tmp);
+                    orden.add(nombre);
+                } else {
+                    Entrada e = new Entrada(nombre, tmp, tipo);
+                    entradas.add(e);
+                    orden.add(e);
+                }
+            }
+        }
+    }
+
+    private long copiar(InputStream in, Path dest, long restante) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        long n = 0;
+        try (OutputStream out = Files.newOutputStream(dest)) {
+            int r;
+            while ((r = in.read(buf)) > 0) {
+                n += r;
+                if (n > restante) {
+                    throw new IllegalArgumentException("El ZIP descomprimido supera " + maxBytes + " bytes");
+                }
+                out.write(buf, 0, r);
+            }
+        }
+        return n;
+    }
+
+    private static Tipo clasificar(String nombre, Path file) throws IOException {
+        String n = nombre.toLowerCase(Locale.ROOT);
+        if (n.contains("marchamo")) return Tipo.MARCHAMOS;
+        FileMagic magic;
+        try (InputStream is = FileMagic.prepareToCheckMagic(Files.newInputStream(file))) {
+            magic = FileMagic.valueOf(is);
+        }
+        if (magic == FileMagic.OOXML || magic == FileMagic.OLE2) return Tipo.CONSOLIDADO;
+        if (n.endsWith(".csv") || n.endsWith(".txt")) return Tipo.TRACKS;
+        return null;
+    }
+
+    private Map<String, Object> correr(Entrada e, String actor, boolean delta) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("archivo", e.nombre());
+        out.put("tipo", e.tipo().name());
+        try {
+            Map<String, Object> r = switch (e.tipo()) {
+                case CONSOLIDADO -> importService.importarConsolidado(e.file(), actor, delta, ImportProgress.NONE);
+                case MARCHAMOS -> marchamos.actualizarMarchamos(e.file(), true, true, actor);
+                case TRACKS -> importService.importarPaquetesCSV(e.file(), actor, ImportProgress.NONE);
+            };
+            out.put("ok", true);
+            out.put("resultado", r);
+        } catch (Exception ex) {
+            out.put("ok", false);
+            out.put("error", rootMessage(ex));
+        }
+        return out;
+    }
+
+    // contadores que se suman por tipo en el resumen
+    private static final Map<Tipo, List<String>> SUMABLES = Map.of(
+        Tipo.CONSOLIDADO, List.of("total", "con_marcadores", "sin_marcadores"),
+        Tipo.MARCHAMOS, List.of("asignados", "sacos_creados", "paquetes_no_encontrados", "rechazados"),
+        Tipo.TRACKS, List.of("total", "entregados", "devoluciones", "actualizados", "no_existentes", "rechazados"));
+
+    private static Map<String, Object> resumen(List<Object> orden, Map<Entrada, Map<String, Object>> res,
+                                               String actor, long t0) {
+        List<Map<String, Object>> archivos = new ArrayList<>(orden.size());
+        Map<String, Map<String, Long>> totales = new LinkedHashMap<>();
+        int ignorados = 0, conError = 0;
+        for (Object o : orden) {
+            if (o instanceof Entrada e) {
+                Map<String, Object> r = res.get(e);
+                archivos.add(r);
+                if (!Boolean.TRUE.equals(r.get("ok"))) {
+                    conError++;
+                    continue;
+                }
+                Map<String, Long> t = totales.computeIfAbsent(e.tipo().name().toLowerCase(Locale.ROOT), k -> new LinkedHashMap<>());
+                Map<?, ?> detalle = (Map<?, ?>) r.get("resultado");
+                for (String k : SUMABLES.get(e.tipo())) {
+                    if (detalle.get(k) instanceof Number n) t.merge(k, n.longValue(), Long::sum);
+                }
+            } else {
+                ignorados++;
+                Map<String, Object> r = new LinkedHashMap<>();
+                r.put("archivo", o);
+                r.put("tipo", "IGNORADO");
+                archivos.add(r);
+            }
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("archivos", archivos);
+        out.put("totales", totales);
+        out.put("ignorados", ignorados);
+        out.put("con_error", conError);
+        out.put("ms", System.currentTimeMillis() - t0);
+        out.put("actor", actor);
+        return out;
+    }
+
+    private static String rootMessage(Throwable t) {
+        Throwable cur = t;
+        String last = t.getMessage();
+        while (cur.getCause() != null) {
+            cur = cur.getCause();
+            if (StringUtils.hasText(cur.getMessage())) last = cur.getMessage();
+        }
+        return last;
+    }
+}
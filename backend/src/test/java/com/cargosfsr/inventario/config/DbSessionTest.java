@@ -0,0 +1,91 @@
+package com.cargosfsr.inventario.config;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * El SET @changed_by va solo cuando la conexión física tiene otro usuario, y al terminar la
+ * transacción la conexión vuelve al pool con @changed_by = NULL.
+ */
+class DbSessionTest {
+
+    private final DataSource ds = mock(DataSource.class);
+    private final DbSession sesion = new DbSession(ds);
+
+    @Test
+    void soloCuandoCambiaElActor() throws Exception {
+        Connection a = conexion();
+        PreparedStatement ps = a.prepareStatement("SET @changed_by = ?");
+
+        transaccion(a, () -> {
+            sesion.actor("ana");    // SET
+            sesion.actor("ana");    // ya lo tiene
+            sesion.actor("luis");   // SET
+            sesion.actor(null);     // SET
+            sesion.actor(null);     // ya lo tiene
+        });
+        verify(ps, times(3)).execute();
+
+        transaccion(a, () -> sesion.actor(null));   // quedó en NULL: nada
+        verify(ps, times(3)).execute();
+    }
+
+    @Test
+    void vuelveANullAlTerminar() throws Exception {
+        Connection a = conexion();
+        Connection b = conexion();
+        PreparedStatement psA = a.prepareStatement("SET @changed_by = ?");
+        PreparedStatement psB = b.prepareStatement("SET @changed_by = ?");
+
+        transaccion(a, () -> sesion.actor("ana"));      // SET ana, al final SET NULL
+        verify(psA).setString(1, null);
+        verify(psA, times(2)).execute();
+
+        transaccion(b, () -> sesion.actor("ana"));      // otra conexión física: su propio SET y reset
+        verify(psB, times(2)).execute();
+
+        transaccion(a, () -> sesion.actor("luis"));     // SET luis, al final SET NULL
+        verify(psA, times(4)).execute();
+
+        sesion.actor("ana");                            // fuera de una transacción: nada
+        verify(psA, times(4)).execute();
+    }
+
+    /** Como el transaction manager: conexión ligada mientras corre, afterCompletion al final */
+    private void transaccion(Connection con, Runnable cuerpo) {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.bindResource(ds, new ConnectionHolder(con));
+        try {
+            cuerpo.run();
+            for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations()) {
+                s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.unbindResource(ds);
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static Connection conexion() throws Exception {
+        Connection con = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(con.unwrap(Connection.class)).thenReturn(con);
+        when(con.prepareStatement(any())).thenReturn(ps);
+        return con;
+    }
+}
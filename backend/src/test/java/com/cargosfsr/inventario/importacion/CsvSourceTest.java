@@ -0,0 +1,66 @@
+package com.cargosfsr.inventario.importacion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CsvSourceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void charsetSeDecideConLaMuestra() throws Exception {
+        Path utf8 = dir.resolve("utf8.csv");
+        Files.write(utf8, "TRACKING,DIRECCIÓN\nHZCR1,Cañas\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(StandardCharsets.UTF_8, CsvSource.detectCharset(utf8));
+
+        Path latin = dir.resolve("latin.csv");
+        Files.write(latin, "TRACKING,DIRECCIÓN\nHZCR1,Cañas\n".getBytes(Charset.forName("windows-1252")));
+        assertEquals(Charset.forName("windows-1252"), CsvSource.detectCharset(latin));
+
+        // 0x81 no existe en 1252: gana ISO-8859-1
+        Path iso = dir.resolve("iso.csv");
+        Files.write(iso, new byte[] { 'A', ',', (byte) 0xE9, (byte) 0x81, '\n' });
+        assertEquals(StandardCharsets.ISO_8859_1, CsvSource.detectCharset(iso));
+    }
+
+    @Test
+    void utf8ConFilasLatin1DespuesDeLaMuestra() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        buf.write("TRACKING,DIRECCIÓN\n".getBytes(StandardCharsets.UTF_8));
+        int filas = 0;
+        while (buf.size() < CsvSource.MUESTRA * 3) {
+            // "ñ" de 2 bytes cae en todos los cortes posibles del buffer
+            buf.write(("HZCR" + filas++ + ",Peñas " + "x".repeat(filas % 7) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        buf.write("UB1,Lim".getBytes(StandardCharsets.UTF_8));
+        buf.write(new byte[] { (byte) 0xF3, 'n', (byte) 0x81 });   // "Limón" en 1252 + byte sin definir
+        buf.write("\n".getBytes(StandardCharsets.UTF_8));
+        Path f = dir.resolve("mixto.csv");
+        Files.write(f, buf.toByteArray());
+
+        Charset cs = CsvSource.detectCharset(f);
+        assertEquals(StandardCharsets.UTF_8, cs);
+        List<String> dirs = new ArrayList<>();
+        try (CsvSource src = CsvSource.open(f, cs, (char) 0, false)) {
+            src.readAll(row -> {
+                dirs.add(row.cell(1).text());
+                return true;
+            });
+        }
+        assertEquals("DIRECCIÓN", dirs.get(0));
+        assertEquals(filas + 2, dirs.size());
+        for (int i = 1; i <= filas; i++) assertEquals("Peñas " + "x".repeat(i % 7), dirs.get(i));
+        assertEquals("Limón\u0081", dirs.get(filas + 1));
+    }
+}
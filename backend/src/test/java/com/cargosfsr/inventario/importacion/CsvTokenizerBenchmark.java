@@ -0,0 +1,146 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Lectura del CSV de tracks: commons-csv (CsvSource) con búsqueda de alias por fila en el mapa
+ * de cabecera, contra CsvTokenizer con las columnas resueltas una vez. Los dos arman los mismos
+ * campos que usa el import; el archivo trae además columnas que el import ignora.
+ *
+ * Correr: {@code mvn -Pbench test-compile exec:exec -Dbench=CsvTokenizer}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvTokenizerBenchmark {
+
+    // mismos alias que ImportService (campos de CsvRow)
+    private static final String[][] ALIAS = {
+        { "AEROTRACK", "COURIER_NUMBER", "AWB", "TRK_BAGNUM", "TRACKING", "TRACKING_NUMBER",
+          "NUMERO DE ENVIO", "NUMERO_DE_ENVIO", "CÓDIGO ENVÍO", "CODIGO ENVIO" },
+        { "CLIENT_NAME", "CONSIGNEE", "NOMBRE", "NAME" },
+        { "THIRDPARTY_ADDRESS", "DIRECCION", "DIRECCIÓN", "ADDRESS" },
+        { "THIRDPARTY_PHONE", "THIRDPARTY PHONE", "THIRD_PARTY_PHONE", "THIRD PARTY PHONE" },
+        { "MERCHANDISE_VALUE", "VALOR", "VALOR_MERCANCIA", "VALUE" },
+        { "DECLARED_VALUE" },
+        { "DESCRIPTION", "DESCRIPCION", "CONTENT_DESCRIPTION", "CONTENIDO" },
+        { "STATUS", "ESTADO" },
+        { "LAST_UPDATE", "FECHA", "LAST UPDATE", "FECHA ULTIMA ACTUALIZACION", "FECHA_ULTIMA_ACTUALIZACION" },
+        { "DISTRITO", "DISTRICT", "ZONA", "UBICACION", "UBICACIÓN", "MUEBLE" },
+    };
+
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        Random rnd = new Random(42);
+        String[] status = { "Entregado", "En tránsito a bodegas Aeropost", "Prueba de entrega", "Returned", "En ruta" };
+        StringBuilder sb = new StringBuilder(
+            "AEROTRACK,CLIENT_NAME,THIRDPARTY_ADDRESS,THIRDPARTY_PHONE,MERCHANDISE_VALUE,DESCRIPTION,STATUS," +
+            "LAST_UPDATE,SHIPPER,ORIGIN,WEIGHT,PIECES,LENGTH,WIDTH,HEIGHT,ACCOUNT,GATEWAY,NOTES\n");
+        for (int r = 0; r < 100_000; r++) {
+            sb.append("HZCR").append(100000000L + rnd.nextInt(900000000)).append(',')
+              .append("Cliente ").append(r % 997).append(" Peña,")
+              .append("\"Del súper 200 m norte, casa ").append(r % 50).append("\",")
+              .append("8888-").append(1000 + r % 9000).append(',')
+              .append(rnd.nextInt(300)).append('.').append(rnd.nextInt(100)).append(',')
+              .append("Ropa y accesorios,")
+              .append(status[rnd.nextInt(status.length)]).append(',')
+              .append("12/05/2024 14:").append(10 + r % 50).append(',')
+              .append("AMAZON.COM,MIA,").append(rnd.nextInt(20)).append(".5,1,30,20,10,CR")
+              .append(r % 5000).append(",SJO,\"Dejar con el guarda, \"\"portón negro\"\"\"\n");
+        }
+        file = Files.createTempFile("tracks-bench-", ".csv");
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void commonsCsv(Blackhole bh) throws IOException {
+        Map<String, Integer> header = new HashMap<>();
+        try (CsvSource src = CsvSource.open(file, StandardCharsets.UTF_8, (char) 0, true)) {
+            src.read(null, row -> {
+                if (row.num() == 0) {
+                    for (SheetCell c : row.cells()) header.put(c.text().toUpperCase(Locale.ROOT), c.col());
+                    return true;
+                }
+                for (String[] keys : ALIAS) bh.consume(get(row, header, keys));
+                return true;
+            });
+        }
+    }
+
+    @Benchmark
+    public void tokenizer(Blackhole bh) throws IOException {
+        try (CsvTokenizer csv = CsvTokenizer.open(file, StandardCharsets.UTF_8, (char) 0)) {
+            if (!csv.next()) return;
+            Map<String, Integer> header = new HashMap<>();
+            for (int i = 0; i < csv.size(); i++) header.put(csv.get(i).toUpperCase(Locale.ROOT), i);
+            int[][] cols = new int[ALIAS.length][];
+            for (int k = 0; k < ALIAS.length; k++) {
+                cols[k] = Arrays.stream(ALIAS[k]).map(header::get).filter(Objects::nonNull)
+                        .mapToInt(Integer::intValue).toArray();
+            }
+            while (csv.next()) {
+                for (int[] cs : cols) {
+                    String v = null;
+                    for (int c : cs) {
+                        if (!csv.isBlank(c)) { v = csv.get(c); break; }
+                    }
+                    bh.consume(v);
+                }
+            }
+        }
+    }
+
+    // igual a ImportService.get antes de CsvTokenizer
+    private static String get(SheetRow row, Map<String, Integer> header, String... keys) {
+        for (String k : keys) {
+            SheetCell c = row.cell(header.get(k.toUpperCase(Locale.ROOT)));
+            if (c != null && c.text() != null) {
+                String t = c.text().trim();
+                if (!t.isEmpty()) return t;
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CsvTokenizerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,107 @@
+package com.cargosfsr.inventario.importacion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Mismos registros y valores que CsvSource (commons-csv con trim), con buffers chicos para cortar en cualquier byte. */
+class CsvTokenizerTest {
+
+    @TempDir
+    Path dir;
+
+    private static final String[] PIEZAS = {
+        "HZCR123456789", "Cañas", "  Limón ", "\"con; separador\"", "\"con \"\"comillas\"\"\"", "\"multi\nlínea\"",
+        "", " ", "12,50", "\"\"", "\"  recortado  \"  ", "x\"y", "ñandú", "Entregado",
+    };
+
+    @Test
+    void igualQueCommonsCsv() throws Exception {
+        Random rnd = new Random(7);
+        for (Charset cs : new Charset[] { StandardCharsets.UTF_8, Charset.forName("windows-1252") }) {
+            for (String salto : new String[] { "\n", "\r\n", "\r" }) {
+                StringBuilder sb = new StringBuilder("AEROTRACK;DIRECCIÓN;STATUS;VALOR\n".replace("\n", salto));
+                for (int r = 0; r < 400; r++) {
+                    int campos = 1 + rnd.nextInt(5);
+                    for (int c = 0; c < campos; c++) {
+                        if (c > 0) sb.append(';');
+                        sb.append(PIEZAS[rnd.nextInt(PIEZAS.length)]);
+                    }
+                    sb.append(salto);
+                    if (rnd.nextInt(10) == 0) sb.append(salto);   // línea vacía
+                }
+                Path f = dir.resolve("t.csv");
+                Files.write(f, sb.toString().getBytes(cs));
+                for (int buffer : new int[] { 1, 7, 64, CsvTokenizer.BUFFER }) {
+                    assertEquals(commons(f, cs), tokenizer(f, cs, buffer), cs + " " + buffer);
+                }
+            }
+        }
+    }
+
+    @Test
+    void utf8ConBytesLatin1YBom() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        buf.write(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF });
+        buf.write("TRACKING,DIRECCIÓN\nHZCR1,Peñas\nUB1,Lim".getBytes(StandardCharsets.UTF_8));
+        buf.write(new byte[] { (byte) 0xF3, 'n', (byte) 0x81 });
+        Path f = dir.resolve("mixto.csv");
+        Files.write(f, buf.toByteArray());
+
+        List<List<String>> filas = tokenizer(f, StandardCharsets.UTF_8, 5);
+        assertEquals(List.of("TRACKING", "DIRECCIÓN"), filas.get(0));
+        assertEquals(List.of("HZCR1", "Peñas"), filas.get(1));
+        assertEquals(List.of("UB1", "Limón\u0081"), filas.get(2));
+    }
+
+    @Test
+    void comillasSinCerrar() throws Exception {
+        Path f = dir.resolve("mal.csv");
+        Files.write(f, "A;B\n1;\"abc\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> tokenizer(f, StandardCharsets.UTF_8, 4));
+        Files.write(f, "A;B\n1;\"abc\"x\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> tokenizer(f, StandardCharsets.UTF_8, 4));
+    }
+
+    private static List<List<String>> commons(Path f, Charset cs) throws IOException {
+        List<List<String>> out = new ArrayList<>();
+        try (CsvSource src = CsvSource.open(f, cs, (char) 0, true)) {
+            src.readAll(row -> {
+                assertEquals(out.size(), row.num());
+                List<String> vals = new ArrayList<>();
+                for (SheetCell c : row.cells()) vals.add(c.text());
+                out.add(vals);
+                return true;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return out;
+    }
+
+    private static List<List<String>> tokenizer(Path f, Charset cs, int buffer) throws IOException {
+        List<List<String>> out = new ArrayList<>();
+        try (CsvTokenizer t = CsvTokenizer.open(f, cs, (char) 0, buffer)) {
+            while (t.next()) {
+                assertEquals(out.size(), t.num());
+                List<String> vals = new ArrayList<>();
+                for (int i = 0; i < t.size(); i++) vals.add(t.get(i));
+                out.add(vals);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,87 @@
+package com.cargosfsr.inventario.importacion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.cargosfsr.inventario.importacion.DistritoTrie.Canon;
+
+/** Con los distritos de la BD, reconoce lo mismo que el canonDistrito fijo que reemplaza. */
+class DistritoTrieTest {
+
+    private static final List<Map.Entry<String, Canon>> BASE = List.of(
+        entrada("La colonia", 1), entrada("Jimenez", 2), entrada("Colorado", 3),
+        entrada("La Rita", 4), entrada("Roxana", 5), entrada("PENDIENTE", 6));
+
+    // con más de un distrito el fijo elegía por orden de los if y este por posición: se saltan
+    private static final String[] PIEZAS = {
+        "Distrito:", "LA  COLONIA", "la colonia", "JIMENEZ", "colorado", "La Rita", "roxana", "pendiente",
+        "Mueble 4", "casa", "norte", "la", "rita", "colo", "x", "", "12"
+    };
+
+    @Test
+    void igualAlCanonFijo() {
+        DistritoTrie t = new DistritoTrie(BASE);
+        Random rnd = new Random(7);
+        for (int n = 0; n < 50_000; n++) {
+            StringBuilder sb = new StringBuilder();
+            for (int k = rnd.nextInt(4); k >= 0; k--) {
+                sb.append(PIEZAS[rnd.nextInt(PIEZAS.length)]).append(rnd.nextBoolean() ? " " : "  \t");
+            }
+            String s = sb.toString();
+            if (distritosEn(s) > 1) continue;
+            Canon c = t.buscar(s);
+            assertEquals(legacy(s), c == null ? null : c.nombre(), s);
+        }
+    }
+
+    @Test
+    void aliasAcentosYBordes() {
+        List<Map.Entry<String, Canon>> claves = new ArrayList<>(BASE);
+        claves.add(Map.entry("Col.", new Canon(1, "La colonia")));
+        claves.add(Map.entry("Rita", new Canon(4, "La Rita")));
+        DistritoTrie t = new DistritoTrie(claves);
+
+        assertEquals("Jimenez", t.buscar("Distrito: JIMÉNEZ").nombre());
+        assertEquals("La colonia", t.buscar("entregar en col. centro").nombre());
+        assertEquals("La Rita", t.buscar("LA RITA").nombre());
+        assertEquals("La Rita", t.buscar("frente a la rita").nombre());   // el más largo desde el mismo inicio
+        assertNull(t.buscar("Roxanas"));
+        assertNull(t.buscar("coloradoX"));
+
+        assertEquals(5L, t.exacto("  roxana ").id());
+        assertEquals("La colonia", t.exacto("COL.").nombre());
+        assertNull(t.exacto("Distrito: Roxana"));
+        assertNull(t.exacto("Rox"));
+        assertNull(t.exacto(""));
+        assertEquals(6, t.distritos());
+    }
+
+    private static Map.Entry<String, Canon> entrada(String nombre, long id) {
+        return Map.entry(nombre, new Canon(id, nombre));
+    }
+
+    private static long distritosEn(String raw) {
+        String t = raw.replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return BASE.stream().filter(e -> t.contains(e.getKey().toLowerCase(Locale.ROOT))).count();
+    }
+
+    // ImportService.canonDistrito antes del diccionario
+    private static String legacy(String raw) {
+        String t = raw.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        if (t.contains("la colonia")) return "La colonia";
+        if (t.contains("jimenez")) return "Jimenez";
+        if (t.contains("colorado")) return "Colorado";
+        if (t.contains("la rita")) return "La Rita";
+        if (t.contains("roxana")) return "Roxana";
+        if (t.contains("pendiente")) return "PENDIENTE";
+        return null;
+    }
+}
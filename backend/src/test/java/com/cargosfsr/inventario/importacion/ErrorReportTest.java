@@ -0,0 +1,45 @@
+package com.cargosfsr.inventario.importacion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ErrorReportTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void mezclaParticionesEnOrdenDeFilaYMuestraElTextoDeSiempre() throws Exception {
+        ErrorReport a = ErrorReport.crear(dir), b = ErrorReport.crear(dir);
+        a.add(2, "HZCR1", "no existe en BD, saltado.");
+        a.add(9, "HZCR3", "Deadlock, \"reintente\"");
+        b.add(5, "HZCR2", "no existe en BD, saltado.");
+
+        ErrorReport r = ErrorReport.crear(dir);
+        r.add(7, null, "tracking inválido o vacío");
+        r.addOrdenado(List.of(a, b));
+        r.close();
+
+        assertEquals(4, r.total());
+        assertEquals(List.of(
+                "Fila 7: tracking inválido o vacío",
+                "Fila 2 (HZCR1): no existe en BD, saltado.",
+                "Fila 5 (HZCR2): no existe en BD, saltado.",
+                "Fila 9 (HZCR3): Deadlock, \"reintente\""), r.muestras());
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        r.writeTo(csv, true);
+        assertEquals("\uFEFFfila,tracking,motivo\r\n"
+                + "7,,tracking inválido o vacío\r\n"
+                + "2,HZCR1,\"no existe en BD, saltado.\"\r\n"
+                + "5,HZCR2,\"no existe en BD, saltado.\"\r\n"
+                + "9,HZCR3,\"Deadlock, \"\"reintente\"\"\"\r\n", csv.toString(StandardCharsets.UTF_8));
+    }
+}
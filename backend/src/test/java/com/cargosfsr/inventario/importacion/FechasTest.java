@@ -0,0 +1,47 @@
+package com.cargosfsr.inventario.importacion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/** Con el formato aprendido (o heredado de otro archivo) se parsea igual que con la lista completa. */
+class FechasTest {
+
+    private static final DateTimeFormatter[] FORMATOS = {
+        Fechas.DMY_HMS, Fechas.DMY_HM, Fechas.DMY, Fechas.YMD_HMS, Fechas.YMD
+    };
+
+    private static final String[] VALORES = {
+        "12/05/2024 14:10:33", "12/05/2024 14:10", "12/05/2024", "2024-05-12 14:10:33", "2024-05-12",
+        " 1/2/2024 3:04", "31/02/2024", "31/02/2024 10:00", "12/05/2024 14:10 PM", "2024-5-1 7:8:9 x",
+        "12/05/2024T14:10", "ayer", "", "  ", "29/02/2023", "29/02/2024 23:59:59"
+    };
+
+    @Test
+    void igualALaLista() {
+        Random rnd = new Random(3);
+        for (DateTimeFormatter inicial : new DateTimeFormatter[] { null, Fechas.DMY, Fechas.DMY_HM, Fechas.YMD }) {
+            Fechas.Columna col = new Fechas.Columna(inicial, FORMATOS);
+            for (int n = 0; n < 5_000; n++) {
+                String v = VALORES[rnd.nextInt(VALORES.length)];
+                assertEquals(Fechas.parse(v, FORMATOS), col.parse(v), v);
+            }
+        }
+    }
+
+    @Test
+    void aprendeElPrimeroQueDescribeElValorEntero() {
+        Fechas.Columna col = new Fechas.Columna(null, FORMATOS);
+        col.parse("12/05/2024 14:10 PM");      // DMY_HM con sobrante: no enseña nada
+        assertNull(col.formato());
+        col.parse("12/05/2024 14:10");
+        assertSame(Fechas.DMY_HM, col.formato());
+        col.parse("2024-05-12");
+        assertSame(Fechas.DMY_HM, col.formato());
+    }
+}
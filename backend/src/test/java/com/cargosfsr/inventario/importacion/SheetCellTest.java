@@ -0,0 +1,87 @@
+package com.cargosfsr.inventario.importacion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Timestamp;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+
+import org.apache.poi.ss.usermodel.CellType;
+import org.junit.jupiter.api.Test;
+
+/** Los accesores tipados y {@link Fechas} deben dar lo mismo que los formateadores por celda que reemplazan. */
+class SheetCellTest {
+
+    @Test
+    void integerTextIgualADecimalFormat() {
+        Random rnd = new Random(3);
+        double[] fijos = { 0, -0.0, 0.5, 1.5, 2.5, -2.5, -0.4, 1e15, 1e17 + 3, 123456789012345678.0,
+                           Long.MAX_VALUE, -1e20, 4.4e-9, 99999999999999.5 };
+        for (double d : fijos) assertIntegerText(d);
+        for (int n = 0; n < 200_000; n++) {
+            double d = switch (n % 4) {
+                case 0 -> rnd.nextInt(2_000_000) / 2.0 - 500_000;     // medios exactos
+                case 1 -> rnd.nextDouble() * Math.pow(10, rnd.nextInt(20));
+                case 2 -> -rnd.nextDouble() * Math.pow(10, rnd.nextInt(20));
+                default -> (double) rnd.nextLong();
+            };
+            assertIntegerText(d);
+        }
+    }
+
+    @Test
+    void fechasIgualAJavaUtilDate() {
+        Random rnd = new Random(5);
+        for (int n = 0; n < 50_000; n++) {
+            double serial = 1 + rnd.nextInt(80_000) + (n % 2 == 0 ? 0 : rnd.nextDouble());
+            SheetCell c = new SheetCell().set(0, CellType.NUMERIC, null, null, serial, false, true, n % 3 == 0, null);
+            assertEquals(new SimpleDateFormat("yyyy-MM-dd").format(c.dateValue()), c.isoDate());
+            assertEquals(c.dateValue().toString(), c.dateString());
+            assertEquals(new Timestamp(c.dateValue().getTime()), Timestamp.valueOf(c.localDateTime()));
+        }
+    }
+
+    @Test
+    void fechasDeTextoIgualASimpleDateFormat() {
+        String[] patrones = { "dd/MM/yyyy HH:mm:ss", "dd/MM/yyyy HH:mm", "dd/MM/yyyy", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd" };
+        Random rnd = new Random(9);
+        for (int n = 0; n < 100_000; n++) {
+            String s = fechaAlAzar(rnd);
+            assertEquals(legacy(s, patrones),
+                    Fechas.parse(s, Fechas.DMY_HMS, Fechas.DMY_HM, Fechas.DMY, Fechas.YMD_HMS, Fechas.YMD), s);
+        }
+    }
+
+    private static void assertIntegerText(double d) {
+        SheetCell c = new SheetCell().set(0, CellType.NUMERIC, null, null, d, false, false, false, null);
+        assertEquals(new DecimalFormat("#").format(d), c.integerText(), () -> Double.toString(d));
+    }
+
+    private static Timestamp legacy(String s, String[] patrones) {
+        for (String p : patrones) {
+            try {
+                SimpleDateFormat df = new SimpleDateFormat(p);
+                df.setLenient(false);
+                return new Timestamp(df.parse(s).getTime());
+            } catch (java.text.ParseException ignore) {}
+        }
+        return null;
+    }
+
+    private static String fechaAlAzar(Random rnd) {
+        int d = rnd.nextInt(33), m = rnd.nextInt(14), y = 2000 + rnd.nextInt(100);
+        String dd = (rnd.nextBoolean() ? String.format("%02d", d) : Integer.toString(d));
+        String mm = (rnd.nextBoolean() ? String.format("%02d", m) : Integer.toString(m));
+        String fecha = rnd.nextBoolean() ? dd + "/" + mm + "/" + y : y + "-" + mm + "-" + dd;
+        String hora = switch (rnd.nextInt(4)) {
+            case 0 -> "";
+            case 1 -> " " + rnd.nextInt(25) + ":" + rnd.nextInt(61);
+            case 2 -> " " + rnd.nextInt(25) + ":" + rnd.nextInt(61) + ":" + rnd.nextInt(61);
+            default -> "T10:00";
+        };
+        String lead = rnd.nextInt(5) == 0 ? "  " : "";
+        String trail = rnd.nextInt(5) == 0 ? " hrs" : "";
+        return lead + fecha + hora + trail;
+    }
+}
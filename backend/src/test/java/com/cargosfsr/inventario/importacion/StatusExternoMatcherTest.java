@@ -0,0 +1,85 @@
+package com.cargosfsr.inventario.importacion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.cargosfsr.inventario.importacion.StatusExternoMatcher.Clase;
+import com.cargosfsr.inventario.importacion.StatusExternoMatcher.Regla;
+
+/** Con las reglas sembradas en status_externo_reglas, clasifica igual que los if fijos que reemplaza. */
+class StatusExternoMatcherTest {
+
+    private static final List<Regla> BASE = List.of(
+        regla("transito a bodegas", false, Clase.DEVOLUCION, 10),
+        regla("devolucion", true, Clase.DEVOLUCION, 10),
+        regla("devuelto", true, Clase.DEVOLUCION, 10),
+        regla("almacenaje", true, Clase.DEVOLUCION, 10),
+        regla("in transit to warehouse", false, Clase.DEVOLUCION, 10),
+        regla("return", true, Clase.DEVOLUCION, 10),
+        regla("storage", true, Clase.DEVOLUCION, 10),
+        regla("prueba de entrega", false, Clase.ENTREGADO, 20),
+        regla("entregado", true, Clase.ENTREGADO, 20),
+        regla("en entrega", true, Clase.ENTREGADO, 20),
+        regla("delivered", true, Clase.ENTREGADO, 20),
+        regla("proof of delivery", false, Clase.ENTREGADO, 20));
+
+    private static final String[] PIEZAS = {
+        "En tránsito a bodegas Aeropost", "Devolución", "devoluciones", "DEVUELTO", "Almacenaje",
+        "in transit to warehouses", "Returned", "return", "storage", "Prueba de Entrega", "Entregado",
+        "en entrega", "Delivered", "proof of delivery", "push", "en ruta", "  ", "retorno", "entrega",
+        "ña", "Ó", "x", "ú", "de", " ", "a"
+    };
+
+    @Test
+    void igualAlClasificadorFijo() {
+        StatusExternoMatcher m = new StatusExternoMatcher(BASE);
+        Random rnd = new Random(11);
+        for (int n = 0; n < 100_000; n++) {
+            StringBuilder sb = new StringBuilder();
+            for (int k = rnd.nextInt(4); k >= 0; k--) sb.append(PIEZAS[rnd.nextInt(PIEZAS.length)]);
+            String s = sb.toString();
+            assertEquals(legacy(s), m.clasificar(s).clase(), s);
+        }
+    }
+
+    @Test
+    void prioridadYPrefijo() {
+        StatusExternoMatcher m = new StatusExternoMatcher(List.of(
+            regla("Entrega", false, Clase.ENTREGADO, 5),
+            regla("no entrega", false, Clase.DEVOLUCION, 1),
+            regla("abc", true, Clase.DEVOLUCION, 1)));
+        assertEquals(Clase.ENTREGADO, m.clasificar("Entrega fallida").clase());
+        assertEquals(Clase.DEVOLUCION, m.clasificar("NO ENTREGA").clase());
+        assertEquals(Clase.OTRO, m.clasificar("xabc").clase());
+        assertEquals(Clase.DEVOLUCION, m.clasificar(" abcabc").clase());
+        assertEquals(Clase.OTRO, m.clasificar(null).clase());
+    }
+
+    private static Regla regla(String p, boolean prefijo, Clase c, int prioridad) {
+        return new Regla(p, prefijo, c, null, null, prioridad);
+    }
+
+    private static Clase legacy(String status) {
+        String s = status.trim();
+        if (s.isEmpty()) return Clase.OTRO;
+        String norm = s.toLowerCase(Locale.ROOT).trim();
+        norm = norm.replace('í','i').replace('ó','o').replace('á','a')
+                   .replace('é','e').replace('ú','u').replace('ñ','n');
+        boolean isEntregado = norm.contains("prueba de entrega") || norm.startsWith("entregado")
+                || norm.startsWith("en entrega") || norm.startsWith("delivered")
+                || norm.contains("proof of delivery");
+        boolean isDevolucion = norm.contains("transito a bodegas") || norm.startsWith("devolucion")
+                || norm.startsWith("devoluciones") || norm.startsWith("devuelto")
+                || norm.startsWith("almacenaje") || norm.contains("in transit to warehouse")
+                || norm.contains("in transit to warehouses") || norm.startsWith("return")
+                || norm.startsWith("returned") || norm.startsWith("storage");
+        if (isDevolucion) return Clase.DEVOLUCION;
+        if (isEntregado) return Clase.ENTREGADO;
+        return Clase.OTRO;
+    }
+}
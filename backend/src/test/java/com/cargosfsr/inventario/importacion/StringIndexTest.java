@@ -0,0 +1,31 @@
+package com.cargosfsr.inventario.importacion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class StringIndexTest {
+
+    @Test
+    void idsDensosEnOrdenDeLlegada() {
+        StringIndex idx = new StringIndex(4);
+        Map<String, Integer> ref = new HashMap<>();
+        Random rnd = new Random(3);
+        for (int n = 0; n < 50_000; n++) {
+            String k = "HZCR" + rnd.nextInt(20_000);
+            int id = idx.add(k);
+            assertEquals(ref.computeIfAbsent(k, x -> ref.size()), id, k);
+        }
+        assertEquals(ref.size(), idx.size());
+        ref.forEach((k, id) -> {
+            assertEquals(id, idx.find(k));
+            assertEquals(k, idx.get(id));
+        });
+        assertEquals(-1, idx.find("UB1"));
+        assertEquals(-1, idx.find(null));
+    }
+}
@@ -0,0 +1,75 @@
+package com.cargosfsr.inventario.importacion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TabularSourceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void csvLatin1ConPuntoYComa() throws Exception {
+        Path f = dir.resolve("tracks.csv");
+        Files.write(f, "TRACKING;DIRECCIÓN\nHZCR123456; Cañas \n\nUB12345678;\n".getBytes(Charset.forName("windows-1252")));
+
+        List<String> filas = new ArrayList<>();
+        try (TabularSource src = TabularSource.open(f, (char) 0, true)) {
+            src.readAll(row -> {
+                StringBuilder sb = new StringBuilder().append(row.num()).append(':');
+                for (SheetCell c : row.cells()) sb.append('[').append(c.text()).append(']');
+                filas.add(sb.toString());
+                return true;
+            });
+        }
+        assertEquals(List.of("0:[TRACKING][DIRECCIÓN]", "1:[HZCR123456][Cañas]", "2:[UB12345678][]"), filas);
+    }
+
+    @Test
+    void xlsxTodasLasHojasConFilaReutilizada() throws Exception {
+        Path f = dir.resolve("grupos.xlsx");
+        try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(f)) {
+            XSSFSheet a = wb.createSheet("A");
+            a.createRow(0).createCell(0).setCellValue("368749");
+            a.createRow(2).createCell(1).setCellValue(12345678.0);
+            XSSFSheet b = wb.createSheet("B");
+            b.createRow(0).createCell(3).setCellValue("UB12345678");
+            wb.write(out);
+        }
+
+        List<String> vistos = new ArrayList<>();
+        List<SheetRow> copias = new ArrayList<>();
+        try (TabularSource src = TabularSource.open(f, (char) 0, false)) {
+            src.readAll(new TabularSource.RowHandler() {
+                @Override
+                public void onSheet(String name) {
+                    vistos.add("hoja " + name);
+                }
+
+                @Override
+                public boolean onRow(SheetRow row) {
+                    copias.add(row.copy());
+                    SheetCell c = row.cells().get(0);
+                    vistos.add(row.num() + "/" + c.col() + "=" + (c.isText() ? c.text() : c.integerText()));
+                    return true;
+                }
+            });
+        }
+        assertEquals(List.of("hoja A", "0/0=368749", "2/1=12345678", "hoja B", "0/3=UB12345678"), vistos);
+        // las copias no se pisan con las filas siguientes
+        assertEquals("368749", copias.get(0).cell(0).text());
+        assertEquals(null, copias.get(1).cell(0));
+        assertEquals(12345678L, copias.get(1).cell(1).longValue());
+    }
+}
@@ -0,0 +1,154 @@
+package com.cargosfsr.inventario.importacion;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * TrackingScanner vs las regex que reemplaza, sobre celdas parecidas a las del consolidado
+ * (trackings, marchamos, distritos, observaciones, números).
+ *
+ * Correr: {@code mvn -Pbench test-compile exec:exec -Dbench=TrackingScanner}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrackingScannerBenchmark {
+
+    private static final Pattern P_TRACK =
+            Pattern.compile("(?i)\\b(?!MUEBLE)(?!CAJA)(?!DISTRITO)[A-Z]{2,4}[A-Z0-9]{6,18}\\b");
+    private static final Pattern P_HZCR = Pattern.compile("(HZCR|CR)\\d+", Pattern.CASE_INSENSITIVE);
+
+    private String[] cells;
+    private String[][] rows;
+    private String pegado;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        String[] fijos = {
+            "LA COLONIA", "JIMENEZ", "Distrito: La Rita", "MUEBLE GRANDE 2", "CAJA 14",
+            "368749", "2024-05-12", "12.5", "", "Entregar en recepción", "Tel 8888-1234",
+        };
+        cells = new String[4096];
+        for (int i = 0; i < cells.length; i++) {
+            int k = rnd.nextInt(4);
+            if (k == 0) cells[i] = "HZCR" + (100000000L + rnd.nextInt(900000000));
+            else if (k == 1) cells[i] = "ub" + (10000000 + rnd.nextInt(90000000)) + "cn";
+            else cells[i] = fijos[rnd.nextInt(fijos.length)];
+        }
+        rows = new String[512][];
+        for (int r = 0; r < rows.length; r++) {
+            String[] row = new String[12];
+            for (int c = 0; c < row.length; c++) row[c] = cells[rnd.nextInt(cells.length)];
+            rows[r] = row;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) sb.append(cells[i]).append(i % 3 == 0 ? '\n' : ' ');
+        pegado = sb.toString();
+    }
+
+    // ---- findAll por celda (import) ----
+
+    @Benchmark
+    public void findAll_regex(Blackhole bh) {
+        for (String s : cells) {
+            List<String> out = new ArrayList<>();
+            Matcher m = P_TRACK.matcher(s);
+            while (m.find()) out.add(m.group().trim().toUpperCase(Locale.ROOT));
+            bh.consume(out);
+        }
+    }
+
+    @Benchmark
+    public void findAll_scanner(Blackhole bh) {
+        for (String s : cells) bh.consume(TrackingScanner.findAllTrackings(s));
+    }
+
+    // ---- heurística de columna ----
+
+    @Benchmark
+    public void looksLike_regex(Blackhole bh) {
+        for (String s : cells) {
+            String t = s.trim();
+            boolean r = t.length() >= 8 && t.length() <= 24 && !t.matches("\\d+");
+            if (r) {
+                String up = t.toUpperCase(Locale.ROOT);
+                r = !(up.startsWith("MUEBLE") || up.startsWith("CAJA") || up.startsWith("DISTRITO"))
+                        && P_TRACK.matcher(t).find();
+            }
+            bh.consume(r);
+        }
+    }
+
+    @Benchmark
+    public void looksLike_scanner(Blackhole bh) {
+        for (String s : cells) bh.consume(TrackingScanner.looksLikeTracking(s));
+    }
+
+    // ---- early exit: ¿la fila tiene tracking? ----
+
+    @Benchmark
+    public void rowHas_regex(Blackhole bh) {
+        for (String[] row : rows) {
+            StringBuilder sb = new StringBuilder();
+            for (String v : row) sb.append(v).append(' ');
+            bh.consume(P_TRACK.matcher(sb.toString()).find());
+        }
+    }
+
+    @Benchmark
+    public void rowHas_scanner(Blackhole bh) {
+        for (String[] row : rows) {
+            boolean has = false;
+            for (String v : row) {
+                if (TrackingScanner.containsTracking(v)) { has = true; break; }
+            }
+            bh.consume(has);
+        }
+    }
+
+    // ---- texto pegado (estados) ----
+
+    @Benchmark
+    public Object hzcr_regex() {
+        Matcher m = P_HZCR.matcher(pegado);
+        LinkedHashSet<String> uniq = new LinkedHashSet<>();
+        while (m.find()) uniq.add(m.group().toUpperCase());
+        return uniq;
+    }
+
+    @Benchmark
+    public Object hzcr_scanner() {
+        return TrackingScanner.findAllHzcr(pegado);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TrackingScannerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
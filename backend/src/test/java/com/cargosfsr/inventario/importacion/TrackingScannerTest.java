@@ -0,0 +1,73 @@
+package com.cargosfsr.inventario.importacion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/** El escáner debe dar exactamente lo mismo que las regex que reemplazó. */
+class TrackingScannerTest {
+
+    private static final Pattern P_TRACK =
+            Pattern.compile("(?i)\\b(?!MUEBLE)(?!CAJA)(?!DISTRITO)[A-Z]{2,4}[A-Z0-9]{6,18}\\b");
+    private static final Pattern P_HZCR = Pattern.compile("(HZCR|CR)\\d+", Pattern.CASE_INSENSITIVE);
+
+    private static final String[] PIEZAS = {
+        "HZCR", "CR", "UB", "MUEBLE", "CAJA", "DISTRITO", "hz", "cr", "x", "Q",
+        "1", "12345", "123456789", "0", " ", "  ", "-", "_", "/", ",", "\n",
+        "é", "Ñ", "́", "ß", "𝐀", "ab", "LA COLONIA",
+    };
+
+    @Test
+    void trackingsIgualAlRegex() {
+        Random rnd = new Random(7);
+        for (int n = 0; n < 200_000; n++) {
+            String s = random(rnd);
+            assertEquals(regexAll(s), TrackingScanner.findAllTrackings(s), () -> s.codePoints().mapToObj(Integer::toHexString).toList().toString());
+            assertEquals(regexLooksLike(s), TrackingScanner.looksLikeTracking(s), s);
+        }
+    }
+
+    @Test
+    void hzcrIgualAlRegex() {
+        Random rnd = new Random(11);
+        for (int n = 0; n < 200_000; n++) {
+            String s = random(rnd);
+            LinkedHashSet<String> esperado = new LinkedHashSet<>();
+            Matcher m = P_HZCR.matcher(s);
+            while (m.find()) esperado.add(m.group().toUpperCase());
+            assertEquals(new ArrayList<>(esperado), new ArrayList<>(TrackingScanner.findAllHzcr(s)), s);
+            assertEquals(P_HZCR.matcher(s).matches(), TrackingScanner.isHzcr(s), s);
+        }
+    }
+
+    private static String random(Random rnd) {
+        StringBuilder sb = new StringBuilder();
+        int k = 1 + rnd.nextInt(8);
+        for (int i = 0; i < k; i++) sb.append(PIEZAS[rnd.nextInt(PIEZAS.length)]);
+        return sb.toString();
+    }
+
+    private static List<String> regexAll(String s) {
+        List<String> out = new ArrayList<>();
+        Matcher m = P_TRACK.matcher(s);
+        while (m.find()) out.add(m.group().trim().toUpperCase(Locale.ROOT));
+        return out;
+    }
+
+    private static boolean regexLooksLike(String s) {
+        String t = s.trim();
+        if (t.length() < 8 || t.length() > 24) return false;
+        if (t.matches("\\d+")) return false;
+        String up = t.toUpperCase(Locale.ROOT);
+        if (up.startsWith("MUEBLE") || up.startsWith("CAJA") || up.startsWith("DISTRITO")) return false;
+        return P_TRACK.matcher(t).find();
+    }
+}
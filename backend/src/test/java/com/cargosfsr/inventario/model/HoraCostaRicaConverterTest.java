@@ -0,0 +1,37 @@
+package com.cargosfsr.inventario.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * El converter escribe en cada columna exactamente el mismo valor que el camino anterior (JPA en
+ * UTC + UPDATE ... DATE_SUB 6 HOUR). Los reportes solo leen esas columnas, así que con los mismos
+ * valores dan los mismos conteos; no hace falta compararlos aparte.
+ */
+class HoraCostaRicaConverterTest {
+
+    private static final HoraCostaRicaConverter CONV = new HoraCostaRicaConverter();
+    private static final long DESDE = Instant.parse("2015-01-01T00:00:00Z").getEpochSecond();
+    private static final long HASTA = Instant.parse("2035-01-01T00:00:00Z").getEpochSecond();
+
+    @Test
+    void mismoValorQueElAjusteMenos6h() {
+        Random rnd = new Random(11);
+        for (int n = 0; n < 100_000; n++) {
+            Instant i = Instant.ofEpochSecond(DESDE + (long) (rnd.nextDouble() * (HASTA - DESDE)), rnd.nextInt(1_000_000) * 1000);
+            assertEquals(anterior(i), CONV.convertToDatabaseColumn(i), i.toString());
+            assertEquals(i, CONV.convertToEntityAttribute(CONV.convertToDatabaseColumn(i)));
+        }
+    }
+
+    // lo que quedaba antes: el Instant viajaba en UTC (hibernate.jdbc.time_zone=UTC) y MySQL le restaba 6 horas
+    private static LocalDateTime anterior(Instant i) {
+        return LocalDateTime.ofInstant(i, ZoneOffset.UTC).minusHours(6);
+    }
+}
@@ -0,0 +1,222 @@
+package com.cargosfsr.inventario.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.sql.DataSource;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.Invocation;
+
+/**
+ * Las fechas de paquetes pasando por Hibernate (binding JDBC real, con el driver simulado): lo que
+ * llega a MySQL es la hora CR que escribía el camino anterior (UTC - 6h), y al leer vuelve el
+ * mismo Instant. Para cada hibernate.jdbc.time_zone de los perfiles (UTC local, sin fijar en prod)
+ * y varias zonas de la JVM, que es de lo que dependía el Timestamp por defecto.
+ */
+class HoraCostaRicaHibernateTest {
+
+    private static final String[] ZONAS_JDBC = { "UTC", null, "America/Costa_Rica" };
+    private static final String[] ZONAS_JVM = { "UTC", "America/Costa_Rica", "Asia/Tokyo" };
+
+    private static final Instant RECIBIDO = Instant.parse("2024-03-01T05:30:00Z");   // 23:30 del 29/02 en CR
+    private static final Instant CAMBIO = Instant.parse("2024-03-01T16:00:00Z");
+
+    @Test
+    void insertEscribeHoraCR() throws Exception {
+        porZona(db -> {
+            try (Session s = db.factory().openSession()) {
+                s.beginTransaction();
+                Paquete p = new Paquete();
+                p.setTrackingCode("HZCR1");
+                p.setSaco(s.getReference(Saco.class, 1L));
+                p.setDistrito(s.getReference(Distrito.class, 1L));
+                p.setReceivedAt(RECIBIDO);
+                p.setLastStateChangeAt(CAMBIO);
+                s.persist(p);
+                s.getTransaction().commit();
+            }
+            Map<String, Object> fila = db.insert("paquetes");
+            assertEquals(anterior(RECIBIDO), fila.get("received_at"), db.toString());
+            assertEquals(anterior(CAMBIO), fila.get("last_state_change_at"), db.toString());
+        });
+    }
+
+    @Test
+    void filtroDeDevolucionesEnHoraCR() throws Exception {
+        // mismo filtro que PaqueteRepository.buscarDevoluciones
+        porZona(db -> {
+            try (Session s = db.factory().openSession()) {
+                s.createSelectionQuery("select p.id from Paquete p where p.returnedAt >= :desde and p.returnedAt < :hasta", Long.class)
+                 .setParameter("desde", RECIBIDO)
+                 .setParameter("hasta", CAMBIO)
+                 .list();
+            }
+            assertEquals(List.of(anterior(RECIBIDO), anterior(CAMBIO)), db.parametros(), db.toString());
+        });
+    }
+
+    @Test
+    void lecturaDevuelveElMismoInstant() throws Exception {
+        porZona(db -> {
+            when(db.rs.next()).thenReturn(true, false);
+            when(db.rs.getObject(1, LocalDateTime.class)).thenReturn(anterior(CAMBIO));
+            when(db.rs.getTimestamp(anyInt())).thenReturn(Timestamp.valueOf(anterior(CAMBIO)));
+            when(db.rs.getTimestamp(anyInt(), any())).thenReturn(Timestamp.valueOf(anterior(CAMBIO)));
+            try (Session s = db.factory().openSession()) {
+                assertEquals(List.of(CAMBIO),
+                        s.createSelectionQuery("select p.lastStateChangeAt from Paquete p", Instant.class).list(),
+                        db.toString());
+            }
+        });
+    }
+
+    // lo que quedaba antes: el Instant viajaba en UTC y MySQL le restaba 6 horas
+    private static LocalDateTime anterior(Instant i) {
+        return LocalDateTime.ofInstant(i, ZoneOffset.UTC).minusHours(6);
+    }
+
+    private interface Caso {
+        void correr(Bd db) throws Exception;
+    }
+
+    private static void porZona(Caso caso) throws Exception {
+        TimeZone antes = TimeZone.getDefault();
+        try {
+            for (String jvm : ZONAS_JVM) {
+                TimeZone.setDefault(TimeZone.getTimeZone(jvm));
+                for (String jdbc : ZONAS_JDBC) {
+                    try (Bd db = new Bd(jvm, jdbc)) {
+                        caso.correr(db);
+                    }
+                }
+            }
+        } finally {
+            TimeZone.setDefault(antes);
+        }
+    }
+
+    /** SessionFactory como la de la app (MySQL, mismas entidades) sobre un driver simulado */
+    private static final class Bd implements AutoCloseable {
+
+        final String jvm;
+        final String jdbc;
+        final Connection con = mock(Connection.class);
+        final PreparedStatement ps = mock(PreparedStatement.class);
+        final ResultSet rs = mock(ResultSet.class);
+        final List<String> sql = new ArrayList<>();
+        private SessionFactory sf;
+
+        Bd(String jvm, String jdbc) throws Exception {
+            this.jvm = jvm;
+            this.jdbc = jdbc;
+            DataSource ds = mock(DataSource.class);
+            ResultSet claves = mock(ResultSet.class);
+            when(ds.getConnection()).thenReturn(con);
+            when(con.getAutoCommit()).thenReturn(true);
+            when(con.prepareStatement(anyString())).thenAnswer(i -> registrar(i.getArgument(0)));
+            when(con.prepareStatement(anyString(), anyInt())).thenAnswer(i -> registrar(i.getArgument(0)));
+            when(con.prepareStatement(anyString(), any(String[].class))).thenAnswer(i -> registrar(i.getArgument(0)));
+            when(con.prepareStatement(anyString(), anyInt(), anyInt())).thenAnswer(i -> registrar(i.getArgument(0)));
+            when(ps.executeUpdate()).thenReturn(1);
+            when(ps.executeQuery()).thenReturn(rs);
+            when(ps.getGeneratedKeys()).thenReturn(claves);
+            when(claves.next()).thenReturn(true, false);
+            when(claves.getLong(1)).thenReturn(1L);
+            when(claves.getObject(1, Long.class)).thenReturn(1L);
+            ResultSetMetaData una = mock(ResultSetMetaData.class);
+            when(una.getColumnCount()).thenReturn(1);
+            when(claves.getMetaData()).thenReturn(una);
+            when(rs.getMetaData()).thenReturn(una);
+
+            StandardServiceRegistryBuilder reg = new StandardServiceRegistryBuilder()
+                    .applySetting("hibernate.dialect", "org.hibernate.dialect.MySQLDialect")
+                    .applySetting("hibernate.boot.allow_jdbc_metadata_access", "false")
+                    .applySetting("hibernate.connection.datasource", ds);
+            if (jdbc != null) reg.applySetting("hibernate.jdbc.time_zone", jdbc);
+            sf = new MetadataSources(reg.build())
+                    .addAnnotatedClass(Paquete.class)
+                    .addAnnotatedClass(PaqueteEstadoHistorial.class)
+                    .addAnnotatedClass(Saco.class)
+                    .addAnnotatedClass(Distrito.class)
+                    .addAnnotatedClass(Usuario.class)
+                    .buildMetadata()
+                    .buildSessionFactory();
+        }
+
+        private PreparedStatement registrar(String s) {
+            sql.add(s);
+            return ps;
+        }
+
+        SessionFactory factory() {
+            return sf;
+        }
+
+        /** Valores que recibió el driver, en orden de parámetro (solo los setXxx) */
+        List<Object> parametros() {
+            Map<Integer, Object> porIndice = new HashMap<>();
+            for (Invocation i : mockingDetails(ps).getInvocations()) {
+                String m = i.getMethod().getName();
+                if (!m.startsWith("set") || i.getArguments().length < 2 || !(i.getArgument(0) instanceof Integer)) continue;
+                Object v = i.getArgument(1);
+                if (v instanceof Timestamp ts) {
+                    // como lo escribe el driver: con el Calendar dado, en esa zona; si no, en la de la JVM
+                    TimeZone tz = i.getArguments().length > 2 ? ((Calendar) i.getArgument(2)).getTimeZone()
+                                                               : TimeZone.getDefault();
+                    v = LocalDateTime.ofInstant(ts.toInstant(), tz.toZoneId());
+                }
+                porIndice.put(i.getArgument(0), v);
+            }
+            List<Object> out = new ArrayList<>();
+            for (int k = 1; k <= porIndice.size(); k++) out.add(porIndice.get(k));
+            return out;
+        }
+
+        /** Columna -> valor del INSERT a {@code tabla} */
+        Map<String, Object> insert(String tabla) {
+            String insert = sql.stream().filter(x -> x.startsWith("insert into " + tabla + " ")).findFirst().orElseThrow();
+            String[] columnas = insert.substring(insert.indexOf('(') + 1, insert.indexOf(')')).split(",");
+            List<Object> valores = parametros();
+            Map<String, Object> out = new HashMap<>();
+            for (int k = 0; k < columnas.length; k++) out.put(columnas[k].trim(), valores.get(k));
+            return out;
+        }
+
+        @Override
+        public void close() {
+            sf.close();
+        }
+
+        @Override
+        public String toString() {
+            return "JVM " + jvm + ", hibernate.jdbc.time_zone " + jdbc + ", SQL " + sql + ", parámetros "
+                    + Arrays.toString(parametros().toArray());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.cargosfsr.inventario.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cargosfsr.inventario.auth.CurrentUser;
+import com.cargosfsr.inventario.importacion.UploadSession;
+
+class ChunkUploadServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final ImportJobService jobs = mock(ImportJobService.class);
+
+    private ChunkUploadService service() throws IOException {
+        CurrentUser user = mock(CurrentUser.class);
+        when(user.username()).thenReturn("ana");
+        return new ChunkUploadService(jobs, user, dir.toString(), 1 << 20, 1000);
+    }
+
+    @Test
+    void reanudaDespuesDeUnCorteYVerificaChecksums() throws Exception {
+        byte[] data = new byte[2500];
+        new Random(1).nextBytes(data);
+        ChunkUploadService up = service();
+        UploadSession s = up.create("consolidado.xlsx", data.length, sha(data, 0, data.length));
+
+        up.append(s, 0, new ByteArrayInputStream(data, 0, 1000), sha(data, 0, 1000));
+
+        // se corta a mitad del segundo fragmento: no avanza y el spool vuelve al offset
+        assertThrows(IOException.class, () -> up.append(s, 1000, cortado(data, 1000, 400), null));
+        assertEquals(1000, s.recibidos());
+        assertEquals(1000, Files.size(s.spool()));
+
+        // offset viejo o checksum malo: rechazado sin tocar nada
+        assertThrows(ChunkUploadService.OffsetInvalidoException.class,
+                () -> up.append(s, 0, new ByteArrayInputStream(data, 0, 1000), null));
+        assertThrows(IllegalArgumentException.class,
+                () -> up.append(s, 1000, new ByteArrayInputStream(data, 1000, 1000), sha(data, 0, 1000)));
+        assertEquals(1000, s.recibidos());
+
+        up.append(s, 1000, new ByteArrayInputStream(data, 1000, 1000), null);
+        up.append(s, 2000, new ByteArrayInputStream(data, 2000, 500), null);
+        assertArrayEquals(data, Files.readAllBytes(s.spool()));
+
+        up.complete(s, ImportJobService.TIPO_CONSOLIDADO, true);
+        verify(jobs).submitArchivo(eq(ImportJobService.TIPO_CONSOLIDADO), eq(s.spool()), eq("consolidado.xlsx"), eq(true));
+        assertEquals(true, up.find(s.id()).isEmpty());
+    }
+
+    @Test
+    void noCompletaIncompletoNiPasaDelTamano() throws Exception {
+        ChunkUploadService up = service();
+        UploadSession s = up.create("tracks.csv", 10, null);
+        assertThrows(IllegalArgumentException.class, () -> up.append(s, 0, new ByteArrayInputStream(new byte[11]), null));
+        up.append(s, 0, new ByteArrayInputStream(new byte[4]), null);
+        assertThrows(IllegalStateException.class, () -> up.complete(s, ImportJobService.TIPO_PAQUETES, false));
+    }
+
+    private static InputStream cortado(byte[] data, int off, int antesDeCortar) {
+        return new InputStream() {
+            int pos = off;
+            @Override
+            public int read() throws IOException {
+                if (pos - off >= antesDeCortar) throw new IOException("conexión cortada");
+                return data[pos++] & 0xff;
+            }
+        };
+    }
+
+    private static String sha(byte[] data, int off, int len) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(Arrays.copyOfRange(data, off, off + len)));
+    }
+}
@@ -0,0 +1,134 @@
+package com.cargosfsr.inventario.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.cargosfsr.inventario.importacion.StatusExternoMatcher.Clase;
+import com.cargosfsr.inventario.importacion.StatusExternoMatcher.Clasificacion;
+import com.cargosfsr.inventario.model.enums.DevolucionSubtipo;
+import com.cargosfsr.inventario.model.enums.PaqueteEstado;
+
+/** Después del SP: solo se escribe cuando lo que dejó no cumple la regla. */
+class StatusExternoTransicionesTest {
+
+    private static final LocalDateTime AT = LocalDateTime.of(2024, 3, 1, 10, 0);
+    private static final Clasificacion ENTREGADO_SIN_ESTADO = new Clasificacion(Clase.ENTREGADO, null, null);
+    private static final Clasificacion ENTREGADO =
+            new Clasificacion(Clase.ENTREGADO, PaqueteEstado.ENTREGADO_A_TRANSPORTISTA_LOCAL, null);
+    private static final Clasificacion VENCIDOS =
+            new Clasificacion(Clase.DEVOLUCION, PaqueteEstado.NO_ENTREGABLE, DevolucionSubtipo.VENCIDOS);
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    // tracking -> {id, estado, subtipo} que dejó el SP
+    private final Map<String, Object[]> paquetes = new LinkedHashMap<>();
+
+    @Test
+    void reglaSinEstadoNoToca() {
+        transiciones().aplicar(List.of(fila("HZCR1", ENTREGADO_SIN_ESTADO)), "ana");
+        verifyNoInteractions(jdbc);
+    }
+
+    @Test
+    void mismaClaseQueElSpNoSeReescribe() {
+        paquetes.put("HZCR1", new Object[] { 1L, "ENTREGADO_A_TRANSPORTISTA_LOCAL_2DO_INTENTO", "FUERA_DE_RUTA" });
+        paquetes.put("HZCR2", new Object[] { 2L, "ENTREGADO_A_TRANSPORTISTA_LOCAL", "FUERA_DE_RUTA" });
+
+        transiciones().aplicar(List.of(fila("HZCR1", ENTREGADO), fila("HZCR2", ENTREGADO)), "ana");
+
+        verify(jdbc, never()).batchUpdate(anyString(), any(List.class));
+        verify(jdbc, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void otraClaseCambiaEstadoFechasEHistorial() {
+        paquetes.put("HZCR1", new Object[] { 1L, "NO_ENTREGADO_CONSIGNATARIO_DISPONIBLE", "FUERA_DE_RUTA" });
+        paquetes.put("HZCR2", new Object[] { 2L, "ENTREGADO_A_TRANSPORTISTA_LOCAL", "FUERA_DE_RUTA" });
+
+        transiciones().aplicar(List.of(fila("hzcr1", ENTREGADO), fila("HZCR2", VENCIDOS), fila("HZCR9", ENTREGADO)), "ana");
+
+        Map<String, List<Object[]>> updates = updates();
+        assertEquals(2, updates.size());
+        assertArrayEquals(new Object[] { "ENTREGADO_A_TRANSPORTISTA_LOCAL", AT, "ana", AT, 1L },
+                updates.get("UPDATE paquetes SET estado = ?, last_state_change_at = ?, cambio_en_sistema_por = ?, delivered_at = ? WHERE id = ?").get(0));
+        assertArrayEquals(new Object[] { "NO_ENTREGABLE", AT, "ana", AT, "VENCIDOS", 2L },
+                updates.get("UPDATE paquetes SET estado = ?, last_state_change_at = ?, cambio_en_sistema_por = ?, returned_at = ?, devolucion_subtipo = ? WHERE id = ?").get(0));
+
+        ArgumentCaptor<Object[]> hist = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbc).update(anyString(), hist.capture());
+        assertArrayEquals(new Object[] {
+                1L, "NO_ENTREGADO_CONSIGNATARIO_DISPONIBLE", "ENTREGADO_A_TRANSPORTISTA_LOCAL", AT, "Status externo", "ana",
+                2L, "ENTREGADO_A_TRANSPORTISTA_LOCAL", "NO_ENTREGABLE", AT, "Status externo", "ana" },
+                hist.getValue());
+    }
+
+    @Test
+    void soloSubtipoSinHistorial() {
+        paquetes.put("HZCR1", new Object[] { 1L, "NO_ENTREGABLE", "FUERA_DE_RUTA" });
+        paquetes.put("HZCR2", new Object[] { 2L, "NO_ENTREGABLE", "VENCIDOS" });
+
+        transiciones().aplicar(List.of(fila("HZCR1", VENCIDOS), fila("HZCR2", VENCIDOS)), "ana");
+
+        Map<String, List<Object[]>> updates = updates();
+        assertEquals(1, updates.size());
+        List<Object[]> args = updates.get("UPDATE paquetes SET devolucion_subtipo = ?, cambio_en_sistema_por = ? WHERE id = ?");
+        assertEquals(1, args.size());
+        assertArrayEquals(new Object[] { "VENCIDOS", "ana", 1L }, args.get(0));
+        verify(jdbc, never()).update(anyString(), any(Object[].class));
+    }
+
+    private StatusExternoTransiciones transiciones() {
+        // el SELECT ... FOR UPDATE devuelve los paquetes pedidos que existen
+        doAnswer(inv -> {
+            RowCallbackHandler h = inv.getArgument(1);
+            for (int i = 2; i < inv.getArguments().length; i++) {
+                Object[] p = paquetes.get(inv.getArguments()[i]);
+                if (p == null) continue;
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString("tracking_code")).thenReturn((String) inv.getArguments()[i]);
+                when(rs.getLong("id")).thenReturn((Long) p[0]);
+                when(rs.getString("estado")).thenReturn((String) p[1]);
+                when(rs.getString("devolucion_subtipo")).thenReturn((String) p[2]);
+                h.processRow(rs);
+            }
+            return null;
+        }).when(jdbc).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        return new StatusExternoTransiciones(jdbc);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, List<Object[]>> updates() {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<List<Object[]>> args = ArgumentCaptor.forClass(List.class);
+        verify(jdbc, atLeast(0)).batchUpdate(sql.capture(), args.capture());
+        Map<String, List<Object[]>> out = new LinkedHashMap<>();
+        for (int i = 0; i < sql.getAllValues().size(); i++) {
+            out.computeIfAbsent(sql.getAllValues().get(i), k -> new ArrayList<>()).addAll(args.getAllValues().get(i));
+        }
+        return out;
+    }
+
+    private static StatusExternoTransiciones.Fila fila(String tracking, Clasificacion regla) {
+        return new StatusExternoTransiciones.Fila(tracking, regla, AT);
+    }
+}
@@ -1,6 +1,68 @@
 import { useState } from 'react'
 import { api } from '../api'
 
+const sleep = (ms) => new Promise(r => setTimeout(r, ms))
+
+const CHUNK = 4 * 1024 * 1024
+const REINTENTOS = 8
+
+async function sha256Hex(blob) {
+  if (!window.crypto?.subtle) return null // fuera de https no hay WebCrypto: se sube sin checksum
+  const buf = await window.crypto.subtle.digest('SHA-256', await blob.arrayBuffer())
+  return Array.from(new Uint8Array(buf)).map(b => b.toString(16).padStart(2, '0')).join('')
+}
+
+// Sube el archivo por fragmentos; si se corta la conexión pregunta cuánto llegó y sigue desde ahí
+async function subirPorPartes(file, onProgress) {
+  const { data: up } = await api.post('/import/uploads', { archivo: file.name, bytes: file.size })
+  const chunk = Math.min(CHUNK, up.chunk_max || CHUNK)
+  let offset = 0
+  let fallos = 0
+  while (offset < file.size) {
+    onProgress({ fase: 'SUBIENDO', pct: Math.floor(offset * 100 / file.size) })
+    const parte = file.slice(offset, offset + chunk)
+    try {
+      const sha = await sha256Hex(parte)
+      const { data } = await api.put(`/import/uploads/${up.upload_id}?offset=${offset}`, parte, {
+        headers: { 'Content-Type': 'application/octet-stream', ...(sha ? { 'X-Chunk-Sha256': sha } : {}) }
+      })
+      offset = data.recibidos
+      fallos = 0
+    } catch (e) {
+      const st = e?.response?.status
+      if (st === 409 && typeof e.response.data?.recibidos === 'number') {
+        offset = e.response.data.recibidos
+        continue
+      }
+      if ((st && st < 500 && st !== 400) || ++fallos > REINTENTOS) throw e
+      await sleep(Math.min(1000 * 2 ** fallos, 15000))
+      try {
+        offset = (await api.get(`/import/uploads/${up.upload_id}`)).data.recibidos
+      } catch { /* sin red todavía: se reintenta desde el mismo offset */ }
+    }
+  }
+  return up.upload_id
+}
+
+// Sube el archivo y lo importa como job en segundo plano; consulta el avance hasta que termine
+async function importarComoJob(tipo, file, onProgress, params = {}) {
+  const id = await subirPorPartes(file, onProgress)
+  const query = new URLSearchParams({ tipo, ...params }).toString()
+  let { data: job } = await api.post(`/import/uploads/${id}/complete?${query}`)
+  onProgress(job)
+  while (job.fase !== 'TERMINADO' && job.fase !== 'FALLIDO') {
+    await sleep(1000)
+    job = (await api.get(`/import/jobs/${job.job_id}`)).data
+    onProgress(job)
+  }
+  if (job.fase === 'FALLIDO') throw new Error(job.error || 'La importación falló')
+  return job.resultado
+}
+
+const progresoTxt = (j) => !j ? ''
+  : j.fase === 'SUBIENDO' ? `Subiendo… ${j.pct}%`
+  : `${j.fase} · leídas ${j.filas_leidas} · aplicadas ${j.filas_aplicadas} · ${j.filas_por_seg} filas/s · errores ${j.errores}`
+
 export default function Importar() {
   const [resConsol, setResConsol] = useState(null)
   const [resTracks, setResTracks] = useState(null)
@@ -10,21 +72,20 @@ export default function Importar() {
   const [errT, setErrT] = useState('')
   const [nameC, setNameC] = useState('')
   const [nameT, setNameT] = useState('')
+  const [progC, setProgC] = useState(null)
+  const [progT, setProgT] = useState(null)
+  const [delta, setDelta] = useState(false)   // opt-in: el delta no corrige lo editado a mano
 
   const subirConsolidado = async (ev) => {
     const f = ev.target.files?.[0]
     if (!f) return
     setNameC(f.name)
-    setBusyC(true); setErrC(''); setResConsol(null)
+    setBusyC(true); setErrC(''); setResConsol(null); setProgC(null)
     try {
-      const form = new FormData()
-      form.append('file', f)
-      const { data } = await api.post('/import/consolidado', form, {
-        headers: { 'Content-Type': 'multipart/form-data' }
-      })
+      const data = await importarComoJob('consolidado', f, setProgC, { delta })
       setResConsol(data)
     } catch (e) {
-      setErrC(e?.response?.data?.message || e.message || 'Error subiendo consolidado')
+      setErrC(e?.response?.data?.message || e?.response?.data?.error || e.message || 'Error subiendo consolidado')
     } finally { setBusyC(false); ev.target.value = '' }
   }
 
@@ -32,16 +93,12 @@ export default function Importar() {
     const f = ev.target.files?.[0]
     if (!f) return
     setNameT(f.name)
-    setBusyT(true); setErrT(''); setResTracks(null)
+    setBusyT(true); setErrT(''); setResTracks(null); setProgT(null)
     try {
-      const form = new FormData()
-      form.append('file', f)
-      const { data } = await api.post('/import/paquetes', form, {
-        headers: { 'Content-Type': 'multipart/form-data' }
-      })
+      const data = await importarComoJob('paquetes', f, setProgT)
       setResTracks(data)
     } catch (e) {
-      setErrT(e?.response?.data?.message || e.message || 'Error subiendo tracks')
+      setErrT(e?.response?.data?.message || e?.response?.data?.error || e.message || 'Error subiendo tracks')
     } finally { setBusyT(false); ev.target.value = '' }
   }
 
@@ -56,8 +113,12 @@ export default function Importar() {
         <label className="btn file-btn" htmlFor="fileConsol">Seleccionar archivo</label>
         <input id="fileConsol" className="file-hidden" type="file" accept=".xlsx" onChange={subirConsolidado} disabled={busyC}/>
         <span className="file-name">{nameC || 'Ningún archivo seleccionado'}</span>
+        <label style={{display:'block',marginTop:6}}>
+          <input type="checkbox" checked={delta} onChange={e => setDelta(e.target.checked)} disabled={busyC}/>
+          {' '}Solo aplicar cambios (re-subida del mismo consolidado; no corrige lo editado a mano en filas sin cambios)
+        </label>
 
-        {busyC && <div>Subiendo…</div>}
+        {busyC && <div>{progC ? progresoTxt(progC) : 'Subiendo…'}</div>}
         {errC && <div style={{color:'#e11d48'}}>Error: {errC}</div>}
         {resConsol && <pre style={{background:'#fff',padding:12,border:'1px solid rgba(22,62,122,.12)',borderRadius:8,overflow:'auto'}}>{JSON.stringify(resConsol,null,2)}</pre>}
       </section>
@@ -70,9 +131,17 @@ export default function Importar() {
         <input id="fileTracks" className="file-hidden" type="file" accept=".csv,text/csv" onChange={subirTracks} disabled={busyT}/>
         <span className="file-name">{nameT || 'Ningún archivo seleccionado'}</span>
 
-        {busyT && <div>Subiendo…</div>}
+        {busyT && <div>{progT ? progresoTxt(progT) : 'Subiendo…'}</div>}
         {errT && <div style={{color:'#e11d48'}}>Error: {errT}</div>}
         {resTracks && <pre style={{background:'#fff',padding:12,border:'1px solid rgba(22,62,122,.12)',borderRadius:8,overflow:'auto'}}>{JSON.stringify(resTracks,null,2)}</pre>}
+        {resTracks?.reporte_errores && (
+          <div style={{marginTop:6}}>
+            <a className="btn" href={`${api.defaults.baseURL}/import/reportes/${resTracks.reporte_errores}?formato=csv`}>
+              Descargar errores ({resTracks.errores_total})
+            </a>
+            {resTracks.errores_total > resTracks.errores.length && <span> · se muestran los primeros {resTracks.errores.length}</span>}
+          </div>
+        )}
       </section>
     </div>
   )